@@ -46,6 +46,11 @@ public class Util {
     }
 
     /**
+     * <p>
+     * The binary algorithm of Stein, which only shifts and substracts, so it
+     * takes a number of steps proportional to the bits of the numbers
+     * instead of their values.
+     * </p>
      *
      * @param x
      * @param y
@@ -59,16 +64,25 @@ public class Util {
         if (a == 0) {
             return b;
         }
+        if (b == 0) {
+            return a;
+        }
+
+        // the common powers of two
+        int shift = Long.numberOfTrailingZeros(a | b);
+        a >>= Long.numberOfTrailingZeros(a);
 
         while (b != 0) {
+            b >>= Long.numberOfTrailingZeros(b);
             if (a > b) {
-                a -= b;
-            } else {
-                b -= a;
+                long t = a;
+                a = b;
+                b = t;
             }
+            b -= a;
         }
 
-        return a;
+        return a << shift;
     }
 
 }
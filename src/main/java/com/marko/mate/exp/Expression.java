@@ -16,17 +16,22 @@
  */
 package com.marko.mate.exp;
 
+import com.marko.mate.exp.compile.CompiledExpression;
+import com.marko.mate.exp.compile.Program;
 import com.marko.mate.exp.operation.binop.Division;
 import com.marko.mate.exp.operation.binop.Multiplication;
 import com.marko.mate.exp.operation.binop.Pow;
 import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.rewrite.RuleSet;
+import com.marko.mate.exp.symbol.Bindings;
 import com.marko.mate.exp.symbol.Symbol;
 import com.marko.mate.exp.symbol.Variable;
 import com.marko.mate.exp.vectorial.Matrix;
-import com.marko.mate.exp.vectorial.RNumber;
+import com.marko.mate.exp.vectorial.Number;
 import com.marko.mate.exp.vectorial.Space;
 import com.marko.mate.exp.vectorial.Vector;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * <p>
@@ -46,6 +51,23 @@ public interface Expression {
      */
     public Expression derivate(Variable var);
 
+    /**
+     * <p>
+     * Finds the derivative as {@link #derivate(Variable)} does, sharing the
+     * derivatives of the subexpressions through {@code derivatives}, so every
+     * distinct subexpression is derived only once, even if it appears in
+     * many places or in many expressions derived with the same map.
+     *
+     * @param var
+     * @param derivatives the derivatives with respect to {@code var} already
+     * found, by subexpression, to be read and updated
+     * @return the derivative of a mathematical expression with respect to the
+     * variable var
+     */
+    public default Expression derivate(Variable var, Map<Expression, Expression> derivatives) {
+        return derivate(var);
+    }
+
     /**
      *
      * @return true if zero, false oterwise
@@ -59,6 +81,19 @@ public interface Expression {
      */
     public Expression simplify();
 
+    /**
+     * <p>
+     * Simplifies the expression as {@link #simplify()} does, and then applies
+     * the rules of the rule set, simplifying again after every pass, while
+     * they change it.
+     *
+     * @param rules user defined simplifications
+     * @return {@code Expression}
+     */
+    public default Expression simplify(RuleSet rules) {
+        return rules.simplify(this);
+    }
+
     /**
      * It evaluates the expression in a point.
      * <p>
@@ -73,6 +108,22 @@ public interface Expression {
      */
     public Expression evaluate(Map<Symbol, Space> point);
 
+    /**
+     * <p>
+     * Evaluates the expression in a point, as {@link #evaluate(Map)} does,
+     * sharing the values of the subexpressions through {@code values}. Every
+     * distinct subexpression, even if it appears in many places or in many
+     * expressions evaluated with the same map, is evaluated only once.
+     *
+     * @param point the point to be evaluated
+     * @param values the values already computed in this point, by
+     * subexpression, to be read and updated
+     * @return {@link Expression}
+     */
+    public default Expression evaluate(Map<Symbol, Space> point, Map<Expression, Expression> values) {
+        return evaluate(point);
+    }
+
     @Override
     public boolean equals(Object obj);
 
@@ -125,7 +176,7 @@ public interface Expression {
         return new Sum(
                 this,
                 new Multiplication(
-                        RNumber.parseNumber("-1"),
+                        Number.valueOf(-1),
                         exp
                 )
         ).simplify();
@@ -195,7 +246,7 @@ public interface Expression {
      */
     public default Expression negate() {
         return new Multiplication(
-                RNumber.parseNumber("-1"),
+                Number.valueOf(-1),
                 this
         ).simplify();
     }
@@ -209,9 +260,137 @@ public interface Expression {
      */
     public default Expression inverse() {
         return new Division(
-                RNumber.parseNumber("1"),
+                Number.valueOf(1),
                 this
         ).simplify();
     }
 
+    /**
+     * <p>
+     * Compiles this expression into a {@link CompiledExpression} that
+     * evaluates it with primitive doubles, without building any intermediate
+     * {@link Space}. The value of {@code symbols[i]} is read from the index
+     * {@code i} of the point passed to the compiled expression, for example:
+     * <pre>{@code
+     * CompiledExpression f = new Sum(x, y).compile(x, y);
+     * f.evaluate(new double[]{1, 2});
+     * }</pre> it will return {@code 3.0}
+     *
+     * @param symbols the symbols of the expression in the order of the point
+     * @return {@link CompiledExpression}
+     */
+    public default CompiledExpression compile(Symbol... symbols) {
+        return compile(new Bindings(symbols));
+    }
+
+    /**
+     * <p>
+     * Compiles this expression into a {@link CompiledExpression}, as
+     * {@link #compile(Symbol...)} does, reading the value of each symbol from
+     * its slot in the bindings. All the symbols of the expression must be
+     * bound.
+     * <p>
+     * By default an expression cannot be compiled and this method throws an
+     * UnsupportedOperationException.
+     *
+     * @param bindings the slots of the symbols of the expression
+     * @return {@link CompiledExpression}
+     */
+    public default CompiledExpression compile(Bindings bindings) {
+        throw new UnsupportedOperationException(
+                getClass().getSimpleName() + " cannot be compiled");
+    }
+
+    /**
+     * <p>
+     * Expands the products and the natural powers of sums of this expression,
+     * so a polynomial becomes a {@link Sum} of monomials, for example
+     * {@code (x + 1)^2} becomes {@code x^2 + 2*x + 1}. By default an
+     * expression has nothing to expand and this method returns itself.
+     *
+     * @return {@link Expression}
+     */
+    public default Expression expand() {
+        return this;
+    }
+
+    /**
+     * <p>
+     * Prepares this expression to be evaluated many times with the same
+     * bindings. Every symbol is resolved to its slot only once, so the
+     * {@link PreparedExpression} reads the value of each symbol from a flat
+     * array instead of looking it up in a map.
+     * <p>
+     * As {@link #evaluate(Map)} does, the symbols that are not bound, or
+     * whose value is null, are kept in the result.
+     *
+     * @param bindings the slots of the symbols of the expression
+     * @return {@link PreparedExpression}
+     */
+    public default PreparedExpression prepare(Bindings bindings) {
+        return bindings.prepare(this);
+    }
+
+    /**
+     * <p>
+     * Evaluates this expression in many points at once. Each symbol is
+     * given as a column, with one value per point, and the value of the
+     * expression in the point {@code i} is stored in {@code out[i]}.
+     * <p>
+     * The expression is lowered once to a {@link Program} and every operation
+     * is applied to a whole chunk of points at a time, so this is much faster
+     * than calling {@link #evaluate(java.util.Map)} for every point. The
+     * results are the same as the ones of {@link #compile(Symbol...)}.
+     *
+     * @param columns the values of each symbol, all of them with at least
+     * {@code out.length} values
+     * @param out the array where the values of the expression are stored
+     */
+    public default void evaluateBatch(Map<? extends Symbol, double[]> columns, double[] out) {
+        Symbol[] symbols = columns.keySet().toArray(new Symbol[columns.size()]);
+        Program.of(this, symbols).evaluateBatch(columns(columns, symbols), out);
+    }
+
+    /**
+     * <p>
+     * Evaluates this expression in many points at once, as
+     * {@link #evaluateBatch(Map, double[])} does, splitting the points in
+     * chunks that are evaluated in parallel by the pool.
+     *
+     * @param columns the values of each symbol, all of them with at least
+     * {@code out.length} values
+     * @param out the array where the values of the expression are stored
+     * @param pool the pool that evaluates the chunks
+     */
+    public default void evaluateBatch(Map<? extends Symbol, double[]> columns, double[] out,
+            ForkJoinPool pool) {
+        Symbol[] symbols = columns.keySet().toArray(new Symbol[columns.size()]);
+        Program.of(this, symbols).evaluateBatch(columns(columns, symbols), out, pool);
+    }
+
+    /**
+     * <p>
+     * Evaluates this expression in many points at once, as
+     * {@link #evaluateBatch(Map, double[])} does, using the given number of
+     * threads.
+     *
+     * @param columns the values of each symbol, all of them with at least
+     * {@code out.length} values
+     * @param out the array where the values of the expression are stored
+     * @param parallelism the number of threads used
+     */
+    public default void evaluateBatch(Map<? extends Symbol, double[]> columns, double[] out,
+            int parallelism) {
+        Symbol[] symbols = columns.keySet().toArray(new Symbol[columns.size()]);
+        Program.of(this, symbols).evaluateBatch(columns(columns, symbols), out, parallelism);
+    }
+
+    private static double[][] columns(Map<? extends Symbol, double[]> columns, Symbol[] symbols) {
+        double[][] values = new double[symbols.length][];
+        for (int i = 0; i < symbols.length; i++) {
+            values[i] = columns.get(symbols[i]);
+        }
+        return values;
+    }
+
 }
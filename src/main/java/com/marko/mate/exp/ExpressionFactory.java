@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp;
+
+import com.marko.mate.exp.operation.Operation;
+import com.marko.mate.exp.operation.Polynomial;
+import com.marko.mate.exp.operation.binop.Division;
+import com.marko.mate.exp.operation.binop.Multiplication;
+import com.marko.mate.exp.operation.binop.Pow;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.operation.unop.Cos;
+import com.marko.mate.exp.operation.unop.Ln;
+import com.marko.mate.exp.operation.unop.Log10;
+import com.marko.mate.exp.operation.unop.Sin;
+import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.vectorial.Matrix;
+import com.marko.mate.exp.vectorial.Number;
+import com.marko.mate.exp.vectorial.RNumber;
+import com.marko.mate.exp.vectorial.Vector;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Builds expressions sharing all the structurally identical subexpressions.
+ * The factory keeps one instance of every distinct number, symbol and
+ * operation it has built, so two numbers or symbols of the same factory are
+ * equal only if they are the same instance, and so are two operations of the
+ * same type with the same expressions in the same order. The memory used
+ * grows with the number of distinct subexpressions instead of the number of
+ * nodes of the trees.
+ * <p>
+ * The order of the expressions is kept as it is, so a sum or a
+ * multiplication with its expressions in another order is equal to one of
+ * the factory but it is another instance.
+ * <p>
+ * The operations are built without simplifying their expressions, because
+ * simplifying creates new instances. To share a simplified expression,
+ * simplify it first and then {@link #intern(Expression) intern} the result.
+ * <p>
+ * The factory holds all the expressions it has built until it is discarded,
+ * so it should live as long as the computation that uses it. This class is
+ * thread safe.
+ *
+ * @author Marcos
+ */
+public final class ExpressionFactory {
+
+    /**
+     * Operations used only to build new operations of their type.
+     */
+    private static final Operation SUM = new Sum(),
+            MULTIPLICATION = new Multiplication(),
+            DIVISION = new Division(RNumber.ONE, RNumber.ONE),
+            POW = new Pow(RNumber.ONE, RNumber.ONE),
+            SIN = new Sin(RNumber.ZERO),
+            COS = new Cos(RNumber.ZERO),
+            LN = new Ln(RNumber.ONE),
+            LOG10 = new Log10(RNumber.ONE);
+
+    /**
+     * The canonical numbers and symbols, by type and value.
+     */
+    private final ConcurrentHashMap<List<Object>, Expression> leaves = new ConcurrentHashMap<>();
+
+    /**
+     * The canonical operations, by type and canonical expressions.
+     */
+    private final ConcurrentHashMap<Node, Operation> operations = new ConcurrentHashMap<>();
+
+    /**
+     * <p>
+     * Returns the canonical instance of the expression, replacing every
+     * subexpression by its canonical instance. The expression is returned as
+     * it is if it is not a number, a symbol or an operation.
+     * <p>
+     * An operation whose expressions are already canonical is found without
+     * visiting them, and every subexpression shared by the expression is
+     * interned only once, so interning costs at most the number of distinct
+     * subexpressions that are not canonical yet.
+     *
+     * @param exp
+     * @return {@link Expression} structurally equal to exp
+     */
+    public Expression intern(Expression exp) {
+        return intern(exp, new IdentityHashMap<>());
+    }
+
+    /**
+     * @param interned the canonical instance of the subexpressions already
+     * interned in this call
+     */
+    private Expression intern(Expression exp, Map<Expression, Expression> interned) {
+        Expression canonical = interned.get(exp);
+        if (canonical == null) {
+            canonical = canonical(exp, interned);
+            interned.put(exp, canonical);
+        }
+        return canonical;
+    }
+
+    private Expression canonical(Expression exp, Map<Expression, Expression> interned) {
+        if (exp instanceof Polynomial) {
+            // the terms of a polynomial are not expressions, so it is a leaf
+            return leaves.computeIfAbsent(List.of(exp.getClass(), exp), key -> exp);
+        }
+        if (exp instanceof Operation) {
+            Operation operation = (Operation) exp;
+            Expression[] exprs = operation.getExpressions().toArray(new Expression[0]);
+            // the nodes are compared by reference, so this finds only the
+            // operations whose expressions are already canonical
+            Operation canonical = operations.get(new Node(operation.getClass(), exprs));
+            if (canonical != null) {
+                return canonical;
+            }
+            for (int i = 0; i < exprs.length; i++) {
+                exprs[i] = intern(exprs[i], interned);
+            }
+            Node node = new Node(operation.getClass(), exprs);
+            canonical = operations.get(node);
+            if (canonical != null) {
+                return canonical;
+            }
+            Operation candidate = operation.withExpressions(exprs);
+            canonical = operations.putIfAbsent(node, candidate);
+            return canonical == null ? candidate : canonical;
+        }
+        if (exp instanceof Number || exp instanceof Symbol) {
+            return leaves.computeIfAbsent(List.of(exp.getClass(), exp), key -> exp);
+        }
+        if (exp instanceof Vector) {
+            return intern((Vector) exp, interned);
+        }
+        if (exp instanceof Matrix) {
+            return intern((Matrix) exp, interned);
+        }
+        return exp;
+    }
+
+    /**
+     * <p>
+     * Returns a vector with the canonical instances of the expressions of the
+     * vector.
+     *
+     * @param vector
+     * @return {@link Vector}
+     */
+    public Vector intern(Vector vector) {
+        return intern(vector, new IdentityHashMap<>());
+    }
+
+    private Vector intern(Vector vector, Map<Expression, Expression> interned) {
+        Expression[] data = vector.getData();
+        Expression[] canonical = new Expression[data.length];
+        for (int i = 0; i < data.length; i++) {
+            canonical[i] = intern(data[i], interned);
+        }
+        return new Vector(canonical);
+    }
+
+    /**
+     * <p>
+     * Returns a matrix with the canonical instances of the expressions of the
+     * matrix.
+     *
+     * @param matrix
+     * @return {@link Matrix}
+     */
+    public Matrix intern(Matrix matrix) {
+        return intern(matrix, new IdentityHashMap<>());
+    }
+
+    private Matrix intern(Matrix matrix, Map<Expression, Expression> interned) {
+        Expression[][] data = matrix.getData();
+        Expression[][] canonical = new Expression[data.length][];
+        for (int i = 0; i < data.length; i++) {
+            canonical[i] = new Expression[data[i].length];
+            for (int j = 0; j < data[i].length; j++) {
+                canonical[i][j] = intern(data[i][j], interned);
+            }
+        }
+        return new Matrix(canonical);
+    }
+
+    public Expression sum(Expression... exprs) {
+        return intern(SUM.withExpressions(exprs));
+    }
+
+    public Expression multiplication(Expression... exprs) {
+        return intern(MULTIPLICATION.withExpressions(exprs));
+    }
+
+    public Expression division(Expression numerator, Expression denominator) {
+        return intern(DIVISION.withExpressions(numerator, denominator));
+    }
+
+    public Expression pow(Expression base, Expression exponent) {
+        return intern(POW.withExpressions(base, exponent));
+    }
+
+    public Expression sin(Expression exp) {
+        return intern(SIN.withExpressions(exp));
+    }
+
+    public Expression cos(Expression exp) {
+        return intern(COS.withExpressions(exp));
+    }
+
+    public Expression ln(Expression exp) {
+        return intern(LN.withExpressions(exp));
+    }
+
+    public Expression log10(Expression exp) {
+        return intern(LOG10.withExpressions(exp));
+    }
+
+    /**
+     *
+     * @return the number of distinct expressions built by this factory
+     */
+    public int size() {
+        return leaves.size() + operations.size();
+    }
+
+    /**
+     * The key of an operation. The expressions are canonical, so they are
+     * compared by reference.
+     */
+    private static final class Node {
+
+        private final Class<?> type;
+
+        private final Expression[] exprs;
+
+        private final int hash;
+
+        private Node(Class<?> type, Expression[] exprs) {
+            this.type = type;
+            this.exprs = exprs;
+            int h = type.hashCode();
+            for (var exp : exprs) {
+                h = 31 * h + System.identityHashCode(exp);
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Node)) {
+                return false;
+            }
+            Node node = (Node) obj;
+            if (type != node.type || exprs.length != node.exprs.length) {
+                return false;
+            }
+            for (int i = 0; i < exprs.length; i++) {
+                if (exprs[i] != node.exprs[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp;
+
+import com.marko.mate.exp.symbol.Bindings;
+import com.marko.mate.exp.vectorial.Space;
+
+/**
+ * <p>
+ * An {@link Expression} whose symbols were already resolved to the slots of a
+ * {@link Bindings}. It is evaluated with a flat array of values, where the
+ * index {@code i} holds the value of the symbol bound to the slot {@code i}.
+ *
+ * @author Marcos
+ */
+@FunctionalInterface
+public interface PreparedExpression {
+
+    /**
+     * <p>
+     * It evaluates the expression in a point, as
+     * {@link Expression#evaluate(java.util.Map)} does. The symbols whose value
+     * is null are kept in the result.
+     *
+     * @param values the value of each slot of the bindings
+     * @return {@link Expression}
+     */
+    public Expression evaluate(Space... values);
+
+}
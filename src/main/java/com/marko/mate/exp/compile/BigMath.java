@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.compile;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * <p>
+ * The functions of the instructions of a {@link Program} that
+ * {@link BigDecimal} doesn't have, to any precision. They are computed with
+ * a few guard digits by their series, after reducing the argument to where
+ * the series converge fast, and rounded to the math context at the end, so
+ * their error is about one unit in the last digit.
+ * <p>
+ * The angles are in degrees, as in {@code Sin} and {@code Cos}, so their
+ * reduction to a turn is exact whatever their magnitude.
+ *
+ * @author Marcos
+ */
+final class BigMath {
+
+    private static final int GUARD_DIGITS = 10;
+
+    private static final BigDecimal TWO = BigDecimal.valueOf(2),
+            HALF = new BigDecimal("0.5"),
+            RIGHT = BigDecimal.valueOf(90),
+            STRAIGHT = BigDecimal.valueOf(180),
+            TURN = BigDecimal.valueOf(360);
+
+    private BigMath() {
+    }
+
+    private static MathContext guarded(MathContext mc, int extra) {
+        return new MathContext(mc.getPrecision() + GUARD_DIGITS + extra, mc.getRoundingMode());
+    }
+
+    /**
+     *
+     * @param degrees
+     * @param mc
+     * @return the sine of an angle in degrees
+     */
+    static BigDecimal sin(BigDecimal degrees, MathContext mc) {
+        // the reduction of an angle in degrees to [-90, 90] is exact
+        BigDecimal d = degrees.remainder(TURN);
+        if (d.compareTo(STRAIGHT) > 0) {
+            d = d.subtract(TURN);
+        } else if (d.compareTo(STRAIGHT.negate()) < 0) {
+            d = d.add(TURN);
+        }
+        if (d.compareTo(RIGHT) > 0) {
+            d = STRAIGHT.subtract(d);
+        } else if (d.compareTo(RIGHT.negate()) < 0) {
+            d = STRAIGHT.negate().subtract(d);
+        }
+        if (d.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        if (d.abs().compareTo(RIGHT) == 0) {
+            return BigDecimal.valueOf(d.signum());
+        }
+
+        MathContext work = guarded(mc, 0);
+        BigDecimal x = d.multiply(pi(work), work).divide(STRAIGHT, work),
+                square = x.multiply(x, work),
+                term = x,
+                sum = x;
+        for (int n = 1; term.abs().compareTo(sum.ulp()) >= 0; n++) {
+            term = term.multiply(square, work)
+                    .divide(BigDecimal.valueOf(-(2L * n) * (2L * n + 1)), work);
+            sum = sum.add(term, work);
+        }
+        return sum.round(mc);
+    }
+
+    /**
+     *
+     * @param degrees
+     * @param mc
+     * @return the cosine of an angle in degrees
+     */
+    static BigDecimal cos(BigDecimal degrees, MathContext mc) {
+        return sin(RIGHT.subtract(degrees), mc);
+    }
+
+    /**
+     *
+     * @param x
+     * @param mc
+     * @return the natural logarithm of x
+     * @throws ArithmeticException if x is not positive
+     */
+    static BigDecimal ln(BigDecimal x, MathContext mc) {
+        if (x.signum() <= 0) {
+            throw new ArithmeticException("Ln of " + x);
+        }
+        MathContext work = guarded(mc, 0);
+        // near one the series converges fast without a reduction, which
+        // would cancel the digits of the result
+        if (x.compareTo(HALF) >= 0 && x.compareTo(TWO) <= 0) {
+            return atanhOfRatio(x, work).round(mc);
+        }
+        // x = m * 10^k with m in [1, 10), and m = 2^j * r with r in [1, 2)
+        int k = x.precision() - x.scale() - 1;
+        BigDecimal m = x.scaleByPowerOfTen(-k);
+        int j = 0;
+        while (m.compareTo(TWO) >= 0) {
+            m = m.divide(TWO);
+            j++;
+        }
+        BigDecimal ln2 = ln2(work);
+        // ln 10 = 3 ln 2 + ln 1.25
+        BigDecimal ln10 = ln2.multiply(BigDecimal.valueOf(3))
+                .add(atanhOfRatio(new BigDecimal("1.25"), work), work);
+        return atanhOfRatio(m, work)
+                .add(ln2.multiply(BigDecimal.valueOf(j)), work)
+                .add(ln10.multiply(BigDecimal.valueOf(k)), work)
+                .round(mc);
+    }
+
+    /**
+     *
+     * @param x
+     * @param mc
+     * @return the logarithm in base 10 of x
+     * @throws ArithmeticException if x is not positive
+     */
+    static BigDecimal log10(BigDecimal x, MathContext mc) {
+        BigDecimal stripped = x.stripTrailingZeros();
+        if (stripped.unscaledValue().equals(BigInteger.ONE)) {
+            // the powers of ten have an exact logarithm
+            return BigDecimal.valueOf(-stripped.scale());
+        }
+        MathContext work = guarded(mc, 0);
+        return ln(x, work).divide(ln(BigDecimal.TEN, work), mc);
+    }
+
+    /**
+     *
+     * @param x
+     * @param mc
+     * @return e to the power of x
+     */
+    static BigDecimal exp(BigDecimal x, MathContext mc) {
+        // exp(x) = exp(x / 2^n)^(2^n), with x / 2^n at most one half, and a
+        // digit more for every 3 squarings that magnify the error
+        int n = 0;
+        double magnitude = x.abs().doubleValue();
+        if (!(magnitude < 1e8)) {
+            throw new ArithmeticException("Exp of " + x + " is out of range");
+        }
+        if (magnitude > 0.5) {
+            n = (int) Math.ceil(Math.log(magnitude / 0.5) / Math.log(2));
+        }
+        MathContext work = guarded(mc, n / 3 + 1);
+        BigDecimal y = x.multiply(BigDecimal.valueOf(5).pow(n))
+                .scaleByPowerOfTen(-n).round(work),
+                term = BigDecimal.ONE,
+                sum = BigDecimal.ONE;
+        for (int k = 1; term.abs().compareTo(sum.ulp()) >= 0; k++) {
+            term = term.multiply(y, work).divide(BigDecimal.valueOf(k), work);
+            sum = sum.add(term, work);
+        }
+        for (int i = 0; i < n; i++) {
+            sum = sum.multiply(sum, work);
+        }
+        return sum.round(mc);
+    }
+
+    /**
+     *
+     * @param base
+     * @param exp
+     * @param mc
+     * @return the base to the power of the exponent, exact up to the math
+     * context if the exponent is an integer
+     * @throws ArithmeticException if the power is not a real number
+     */
+    static BigDecimal pow(BigDecimal base, BigDecimal exp, MathContext mc) {
+        BigDecimal integer = exp.stripTrailingZeros();
+        if (integer.scale() <= 0 && integer.abs().compareTo(BigDecimal.valueOf(999_999_999)) <= 0) {
+            return base.pow(integer.intValueExact(), mc);
+        }
+        if (base.signum() == 0 && exp.signum() > 0) {
+            return BigDecimal.ZERO;
+        }
+        if (base.signum() <= 0) {
+            throw new ArithmeticException("Pow of " + base + " to " + exp);
+        }
+        MathContext work = guarded(mc, 0);
+        return exp(exp.multiply(ln(base, work), work), mc);
+    }
+
+    /**
+     * @return pi, by the formula of Machin
+     */
+    private static BigDecimal pi(MathContext mc) {
+        return atanOfInverse(5, mc).multiply(BigDecimal.valueOf(16))
+                .subtract(atanOfInverse(239, mc).multiply(BigDecimal.valueOf(4)), mc);
+    }
+
+    private static BigDecimal atanOfInverse(int n, MathContext mc) {
+        BigDecimal square = BigDecimal.valueOf((long) n * n),
+                power = BigDecimal.ONE.divide(BigDecimal.valueOf(n), mc),
+                sum = power,
+                term = power;
+        for (int k = 1; term.abs().compareTo(sum.ulp()) >= 0; k++) {
+            power = power.divide(square, mc).negate();
+            term = power.divide(BigDecimal.valueOf(2L * k + 1), mc);
+            sum = sum.add(term, mc);
+        }
+        return sum;
+    }
+
+    private static BigDecimal ln2(MathContext mc) {
+        return atanhOfRatio(TWO, mc);
+    }
+
+    /**
+     * @return ln(x) = 2 atanh((x - 1) / (x + 1)), which converges fast for
+     * the x near one
+     */
+    private static BigDecimal atanhOfRatio(BigDecimal x, MathContext mc) {
+        BigDecimal z = x.subtract(BigDecimal.ONE).divide(x.add(BigDecimal.ONE), mc);
+        if (z.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        BigDecimal square = z.multiply(z, mc),
+                power = z,
+                sum = z,
+                term = z;
+        for (int k = 1; term.abs().compareTo(sum.ulp()) >= 0; k++) {
+            power = power.multiply(square, mc);
+            term = power.divide(BigDecimal.valueOf(2L * k + 1), mc);
+            sum = sum.add(term, mc);
+        }
+        return sum.multiply(TWO, mc);
+    }
+
+}
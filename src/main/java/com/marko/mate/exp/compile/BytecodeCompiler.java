@@ -0,0 +1,534 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.compile;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.Operation;
+import com.marko.mate.exp.operation.Polynomial;
+import com.marko.mate.exp.operation.binop.Division;
+import com.marko.mate.exp.operation.binop.Multiplication;
+import com.marko.mate.exp.operation.binop.Pow;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.operation.unop.Cos;
+import com.marko.mate.exp.operation.unop.Ln;
+import com.marko.mate.exp.operation.unop.Log10;
+import com.marko.mate.exp.operation.unop.Sin;
+import com.marko.mate.exp.symbol.Bindings;
+import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.vectorial.Number;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Compiles an {@link Expression} into a new class whose {@code evaluate}
+ * method is the whole formula, so the JIT can compile it as a single method
+ * instead of one virtual call per node as {@link Expression#compile} does.
+ * <p>
+ * Every generated class is defined in its own class loader, so it is unloaded
+ * as soon as the returned {@link CompiledExpression} is no longer reachable.
+ * A subexpression used more than once, an operation that is the child of
+ * several others, is computed once and kept in a local variable. Formulas
+ * too large for the JIT to compile are compiled with
+ * {@link Expression#compile} instead, as soon as the code grows past the
+ * limit.
+ *
+ * @author Marcos
+ */
+public final class BytecodeCompiler {
+
+    /**
+     * Largest method, in bytes, that HotSpot compiles by default. Bigger
+     * methods are always interpreted.
+     */
+    private static final int HUGE_METHOD_LIMIT = 8000;
+
+    private static final String CLASS_NAME = "com/marko/mate/exp/compile/GeneratedExpression";
+
+    private static final AtomicLong COUNTER = new AtomicLong();
+
+    private static final int ACC_PUBLIC = 0x0001,
+            ACC_FINAL = 0x0010,
+            ACC_SUPER = 0x0020;
+
+    private static final int ICONST_0 = 0x03,
+            DCONST_0 = 0x0e,
+            DCONST_1 = 0x0f,
+            BIPUSH = 0x10,
+            SIPUSH = 0x11,
+            LDC_W = 0x13,
+            LDC2_W = 0x14,
+            ALOAD_0 = 0x2a,
+            DLOAD = 0x18,
+            ALOAD_1 = 0x2b,
+            DALOAD = 0x31,
+            DSTORE = 0x39,
+            DUP2 = 0x5c,
+            DADD = 0x63,
+            DMUL = 0x6b,
+            DDIV = 0x6f,
+            DRETURN = 0xaf,
+            RETURN = 0xb1,
+            INVOKESPECIAL = 0xb7,
+            INVOKESTATIC = 0xb8,
+            WIDE = 0xc4;
+
+    private BytecodeCompiler() {
+    }
+
+    /**
+     * <p>
+     * Compiles the expression to bytecode. The value of {@code symbols[i]} is
+     * read from the index {@code i} of the point, the same as
+     * {@link Expression#compile}.
+     *
+     * @param exp the expression to be compiled
+     * @param symbols the symbols of the expression in the order of the point
+     * @return {@link CompiledExpression}
+     */
+    public static CompiledExpression compile(Expression exp, Symbol... symbols) {
+        return compile(exp, new Bindings(symbols));
+    }
+
+    /**
+     * <p>
+     * Compiles the expression to bytecode, reading the value of each symbol
+     * from its slot in the bindings.
+     *
+     * @param exp the expression to be compiled
+     * @param bindings the slots of the symbols of the expression
+     * @return {@link CompiledExpression}
+     */
+    public static CompiledExpression compile(Expression exp, Bindings bindings) {
+
+        String name = CLASS_NAME + COUNTER.incrementAndGet();
+        ConstantPool pool = new ConstantPool();
+        Code code = new Code(pool, bindings);
+        code.count(exp);
+        code.emit(exp);
+        code.op(DRETURN);
+
+        if (code.length() > HUGE_METHOD_LIMIT) {
+            return exp.compile(bindings);
+        }
+
+        byte[] bytes = write(name, pool, code);
+        try {
+            Class<?> type = new Loader(CompiledExpression.class.getClassLoader())
+                    .define(bytes);
+            return (CompiledExpression) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Cannot load compiled expression", ex);
+        }
+    }
+
+    private static byte[] write(String name, ConstantPool pool, Code code) {
+
+        int thisClass = pool.type(name),
+                superClass = pool.type("java/lang/Object"),
+                compiledExpression = pool.type(CompiledExpression.class.getName().replace('.', '/')),
+                objectInit = pool.method("java/lang/Object", "<init>", "()V"),
+                codeName = pool.utf8("Code"),
+                initName = pool.utf8("<init>"),
+                initType = pool.utf8("()V"),
+                evaluateName = pool.utf8("evaluate"),
+                evaluateType = pool.utf8("([D)D");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(52);
+            pool.write(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(compiledExpression);
+            out.writeShort(0);
+            out.writeShort(2);
+
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort(initName);
+            out.writeShort(initType);
+            out.writeShort(1);
+            writeCode(out, codeName, 1, 1, new byte[]{
+                (byte) ALOAD_0,
+                (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit,
+                (byte) RETURN
+            });
+
+            out.writeShort(ACC_PUBLIC | ACC_FINAL);
+            out.writeShort(evaluateName);
+            out.writeShort(evaluateType);
+            out.writeShort(1);
+            writeCode(out, codeName, code.maxStack, code.maxLocals, code.toByteArray());
+
+            out.writeShort(0);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeCode(DataOutputStream out, int codeName, int maxStack,
+            int maxLocals, byte[] code) throws IOException {
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    /**
+     * The body of the generated {@code evaluate} method. The code has no
+     * branches, so it doesn't need a stack map.
+     */
+    private static final class Code extends ByteArrayOutputStream {
+
+        private final ConstantPool pool;
+
+        private final Bindings bindings;
+
+        /**
+         * The number of parents of every operation, the local variable of
+         * the ones with more than one once they are computed, and the
+         * expression of every polynomial.
+         */
+        private final Map<Expression, Integer> uses = new IdentityHashMap<>(),
+                locals = new IdentityHashMap<>();
+
+        private final Map<Expression, Expression> polynomials = new IdentityHashMap<>();
+
+        private int stack, maxStack;
+
+        /**
+         * The local variables: this, the point and a double for every shared
+         * operation.
+         */
+        private int maxLocals = 2;
+
+        private Code(ConstantPool pool, Bindings bindings) {
+            this.pool = pool;
+            this.bindings = bindings;
+        }
+
+        private int length() {
+            return count;
+        }
+
+        private void op(int opcode) {
+            write(opcode);
+        }
+
+        private void u2(int value) {
+            write(value >> 8);
+            write(value);
+        }
+
+        private void push(int slots) {
+            stack += slots;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        /**
+         * Counts the parents of every operation, visiting the children of
+         * each one only once.
+         */
+        private void count(Expression exp) {
+            if (!(exp instanceof Operation) || uses.merge(exp, 1, Integer::sum) > 1) {
+                return;
+            }
+            if (exp instanceof Polynomial) {
+                Expression expanded = ((Polynomial) exp).toExpression();
+                polynomials.put(exp, expanded);
+                count(expanded);
+            } else {
+                for (Expression child : ((Operation) exp).getExpressions()) {
+                    count(child);
+                }
+            }
+        }
+
+        private void emit(Expression exp) {
+
+            if (count > HUGE_METHOD_LIMIT) {
+                // it will not be used
+                return;
+            }
+            Integer local = locals.get(exp);
+            if (local != null) {
+                wide(DLOAD, local);
+                push(2);
+                return;
+            }
+            emitOperation(exp);
+            if (uses.getOrDefault(exp, 0) > 1) {
+                local = maxLocals;
+                maxLocals += 2;
+                locals.put(exp, local);
+                op(DUP2);
+                push(2);
+                wide(DSTORE, local);
+                stack -= 2;
+            }
+        }
+
+        private void emitOperation(Expression exp) {
+
+            if (exp instanceof Number) {
+                constant(((Number) exp).doubleValue());
+            } else if (exp instanceof Symbol) {
+                load(index((Symbol) exp));
+            } else if (exp instanceof Sum) {
+                fold(((Sum) exp).getExpressions(), DADD);
+            } else if (exp instanceof Multiplication) {
+                fold(((Multiplication) exp).getExpressions(), DMUL);
+            } else if (exp instanceof Division) {
+                binary(((Division) exp).getExpressions(), DDIV);
+            } else if (exp instanceof Pow) {
+                List<Expression> exprs = ((Pow) exp).getExpressions();
+                emit(exprs.get(0));
+                emit(exprs.get(1));
+                math("pow", "(DD)D");
+                stack -= 2;
+            } else if (exp instanceof Sin) {
+                emit(((Sin) exp).getExpressions().get(0));
+                math("toRadians", "(D)D");
+                math("sin", "(D)D");
+            } else if (exp instanceof Cos) {
+                emit(((Cos) exp).getExpressions().get(0));
+                math("toRadians", "(D)D");
+                math("cos", "(D)D");
+            } else if (exp instanceof Ln) {
+                emit(((Ln) exp).getExpressions().get(0));
+                math("log", "(D)D");
+            } else if (exp instanceof Log10) {
+                emit(((Log10) exp).getExpressions().get(0));
+                math("log10", "(D)D");
+            } else if (exp instanceof Polynomial) {
+                emit(polynomials.get(exp));
+            } else {
+                throw new UnsupportedOperationException(
+                        exp.getClass().getSimpleName() + " cannot be compiled");
+            }
+        }
+
+        private void fold(List<Expression> exprs, int opcode) {
+            if (exprs.isEmpty()) {
+                op(DCONST_0);
+                push(2);
+                return;
+            }
+            emit(exprs.get(0));
+            for (int i = 1; i < exprs.size(); i++) {
+                emit(exprs.get(i));
+                op(opcode);
+                stack -= 2;
+            }
+        }
+
+        private void binary(List<Expression> exprs, int opcode) {
+            emit(exprs.get(0));
+            emit(exprs.get(1));
+            op(opcode);
+            stack -= 2;
+        }
+
+        /**
+         * An instruction with the index of a local variable.
+         */
+        private void wide(int opcode, int index) {
+            if (index <= 0xff) {
+                op(opcode);
+                write(index);
+            } else {
+                op(WIDE);
+                op(opcode);
+                u2(index);
+            }
+        }
+
+        private void math(String name, String type) {
+            op(INVOKESTATIC);
+            u2(pool.method("java/lang/Math", name, type));
+        }
+
+        private void constant(double value) {
+            if (Double.doubleToRawLongBits(value) == 0L) {
+                op(DCONST_0);
+            } else if (value == 1) {
+                op(DCONST_1);
+            } else {
+                op(LDC2_W);
+                u2(pool.constant(value));
+            }
+            push(2);
+        }
+
+        private void load(int index) {
+            op(ALOAD_1);
+            push(1);
+            if (index <= 5) {
+                op(ICONST_0 + index);
+            } else if (index <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                write(index);
+            } else if (index <= Short.MAX_VALUE) {
+                op(SIPUSH);
+                u2(index);
+            } else {
+                op(LDC_W);
+                u2(pool.integer(index));
+            }
+            push(1);
+            op(DALOAD);
+            stack -= 2;
+            push(2);
+        }
+
+        private int index(Symbol symbol) {
+            int slot = bindings.slotOf(symbol);
+            if (slot < 0) {
+                throw new IllegalArgumentException("Unbound symbol " + symbol);
+            }
+            return slot;
+        }
+
+    }
+
+    /**
+     * The constant pool of the generated class. Every entry is added only
+     * once.
+     */
+    private static final class ConstantPool {
+
+        private static final int UTF8 = 1,
+                INTEGER = 3,
+                DOUBLE = 6,
+                CLASS = 7,
+                METHOD_REF = 10,
+                NAME_AND_TYPE = 12;
+
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        private final List<byte[]> entries = new ArrayList<>();
+
+        private int size = 1;
+
+        private int utf8(String value) {
+            return add("U" + value, 1, out -> {
+                out.writeByte(UTF8);
+                out.writeUTF(value);
+            });
+        }
+
+        private int type(String name) {
+            int utf8 = utf8(name);
+            return add("C" + name, 1, out -> {
+                out.writeByte(CLASS);
+                out.writeShort(utf8);
+            });
+        }
+
+        private int integer(int value) {
+            return add("I" + value, 1, out -> {
+                out.writeByte(INTEGER);
+                out.writeInt(value);
+            });
+        }
+
+        private int constant(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            return add("D" + bits, 2, out -> {
+                out.writeByte(DOUBLE);
+                out.writeLong(bits);
+            });
+        }
+
+        private int method(String owner, String name, String type) {
+            int ownerIndex = type(owner),
+                    nameIndex = utf8(name),
+                    typeIndex = utf8(type),
+                    nameAndType = add("N" + name + type, 1, out -> {
+                        out.writeByte(NAME_AND_TYPE);
+                        out.writeShort(nameIndex);
+                        out.writeShort(typeIndex);
+                    });
+            return add("M" + owner + "." + name + type, 1, out -> {
+                out.writeByte(METHOD_REF);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        private int add(String key, int slots, Entry entry) {
+            Integer index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                entry.write(out);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            entries.add(bytes.toByteArray());
+            index = size;
+            size += slots;
+            indexes.put(key, index);
+            return index;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeShort(size);
+            for (byte[] entry : entries) {
+                out.write(entry);
+            }
+        }
+
+        @FunctionalInterface
+        private interface Entry {
+
+            void write(DataOutputStream out) throws IOException;
+        }
+
+    }
+
+    private static final class Loader extends ClassLoader {
+
+        private Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(byte[] bytes) {
+            return defineClass(null, bytes, 0, bytes.length);
+        }
+
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.compile;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * <p>
+ * An {@link com.marko.mate.exp.Expression} compiled to primitive double
+ * arithmetic. The point is a flat array where each index holds the value of
+ * the symbol that was bound to that position when the expression was compiled.
+ * <p>
+ * A compiled expression is immutable and does not allocate when it is
+ * evaluated, so the same instance can be reused for every point and shared
+ * between threads.
+ *
+ * @author Marcos
+ */
+@FunctionalInterface
+public interface CompiledExpression extends ToDoubleFunction<double[]> {
+
+    /**
+     * Evaluates the compiled expression in a point.
+     *
+     * @param point the values of the symbols, in the order they were bound
+     * @return the value of the expression
+     */
+    public double evaluate(double[] point);
+
+    @Override
+    public default double applyAsDouble(double[] point) {
+        return evaluate(point);
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.compile;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * <p>
+ * The precision of an evaluation of a {@link Program} with
+ * {@link Program#evaluate(double[], double[], Precision)}: the maximum
+ * relative error accepted in its results, which is absolute for the results
+ * that cannot be told from zero, the math context of the first evaluation
+ * with {@link BigDecimal}s when the doubles are not enough, and the maximum
+ * number of digits it may grow to.
+ * <p>
+ * A precision is immutable, so the same instance can be shared by every
+ * evaluation.
+ *
+ * @author Marcos
+ */
+public final class Precision {
+
+    /**
+     * A relative error of {@code 1e-12}, with {@link MathContext#DECIMAL128}
+     * when the doubles are not enough.
+     */
+    public static final Precision DEFAULT = new Precision(MathContext.DECIMAL128, 1e-12);
+
+    private final MathContext mathContext;
+
+    private final double tolerance;
+
+    private final int maxDigits;
+
+    /**
+     *
+     * @param mathContext the math context of the first evaluation with
+     * {@link BigDecimal}s, which may grow to 8 times its digits
+     * @param tolerance the maximum relative error of the results
+     */
+    public Precision(MathContext mathContext, double tolerance) {
+        this(mathContext, tolerance, 8 * mathContext.getPrecision());
+    }
+
+    /**
+     *
+     * @param mathContext the math context of the first evaluation with
+     * {@link BigDecimal}s
+     * @param tolerance the maximum relative error of the results
+     * @param maxDigits the maximum digits of the evaluations with
+     * {@link BigDecimal}s
+     * @throws IllegalArgumentException if the math context has unlimited
+     * precision, the tolerance is negative or the maximum digits are less
+     * than the digits of the math context
+     */
+    public Precision(MathContext mathContext, double tolerance, int maxDigits) {
+        if (mathContext.getPrecision() == 0) {
+            throw new IllegalArgumentException("The precision must be limited");
+        }
+        if (!(tolerance >= 0)) {
+            throw new IllegalArgumentException("Invalid tolerance " + tolerance);
+        }
+        if (maxDigits < mathContext.getPrecision()) {
+            throw new IllegalArgumentException(
+                    "Expected at least " + mathContext.getPrecision()
+                    + " digits but got " + maxDigits);
+        }
+        this.mathContext = mathContext;
+        this.tolerance = tolerance;
+        this.maxDigits = maxDigits;
+    }
+
+    public MathContext getMathContext() {
+        return mathContext;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public int getMaxDigits() {
+        return maxDigits;
+    }
+
+    @Override
+    public String toString() {
+        return "Precision[" + mathContext.getPrecision() + "-" + maxDigits
+                + " digits, tolerance " + tolerance + "]";
+    }
+
+}
@@ -0,0 +1,1535 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.compile;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.Polynomial;
+import com.marko.mate.exp.operation.binop.Division;
+import com.marko.mate.exp.operation.binop.Multiplication;
+import com.marko.mate.exp.operation.binop.Pow;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.operation.unop.Cos;
+import com.marko.mate.exp.operation.unop.Ln;
+import com.marko.mate.exp.operation.unop.Log10;
+import com.marko.mate.exp.operation.unop.Sin;
+import com.marko.mate.exp.symbol.Bindings;
+import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.vectorial.DNumber;
+import com.marko.mate.exp.vectorial.Number;
+import com.marko.mate.exp.vectorial.RNumber;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * An {@link Expression} lowered to a flat list of instructions in postorder.
+ * Every instruction computes one value from the values of previous
+ * instructions, so the whole expression can be evaluated with a single loop
+ * instead of walking the tree.
+ * <p>
+ * The batch evaluation runs every instruction over a chunk of rows at a time,
+ * reading each symbol from its own column, like a vectorized query engine. It
+ * gives exactly the same results as {@link Expression#compile}.
+ * <p>
+ * A program may compute many expressions at once, such as the entries of a
+ * gradient or a hessian. The instructions are numbered by value while they
+ * are lowered, so every distinct subexpression, shared by many expressions
+ * or repeated in the same one, is computed by a single instruction and
+ * evaluated once per point.
+ * <p>
+ * The instructions are also the tape of the reverse mode automatic
+ * differentiation: after evaluating a point, a single sweep over the
+ * instructions backwards finds the derivatives of an output with respect to
+ * all the symbols. The forward mode instead carries the derivative in one
+ * direction next to every value, as a dual number, and finds it in the same
+ * sweep as the values.
+ * <p>
+ * The evaluation with a {@link Precision} finds a bound of the error of
+ * every value next to it, from the rounding of every instruction and the
+ * error of its operands. Only the outputs whose error may be larger than the
+ * tolerance are evaluated again, with {@link BigDecimal}s, and only the
+ * instructions they depend on, with more digits every time until the
+ * tolerance is reached. Most points take only the pass with doubles.
+ * <p>
+ * A program is immutable and every evaluation uses its own buffers, so the
+ * same program can be evaluated by many threads at the same time, as the
+ * parallel batch evaluation does.
+ *
+ * @author Marcos
+ */
+public final class Program {
+
+    /**
+     * The number of rows evaluated at a time by each instruction.
+     */
+    public static final int CHUNK_SIZE = 1024;
+
+    /**
+     * The minimum number of rows evaluated by each task in the parallel batch
+     * evaluation.
+     */
+    public static final int TASK_SIZE = 16 * CHUNK_SIZE;
+
+    /**
+     * The derivative of an angle in radians with respect to the same angle in
+     * degrees.
+     */
+    private static final double DEGREE = Math.PI / 180;
+
+    private static final double LN_10 = Math.log(10);
+
+    /**
+     * The maximum relative error of the rounding of a double.
+     */
+    private static final double UNIT_ROUNDOFF = 0x1p-53;
+
+    static final int CONST = 0,
+            LOAD = 1,
+            ADD = 2,
+            MUL = 3,
+            DIV = 4,
+            POW = 5,
+            SIN = 6,
+            COS = 7,
+            LN = 8,
+            LOG10 = 9;
+
+    /**
+     * The operation of each instruction.
+     */
+    final int[] opcodes;
+
+    /**
+     * The instructions used as operands, or the index of the symbol for
+     * {@code LOAD}.
+     */
+    final int[] left, right;
+
+    /**
+     * The value of the {@code CONST} instructions.
+     */
+    final double[] constants;
+
+    /**
+     * The number of the {@code CONST} instructions, which may not be a
+     * double, or null if numbers with different values have the same double,
+     * and the maximum error of their double.
+     */
+    private final Number[] exactConstants;
+
+    private final double[] constantErrors;
+
+    /**
+     * The instructions that compute the values of the expressions.
+     */
+    final int[] results;
+
+    /**
+     * The number of symbols of the point.
+     */
+    final int arity;
+
+    /**
+     * The chunk buffer where each instruction stores its values in the batch
+     * evaluation. Buffers are reused once their value is no longer needed.
+     */
+    private final int[] buffers;
+
+    private final int bufferCount;
+
+    private Program(Builder builder, int[] results) {
+        int size = builder.size;
+        this.opcodes = Arrays.copyOf(builder.opcodes, size);
+        this.left = Arrays.copyOf(builder.left, size);
+        this.right = Arrays.copyOf(builder.right, size);
+        this.constants = Arrays.copyOf(builder.constants, size);
+        this.exactConstants = Arrays.copyOf(builder.exactConstants, size);
+        this.constantErrors = new double[size];
+        for (int i = 0; i < size; i++) {
+            if (opcodes[i] == CONST) {
+                constantErrors[i] = exactConstants[i] == null
+                        ? Math.ulp(constants[i])
+                        : error(exactConstants[i].value(MathContext.DECIMAL128), constants[i]);
+            }
+        }
+        this.results = results;
+        this.arity = builder.bindings.size();
+        this.buffers = new int[size];
+        this.bufferCount = allocateBuffers();
+    }
+
+    /**
+     * <p>
+     * Lowers an expression to a program. The value of {@code symbols[i]} is
+     * read from the index {@code i} of the point, or from the column
+     * {@code i} in the batch evaluation.
+     *
+     * @param exp the expression to be lowered
+     * @param symbols the symbols of the expression in the order of the point
+     * @return {@link Program}
+     */
+    public static Program of(Expression exp, Symbol... symbols) {
+        return of(exp, new Bindings(symbols));
+    }
+
+    /**
+     * <p>
+     * Lowers an expression to a program. The value of each symbol is read
+     * from its slot in the bindings, both in the point and in the columns of
+     * the batch evaluation.
+     *
+     * @param exp the expression to be lowered
+     * @param bindings the slots of the symbols of the expression
+     * @return {@link Program}
+     */
+    public static Program of(Expression exp, Bindings bindings) {
+        return of(new Expression[]{exp}, bindings);
+    }
+
+    /**
+     * <p>
+     * Lowers many expressions to a single program with one output per
+     * expression, in the same order.
+     *
+     * @param exprs the expressions to be lowered
+     * @param symbols the symbols of the expressions in the order of the point
+     * @return {@link Program}
+     */
+    public static Program of(Expression[] exprs, Symbol... symbols) {
+        return of(exprs, new Bindings(symbols));
+    }
+
+    /**
+     * <p>
+     * Lowers many expressions to a single program with one output per
+     * expression, in the same order. The subexpressions they share are
+     * computed only once.
+     *
+     * @param exprs the expressions to be lowered
+     * @param bindings the slots of the symbols of the expressions
+     * @return {@link Program}
+     */
+    public static Program of(Expression[] exprs, Bindings bindings) {
+        if (exprs.length == 0) {
+            throw new IllegalArgumentException("A program needs at least one expression");
+        }
+        Builder builder = new Builder(bindings);
+        int[] results = new int[exprs.length];
+        for (int i = 0; i < exprs.length; i++) {
+            results[i] = builder.lower(exprs[i]);
+        }
+        return new Program(builder, results);
+    }
+
+    /**
+     *
+     * @return the number of instructions of this program
+     */
+    public int size() {
+        return opcodes.length;
+    }
+
+    /**
+     *
+     * @return the number of expressions computed by this program
+     */
+    public int outputs() {
+        return results.length;
+    }
+
+    /**
+     * <p>
+     * Evaluates all the outputs of this program in a single point.
+     *
+     * @param point the value of each symbol
+     * @param out the array where the value of each output is stored
+     */
+    public void evaluate(double[] point, double[] out) {
+
+        if (point.length != arity) {
+            throw new IllegalArgumentException(
+                    "Expected " + arity + " values but got " + point.length);
+        }
+        if (out.length < results.length) {
+            throw new IllegalArgumentException(
+                    "Expected " + results.length + " outputs but got " + out.length);
+        }
+
+        double[] values = forward(point);
+        for (int j = 0; j < results.length; j++) {
+            out[j] = values[results[j]];
+        }
+    }
+
+    /**
+     * <p>
+     * Evaluates all the outputs of this program in a single point with a
+     * relative error no larger than the tolerance of the precision, or an
+     * absolute error no larger than the tolerance for the outputs that cannot
+     * be told from zero. The point is first evaluated with doubles, with a
+     * bound of the error of every value, and only the outputs whose bound is
+     * larger than the tolerance are evaluated again with {@link BigDecimal}s.
+     *
+     * @param point the value of each symbol, which are exact
+     * @param out the array where the value of each output is stored
+     * @param precision
+     * @throws ArithmeticException if a value of the point, a constant or an
+     * output is not a real number, such as a division by zero
+     */
+    public void evaluate(double[] point, double[] out, Precision precision) {
+        for (double value : point) {
+            if (!Double.isFinite(value)) {
+                throw new ArithmeticException(value + " is not a finite number");
+            }
+        }
+        evaluate(point, null, null, precision, out);
+    }
+
+    /**
+     * <p>
+     * Evaluates all the outputs of this program in a single point with a
+     * relative error no larger than the tolerance of the precision, as
+     * {@link #evaluate(double[], double[], Precision)}. The evaluation with
+     * doubles starts from the double nearest to each number of the point,
+     * with an error of an ulp if it is not exact, and the evaluations with
+     * {@link BigDecimal}s read the value of the numbers with the digits of
+     * their own math context, so a fraction is never rounded to less digits
+     * than the ones of the precision.
+     * <p>
+     * The outputs evaluated with {@link BigDecimal}s are returned with all
+     * their digits, as the exact number of the decimal, so
+     * {@link Number#value(MathContext)} gives as many digits as the precision
+     * asked for, even more than the ones of a double-double.
+     *
+     * @param point the value of each symbol
+     * @param precision
+     * @return the value of each output, a {@link DNumber} if the doubles were
+     * enough and the number of {@link Number#valueOf(BigDecimal)} otherwise
+     * @throws ArithmeticException if a constant or an output is not a real
+     * number, such as a division by zero
+     */
+    public Number[] evaluate(Number[] point, Precision precision) {
+        double[] doubles = new double[point.length],
+                errors = new double[point.length];
+        for (int i = 0; i < point.length; i++) {
+            BigDecimal value = point[i].value(MathContext.DECIMAL128);
+            doubles[i] = value.doubleValue();
+            errors[i] = error(value, doubles[i]);
+        }
+        double[] out = new double[results.length];
+        BigDecimal[] exact = evaluate(doubles, errors, point, precision, out);
+        Number[] outputs = new Number[results.length];
+        for (int j = 0; j < results.length; j++) {
+            outputs[j] = exact == null || exact[j] == null
+                    ? new DNumber(out[j])
+                    : Number.valueOf(exact[j]);
+        }
+        return outputs;
+    }
+
+    /**
+     * @return the bound of the error of the nearest double to a value with
+     * the digits of {@link MathContext#DECIMAL128}, zero if it is exact
+     */
+    private static double error(BigDecimal value, double nearest) {
+        if (!isRounded(value, MathContext.DECIMAL128)
+                && value.compareTo(new BigDecimal(nearest)) == 0) {
+            return 0;
+        }
+        return Math.ulp(nearest);
+    }
+
+    /**
+     * @return if a value of {@link Number#value(MathContext)} may be rounded
+     */
+    private static boolean isRounded(BigDecimal value, MathContext mc) {
+        return value.precision() == mc.getPrecision();
+    }
+
+    /**
+     * Evaluates the outputs with doubles, and again with {@link BigDecimal}s
+     * the ones whose error may be larger than the tolerance.
+     *
+     * @param pointErrors the error of each double of the point, or null if
+     * they are exact
+     * @param exactPoint the number of each double of the point, or null if
+     * they are exact
+     * @return the value of each output evaluated with {@link BigDecimal}s, or
+     * null if the doubles were enough for all of them
+     */
+    private BigDecimal[] evaluate(double[] point, double[] pointErrors, Number[] exactPoint,
+            Precision precision, double[] out) {
+
+        if (point.length != arity) {
+            throw new IllegalArgumentException(
+                    "Expected " + arity + " values but got " + point.length);
+        }
+        if (out.length < results.length) {
+            throw new IllegalArgumentException(
+                    "Expected " + results.length + " outputs but got " + out.length);
+        }
+
+        double[] values = forward(point),
+                errors = errors(values, pointErrors);
+        double tolerance = precision.getTolerance();
+        boolean[] pending = null;
+        for (int j = 0; j < results.length; j++) {
+            int r = results[j];
+            out[j] = values[r];
+            if (!accepts(errors[r], values[r], tolerance)) {
+                if (pending == null) {
+                    pending = new boolean[results.length];
+                }
+                pending[j] = true;
+            }
+        }
+        if (pending == null) {
+            return null;
+        }
+
+        BigDecimal[] outputs = new BigDecimal[results.length];
+        MathContext mc = precision.getMathContext();
+        for (boolean any = true; any;) {
+            BigDecimal[] exact = new BigDecimal[opcodes.length];
+            double[] exactErrors = new double[opcodes.length];
+            exact(point, exactPoint, values, errors, cone(pending, errors), mc, exact, exactErrors);
+
+            boolean last = mc.getPrecision() >= precision.getMaxDigits();
+            any = false;
+            for (int j = 0; j < results.length; j++) {
+                if (!pending[j]) {
+                    continue;
+                }
+                int r = results[j];
+                // the best value found, if no precision is enough
+                outputs[j] = exact[r];
+                out[j] = exact[r].doubleValue();
+                if (last || accepts(exactErrors[r], out[j], tolerance)) {
+                    pending[j] = false;
+                } else {
+                    any = true;
+                }
+            }
+            mc = new MathContext(
+                    Math.min(2 * mc.getPrecision(), precision.getMaxDigits()),
+                    mc.getRoundingMode());
+        }
+        return outputs;
+    }
+
+    /**
+     * @return if the bound of the error of a value is within the tolerance,
+     * relative to the value, or absolute if the value cannot be told from
+     * zero, and never if the bound is not finite
+     */
+    private static boolean accepts(double error, double value, double tolerance) {
+        if (!Double.isFinite(error)) {
+            return false;
+        }
+        return error <= tolerance * Math.abs(value)
+                || (Math.abs(value) <= error && error <= tolerance);
+    }
+
+    /**
+     * @return the bound of the error of the value of every instruction in
+     * the pass with doubles
+     */
+    private double[] errors(double[] values, double[] pointErrors) {
+        double[] errors = new double[opcodes.length];
+        for (int i = 0; i < opcodes.length; i++) {
+            int l = left[i], r = right[i];
+            switch (opcodes[i]) {
+                case CONST:
+                    errors[i] = constantErrors[i];
+                    break;
+                case LOAD:
+                    errors[i] = pointErrors == null ? 0 : pointErrors[l];
+                    break;
+                case SIN:
+                case COS:
+                    // the angle in radians is rounded too
+                    errors[i] = bound(opcodes[i], values[l], 0,
+                            errors[l] + 2 * UNIT_ROUNDOFF * Math.abs(values[l]), 0,
+                            values[i], UNIT_ROUNDOFF);
+                    break;
+                case LN:
+                case LOG10:
+                    errors[i] = bound(opcodes[i], values[l], 0, errors[l], 0,
+                            values[i], UNIT_ROUNDOFF);
+                    break;
+                default:
+                    errors[i] = bound(opcodes[i], values[l], values[r], errors[l], errors[r],
+                            values[i], UNIT_ROUNDOFF);
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * <p>
+     * The bound of the error of the value of an instruction, from the errors
+     * of its operands and the rounding of the value itself. The functions are
+     * rounded to two units.
+     *
+     * @param a the value of the left operand
+     * @param b the value of the right operand
+     * @param ea the error of the left operand
+     * @param eb the error of the right operand
+     * @param v the value of the instruction
+     * @param u the maximum relative error of the rounding
+     */
+    private static double bound(int opcode, double a, double b, double ea, double eb,
+            double v, double u) {
+
+        if (!Double.isFinite(v)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double rounding = u * Math.abs(v);
+        switch (opcode) {
+            case ADD:
+                return ea + eb + rounding;
+            case MUL:
+                return Math.abs(a) * eb + Math.abs(b) * ea + ea * eb + rounding;
+            case DIV: {
+                double margin = Math.abs(b) - eb;
+                if (!(margin > 0)) {
+                    return Double.POSITIVE_INFINITY;
+                }
+                return (ea + Math.abs(v) * eb) / margin + rounding;
+            }
+            case POW: {
+                if (ea == 0 && eb == 0) {
+                    return 2 * rounding;
+                }
+                double rho = ea / Math.abs(a);
+                if (!(rho < 1) || (eb != 0 && a <= 0)) {
+                    return Double.POSITIVE_INFINITY;
+                }
+                // (a (1 + d))^(b + e) = a^b (1 + d)^b a^e (1 + d)^e
+                double delta = -(Math.abs(b) + eb) * Math.log1p(-rho)
+                        + (eb == 0 ? 0 : Math.abs(Math.log(Math.abs(a))) * eb);
+                return Math.abs(v) * Math.expm1(delta) + 2 * rounding;
+            }
+            case SIN:
+            case COS:
+                return ea * DEGREE + 2 * rounding;
+            case LN:
+            case LOG10: {
+                double rho = ea / Math.abs(a);
+                if (!(rho < 1)) {
+                    return Double.POSITIVE_INFINITY;
+                }
+                double error = -Math.log1p(-rho);
+                return (opcode == LN ? error : error / LN_10) + 2 * rounding;
+            }
+            default:
+                throw new IllegalStateException("Unknown opcode " + opcode);
+        }
+    }
+
+    /**
+     * @return the instructions the pending outputs depend on, without the
+     * operands of the instructions whose double is exact
+     */
+    private boolean[] cone(boolean[] pending, double[] errors) {
+        boolean[] needed = new boolean[opcodes.length];
+        for (int j = 0; j < results.length; j++) {
+            if (pending[j]) {
+                needed[results[j]] = true;
+            }
+        }
+        for (int i = opcodes.length - 1; i >= 0; i--) {
+            if (!needed[i] || errors[i] == 0) {
+                continue;
+            }
+            switch (opcodes[i]) {
+                case CONST:
+                case LOAD:
+                    break;
+                case SIN:
+                case COS:
+                case LN:
+                case LOG10:
+                    needed[left[i]] = true;
+                    break;
+                default:
+                    needed[left[i]] = true;
+                    needed[right[i]] = true;
+            }
+        }
+        return needed;
+    }
+
+    /**
+     * Evaluates the needed instructions with {@link BigDecimal}s, with the
+     * bound of their errors.
+     */
+    private void exact(double[] point, Number[] exactPoint, double[] values, double[] errors,
+            boolean[] needed, MathContext mc, BigDecimal[] exact, double[] exactErrors) {
+
+        double u = Math.max(Math.pow(10, 1 - mc.getPrecision()) / 2, Double.MIN_VALUE);
+        for (int i = 0; i < opcodes.length; i++) {
+            if (!needed[i]) {
+                continue;
+            }
+            int l = left[i], r = right[i];
+            if (opcodes[i] == CONST) {
+                if (exactConstants[i] == null) {
+                    if (!Double.isFinite(constants[i])) {
+                        throw new ArithmeticException(constants[i] + " is not a finite number");
+                    }
+                    exact[i] = new BigDecimal(constants[i]);
+                    exactErrors[i] = constantErrors[i];
+                } else {
+                    exact[i] = exactConstants[i].value(mc);
+                    exactErrors[i] = isRounded(exact[i], mc) ? u * Math.abs(constants[i]) : 0;
+                }
+                continue;
+            }
+            if (opcodes[i] == LOAD) {
+                if (exactPoint == null) {
+                    exact[i] = new BigDecimal(point[l]);
+                } else {
+                    exact[i] = exactPoint[l].value(mc);
+                    exactErrors[i] = isRounded(exact[i], mc) ? u * Math.abs(point[l]) : 0;
+                }
+                continue;
+            }
+            if (errors[i] == 0) {
+                // the double is exact, so its operands are not needed
+                exact[i] = new BigDecimal(values[i]);
+                continue;
+            }
+            BigDecimal a = exact[l],
+                    b = r < 0 ? null : exact[r];
+            switch (opcodes[i]) {
+                case ADD:
+                    exact[i] = a.add(b, mc);
+                    break;
+                case MUL:
+                    exact[i] = a.multiply(b, mc);
+                    break;
+                case DIV:
+                    exact[i] = a.divide(b, mc);
+                    break;
+                case POW:
+                    exact[i] = BigMath.pow(a, b, mc);
+                    break;
+                case SIN:
+                    exact[i] = BigMath.sin(a, mc);
+                    break;
+                case COS:
+                    exact[i] = BigMath.cos(a, mc);
+                    break;
+                case LN:
+                    exact[i] = BigMath.ln(a, mc);
+                    break;
+                case LOG10:
+                    exact[i] = BigMath.log10(a, mc);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode " + opcodes[i]);
+            }
+            exactErrors[i] = bound(opcodes[i], a.doubleValue(), b == null ? 0 : b.doubleValue(),
+                    exactErrors[l], r < 0 ? 0 : exactErrors[r], exact[i].doubleValue(), u);
+        }
+    }
+
+    /**
+     * <p>
+     * Evaluates the first output of this program in a point and finds its
+     * gradient by reverse mode automatic differentiation: the values of all
+     * the instructions are recorded in one forward sweep, and the derivative
+     * of the output with respect to every instruction is propagated from the
+     * output to the symbols in one backward sweep. It costs a small multiple
+     * of one evaluation, whatever the number of symbols.
+     *
+     * @param point the value of each symbol
+     * @param gradient the array where the derivative with respect to each
+     * symbol is stored, in the same order as the point
+     * @return the value of the first output in the point
+     */
+    public double gradient(double[] point, double[] gradient) {
+
+        if (point.length != arity || gradient.length != arity) {
+            throw new IllegalArgumentException(
+                    "Expected " + arity + " values but got " + point.length
+                    + " and " + gradient.length);
+        }
+
+        double[] values = forward(point);
+        double[] adjoints = new double[opcodes.length];
+        adjoints[results[0]] = 1;
+        Arrays.fill(gradient, 0);
+
+        for (int i = results[0]; i >= 0; i--) {
+            double adjoint = adjoints[i];
+            if (adjoint == 0) {
+                continue;
+            }
+            int l = left[i], r = right[i];
+            switch (opcodes[i]) {
+                case CONST:
+                    break;
+                case LOAD:
+                    gradient[l] += adjoint;
+                    break;
+                case ADD:
+                    adjoints[l] += adjoint;
+                    adjoints[r] += adjoint;
+                    break;
+                case MUL:
+                    adjoints[l] += adjoint * values[r];
+                    adjoints[r] += adjoint * values[l];
+                    break;
+                case DIV:
+                    adjoints[l] += adjoint / values[r];
+                    adjoints[r] -= adjoint * values[i] / values[r];
+                    break;
+                case POW:
+                    // the derivative of x^0 is zero even if x^-1 is not finite
+                    if (values[r] != 0) {
+                        adjoints[l] += adjoint * values[r] * Math.pow(values[l], values[r] - 1);
+                    }
+                    // a constant exponent has no derivative to propagate, and
+                    // its logarithm may not be defined
+                    if (opcodes[r] != CONST) {
+                        adjoints[r] += adjoint * values[i] * Math.log(values[l]);
+                    }
+                    break;
+                case SIN:
+                    adjoints[l] += adjoint * Math.cos(Math.toRadians(values[l])) * DEGREE;
+                    break;
+                case COS:
+                    adjoints[l] -= adjoint * Math.sin(Math.toRadians(values[l])) * DEGREE;
+                    break;
+                case LN:
+                    adjoints[l] += adjoint / values[l];
+                    break;
+                case LOG10:
+                    adjoints[l] += adjoint / (values[l] * LN_10);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode " + opcodes[i]);
+            }
+        }
+        return values[results[0]];
+    }
+
+    /**
+     * <p>
+     * Evaluates all the outputs of this program in a point together with
+     * their derivatives in a direction, by forward mode automatic
+     * differentiation: every instruction computes its value and its tangent,
+     * the derivative of the value in the direction, from the values and the
+     * tangents of its operands. For a program of many expressions, the
+     * tangents are the product of their jacobian by the direction, and for a
+     * direction with a single one, at the index {@code k}, they are the
+     * derivatives with respect to the symbol {@code k}.
+     * <p>
+     * As in {@link #gradient(double[], double[])}, the derivatives of
+     * {@link Sin} and {@link Cos} include the factor {@code PI / 180}.
+     *
+     * @param point the value of each symbol
+     * @param direction the tangent of each symbol
+     * @param out the array where the value of each output is stored
+     * @param tangents the array where the derivative of each output in the
+     * direction is stored
+     */
+    public void derivative(double[] point, double[] direction, double[] out, double[] tangents) {
+
+        if (point.length != arity || direction.length != arity) {
+            throw new IllegalArgumentException(
+                    "Expected " + arity + " values but got " + point.length
+                    + " and " + direction.length);
+        }
+        if (out.length < results.length || tangents.length < results.length) {
+            throw new IllegalArgumentException(
+                    "Expected " + results.length + " outputs but got " + out.length
+                    + " and " + tangents.length);
+        }
+
+        double[] values = new double[opcodes.length],
+                dots = new double[opcodes.length];
+        forward(point, direction, values, dots);
+        for (int j = 0; j < results.length; j++) {
+            out[j] = values[results[j]];
+            tangents[j] = dots[results[j]];
+        }
+    }
+
+    /**
+     * <p>
+     * Evaluates the first output of this program in a point and finds the
+     * product of its hessian by a vector, without building the hessian, by
+     * forward over reverse automatic differentiation: the reverse sweep of
+     * {@link #gradient(double[], double[])} is run on the dual numbers of
+     * {@link #derivative(double[], double[], double[], double[])}, so every
+     * adjoint carries its own derivative in the direction of the vector. The
+     * derivatives of the adjoints of the symbols are the product, the
+     * derivative of the gradient in that direction. It costs a few
+     * evaluations, whatever the number of symbols.
+     *
+     * @param point the value of each symbol
+     * @param vector the vector multiplied by the hessian
+     * @param product the array where the product is stored, in the same
+     * order as the point
+     * @return the value of the first output in the point
+     */
+    public double hessianVectorProduct(double[] point, double[] vector, double[] product) {
+
+        if (point.length != arity || vector.length != arity || product.length != arity) {
+            throw new IllegalArgumentException(
+                    "Expected " + arity + " values but got " + point.length
+                    + ", " + vector.length + " and " + product.length);
+        }
+
+        double[] values = new double[opcodes.length],
+                dots = new double[opcodes.length];
+        forward(point, vector, values, dots);
+
+        // the adjoint of every instruction and its derivative in the
+        // direction of the vector
+        double[] adjoints = new double[opcodes.length],
+                adjointDots = new double[opcodes.length];
+        adjoints[results[0]] = 1;
+        Arrays.fill(product, 0);
+
+        for (int i = results[0]; i >= 0; i--) {
+            double a = adjoints[i], da = adjointDots[i];
+            if (a == 0 && da == 0) {
+                continue;
+            }
+            int l = left[i], r = right[i];
+            // the derivative of the instruction with respect to the left
+            // operand, and its derivative in the direction
+            double g, dg;
+            switch (opcodes[i]) {
+                case CONST:
+                    continue;
+                case LOAD:
+                    product[l] += da;
+                    continue;
+                case ADD:
+                    adjoints[r] += a;
+                    adjointDots[r] += da;
+                    g = 1;
+                    dg = 0;
+                    break;
+                case MUL:
+                    adjoints[r] += a * values[l];
+                    adjointDots[r] += da * values[l] + a * dots[l];
+                    g = values[r];
+                    dg = dots[r];
+                    break;
+                case DIV: {
+                    double q = values[i] / values[r],
+                            dq = (dots[i] - q * dots[r]) / values[r];
+                    adjoints[r] -= a * q;
+                    adjointDots[r] -= da * q + a * dq;
+                    g = 1 / values[r];
+                    dg = -dots[r] / (values[r] * values[r]);
+                    break;
+                }
+                case POW: {
+                    double x = values[l], y = values[r],
+                            dx = dots[l], dy = dots[r],
+                            power = Math.pow(x, y - 1);
+                    // the derivative of x^0 is zero even if x^-1 is not
+                    // finite
+                    g = y != 0 ? y * power : 0;
+                    dg = dy != 0 ? dy * power : 0;
+                    // the second derivative of x^0 and x^1 is zero even if
+                    // x^(y - 2) is not finite
+                    if (dx != 0 && y != 0 && y != 1) {
+                        dg += y * (y - 1) * Math.pow(x, y - 2) * dx;
+                    }
+                    if (dy != 0) {
+                        dg += y * power * Math.log(x) * dy;
+                    }
+                    if (opcodes[r] != CONST) {
+                        double log = Math.log(x),
+                                gr = values[i] * log,
+                                dgr = dots[i] * log + values[i] * dx / x;
+                        adjoints[r] += a * gr;
+                        adjointDots[r] += da * gr + a * dgr;
+                    }
+                    break;
+                }
+                case SIN: {
+                    double radians = Math.toRadians(values[l]);
+                    g = Math.cos(radians) * DEGREE;
+                    dg = -Math.sin(radians) * DEGREE * DEGREE * dots[l];
+                    break;
+                }
+                case COS: {
+                    double radians = Math.toRadians(values[l]);
+                    g = -Math.sin(radians) * DEGREE;
+                    dg = -Math.cos(radians) * DEGREE * DEGREE * dots[l];
+                    break;
+                }
+                case LN:
+                    g = 1 / values[l];
+                    dg = -dots[l] / (values[l] * values[l]);
+                    break;
+                case LOG10:
+                    g = 1 / (values[l] * LN_10);
+                    dg = -dots[l] / (values[l] * values[l] * LN_10);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode " + opcodes[i]);
+            }
+            adjoints[l] += a * g;
+            adjointDots[l] += da * g + a * dg;
+        }
+        return values[results[0]];
+    }
+
+    /**
+     * Stores in {@code values} and {@code dots} the value of every instruction
+     * in the point and its derivative in the direction.
+     */
+    private void forward(double[] point, double[] direction, double[] values, double[] dots) {
+
+        for (int i = 0; i < opcodes.length; i++) {
+            int l = left[i], r = right[i];
+            switch (opcodes[i]) {
+                case CONST:
+                    values[i] = constants[i];
+                    break;
+                case LOAD:
+                    values[i] = point[l];
+                    dots[i] = direction[l];
+                    break;
+                case ADD:
+                    values[i] = values[l] + values[r];
+                    dots[i] = dots[l] + dots[r];
+                    break;
+                case MUL:
+                    values[i] = values[l] * values[r];
+                    dots[i] = dots[l] * values[r] + values[l] * dots[r];
+                    break;
+                case DIV:
+                    values[i] = values[l] / values[r];
+                    dots[i] = (dots[l] - values[i] * dots[r]) / values[r];
+                    break;
+                case POW:
+                    values[i] = Math.pow(values[l], values[r]);
+                    dots[i] = 0;
+                    // the derivative of x^0 is zero even if x^-1 is not finite
+                    if (dots[l] != 0 && values[r] != 0) {
+                        dots[i] = dots[l] * values[r] * Math.pow(values[l], values[r] - 1);
+                    }
+                    // the logarithm of the base may not be defined when the
+                    // exponent doesn't change
+                    if (dots[r] != 0) {
+                        dots[i] += dots[r] * values[i] * Math.log(values[l]);
+                    }
+                    break;
+                case SIN:
+                    values[i] = Math.sin(Math.toRadians(values[l]));
+                    dots[i] = dots[l] * Math.cos(Math.toRadians(values[l])) * DEGREE;
+                    break;
+                case COS:
+                    values[i] = Math.cos(Math.toRadians(values[l]));
+                    dots[i] = -dots[l] * Math.sin(Math.toRadians(values[l])) * DEGREE;
+                    break;
+                case LN:
+                    values[i] = Math.log(values[l]);
+                    dots[i] = dots[l] / values[l];
+                    break;
+                case LOG10:
+                    values[i] = Math.log10(values[l]);
+                    dots[i] = dots[l] / (values[l] * LN_10);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode " + opcodes[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the value of every instruction in the point
+     */
+    private double[] forward(double[] point) {
+
+        double[] values = new double[opcodes.length];
+        for (int i = 0; i < opcodes.length; i++) {
+            switch (opcodes[i]) {
+                case CONST:
+                    values[i] = constants[i];
+                    break;
+                case LOAD:
+                    values[i] = point[left[i]];
+                    break;
+                case ADD:
+                    values[i] = values[left[i]] + values[right[i]];
+                    break;
+                case MUL:
+                    values[i] = values[left[i]] * values[right[i]];
+                    break;
+                case DIV:
+                    values[i] = values[left[i]] / values[right[i]];
+                    break;
+                case POW:
+                    values[i] = Math.pow(values[left[i]], values[right[i]]);
+                    break;
+                case SIN:
+                    values[i] = Math.sin(Math.toRadians(values[left[i]]));
+                    break;
+                case COS:
+                    values[i] = Math.cos(Math.toRadians(values[left[i]]));
+                    break;
+                case LN:
+                    values[i] = Math.log(values[left[i]]);
+                    break;
+                case LOG10:
+                    values[i] = Math.log10(values[left[i]]);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode " + opcodes[i]);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * <p>
+     * Evaluates this program for all the rows of the columns. Only the first
+     * output is stored.
+     *
+     * @param columns the values of each symbol, one column per symbol
+     * @param out the array where the value of each row is stored
+     */
+    public void evaluateBatch(double[][] columns, double[] out) {
+        evaluateBatch(columns, out, 0, out.length);
+    }
+
+    /**
+     * <p>
+     * Evaluates all the outputs of this program for all the rows of the
+     * columns.
+     *
+     * @param columns the values of each symbol, one column per symbol
+     * @param out the arrays where the values of each output are stored, one
+     * per output, all of them with the same length
+     */
+    public void evaluateBatch(double[][] columns, double[][] out) {
+        checkOutputs(out);
+        evaluateBatch(columns, out, 0, out[0].length);
+    }
+
+    /**
+     * <p>
+     * Evaluates this program for all the rows of the columns, splitting them
+     * in tasks that are run by the pool.
+     *
+     * @param columns the values of each symbol, one column per symbol
+     * @param out the array where the value of each row is stored
+     * @param pool the pool that runs the tasks
+     */
+    public void evaluateBatch(double[][] columns, double[] out, ForkJoinPool pool) {
+        checkBatch(columns, out.length, 0, out.length);
+        pool.invoke(new BatchTask(columns, new double[][]{out}, 0, out.length));
+    }
+
+    /**
+     * <p>
+     * Evaluates all the outputs of this program for all the rows of the
+     * columns, splitting them in tasks that are run by the pool.
+     *
+     * @param columns the values of each symbol, one column per symbol
+     * @param out the arrays where the values of each output are stored
+     * @param pool the pool that runs the tasks
+     */
+    public void evaluateBatch(double[][] columns, double[][] out, ForkJoinPool pool) {
+        checkOutputs(out);
+        checkBatch(columns, out[0].length, 0, out[0].length);
+        pool.invoke(new BatchTask(columns, out, 0, out[0].length));
+    }
+
+    /**
+     * <p>
+     * Evaluates this program for all the rows of the columns using a new
+     * {@link ForkJoinPool} with the given parallelism, which is shut down when
+     * the evaluation ends.
+     *
+     * @param columns the values of each symbol, one column per symbol
+     * @param out the array where the value of each row is stored
+     * @param parallelism the number of threads used
+     */
+    public void evaluateBatch(double[][] columns, double[] out, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            evaluateBatch(columns, out, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * <p>
+     * Evaluates all the outputs of this program for all the rows of the
+     * columns using a new {@link ForkJoinPool} with the given parallelism.
+     *
+     * @param columns the values of each symbol, one column per symbol
+     * @param out the arrays where the values of each output are stored
+     * @param parallelism the number of threads used
+     */
+    public void evaluateBatch(double[][] columns, double[][] out, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            evaluateBatch(columns, out, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * <p>
+     * Evaluates this program for the rows from {@code from}, inclusive, to
+     * {@code to}, exclusive. The other rows of {@code out} are not modified.
+     *
+     * @param columns the values of each symbol, one column per symbol
+     * @param out the array where the value of each row is stored
+     * @param from the first row to be evaluated
+     * @param to the row after the last one to be evaluated
+     */
+    public void evaluateBatch(double[][] columns, double[] out, int from, int to) {
+        checkBatch(columns, out.length, from, to);
+        batch(columns, new double[][]{out}, from, to);
+    }
+
+    /**
+     * <p>
+     * Evaluates all the outputs of this program for the rows from
+     * {@code from}, inclusive, to {@code to}, exclusive.
+     *
+     * @param columns the values of each symbol, one column per symbol
+     * @param out the arrays where the values of each output are stored
+     * @param from the first row to be evaluated
+     * @param to the row after the last one to be evaluated
+     */
+    public void evaluateBatch(double[][] columns, double[][] out, int from, int to) {
+        checkOutputs(out);
+        checkBatch(columns, out[0].length, from, to);
+        batch(columns, out, from, to);
+    }
+
+    /**
+     * Evaluates the rows and stores the first {@code out.length} outputs.
+     */
+    private void batch(double[][] columns, double[][] out, int from, int to) {
+
+        double[][] chunks = new double[bufferCount][Math.min(CHUNK_SIZE, to - from)];
+        for (int start = from; start < to; start += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, to - start);
+            run(columns, chunks, start, length);
+            for (int j = 0; j < out.length; j++) {
+                System.arraycopy(chunks[buffers[results[j]]], 0, out[j], start, length);
+            }
+        }
+    }
+
+    private void checkOutputs(double[][] out) {
+
+        if (out.length != results.length) {
+            throw new IllegalArgumentException(
+                    "Expected " + results.length + " outputs but got " + out.length);
+        }
+        for (double[] output : out) {
+            if (output.length != out[0].length) {
+                throw new IllegalArgumentException("Outputs of different lengths");
+            }
+        }
+    }
+
+    private void checkBatch(double[][] columns, int rows, int from, int to) {
+
+        if (columns.length != arity) {
+            throw new IllegalArgumentException(
+                    "Expected " + arity + " columns but got " + columns.length);
+        }
+        for (double[] column : columns) {
+            if (column.length < to) {
+                throw new IllegalArgumentException("Column shorter than the output");
+            }
+        }
+        if (from < 0 || to > rows || from > to) {
+            throw new IndexOutOfBoundsException("Invalid rows " + from + " to " + to);
+        }
+    }
+
+    private void run(double[][] columns, double[][] chunks, int start, int length) {
+
+        for (int i = 0; i < opcodes.length; i++) {
+            double[] r = chunks[buffers[i]];
+            switch (opcodes[i]) {
+                case CONST:
+                    Arrays.fill(r, 0, length, constants[i]);
+                    break;
+                case LOAD:
+                    System.arraycopy(columns[left[i]], start, r, 0, length);
+                    break;
+                case ADD: {
+                    double[] a = chunks[buffers[left[i]]], b = chunks[buffers[right[i]]];
+                    for (int k = 0; k < length; k++) {
+                        r[k] = a[k] + b[k];
+                    }
+                    break;
+                }
+                case MUL: {
+                    double[] a = chunks[buffers[left[i]]], b = chunks[buffers[right[i]]];
+                    for (int k = 0; k < length; k++) {
+                        r[k] = a[k] * b[k];
+                    }
+                    break;
+                }
+                case DIV: {
+                    double[] a = chunks[buffers[left[i]]], b = chunks[buffers[right[i]]];
+                    for (int k = 0; k < length; k++) {
+                        r[k] = a[k] / b[k];
+                    }
+                    break;
+                }
+                case POW: {
+                    double[] a = chunks[buffers[left[i]]], b = chunks[buffers[right[i]]];
+                    for (int k = 0; k < length; k++) {
+                        r[k] = Math.pow(a[k], b[k]);
+                    }
+                    break;
+                }
+                case SIN: {
+                    double[] a = chunks[buffers[left[i]]];
+                    for (int k = 0; k < length; k++) {
+                        r[k] = Math.sin(Math.toRadians(a[k]));
+                    }
+                    break;
+                }
+                case COS: {
+                    double[] a = chunks[buffers[left[i]]];
+                    for (int k = 0; k < length; k++) {
+                        r[k] = Math.cos(Math.toRadians(a[k]));
+                    }
+                    break;
+                }
+                case LN: {
+                    double[] a = chunks[buffers[left[i]]];
+                    for (int k = 0; k < length; k++) {
+                        r[k] = Math.log(a[k]);
+                    }
+                    break;
+                }
+                case LOG10: {
+                    double[] a = chunks[buffers[left[i]]];
+                    for (int k = 0; k < length; k++) {
+                        r[k] = Math.log10(a[k]);
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown opcode " + opcodes[i]);
+            }
+        }
+    }
+
+    /**
+     * Assigns a chunk buffer to every instruction. The buffer of an operand is
+     * released after its last use, so the number of buffers is the maximum
+     * number of values alive at the same time instead of the number of
+     * instructions.
+     *
+     * @return the number of buffers
+     */
+    private int allocateBuffers() {
+
+        int size = opcodes.length;
+        int[] lastUse = new int[size];
+        Arrays.fill(lastUse, -1);
+        for (int i = 0; i < size; i++) {
+            if (isOperation(opcodes[i])) {
+                lastUse[left[i]] = i;
+                if (isBinary(opcodes[i])) {
+                    lastUse[right[i]] = i;
+                }
+            }
+        }
+        for (int result : results) {
+            lastUse[result] = size;
+        }
+
+        ArrayDeque<Integer> free = new ArrayDeque<>();
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (isOperation(opcodes[i])) {
+                if (lastUse[left[i]] == i) {
+                    free.push(buffers[left[i]]);
+                }
+                if (isBinary(opcodes[i]) && right[i] != left[i] && lastUse[right[i]] == i) {
+                    free.push(buffers[right[i]]);
+                }
+            }
+            buffers[i] = free.isEmpty() ? count++ : free.pop();
+            if (lastUse[i] == -1) {
+                free.push(buffers[i]);
+            }
+        }
+        return count;
+    }
+
+    static boolean isOperation(int opcode) {
+        return opcode != CONST && opcode != LOAD;
+    }
+
+    static boolean isBinary(int opcode) {
+        return opcode == ADD || opcode == MUL || opcode == DIV || opcode == POW;
+    }
+
+    /**
+     * Splits the rows in halves until they are small enough to be evaluated
+     * sequentially.
+     */
+    private final class BatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] columns;
+
+        private final double[][] out;
+
+        private final int from, to;
+
+        private BatchTask(double[][] columns, double[][] out, int from, int to) {
+            this.columns = columns;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                batch(columns, out, from, to);
+                return;
+            }
+            int middle = from + (to - from) / 2;
+            invokeAll(
+                    new BatchTask(columns, out, from, middle),
+                    new BatchTask(columns, out, middle, to)
+            );
+        }
+
+    }
+
+    /**
+     * Lowers the trees of the expressions to instructions. An instruction
+     * equal to a previous one, with the same operation and the same operands,
+     * is not added again, so the equal subexpressions share their
+     * instruction.
+     */
+    private static final class Builder {
+
+        private final Bindings bindings;
+
+        /**
+         * The instruction of every expression already lowered, so an
+         * instance shared by many trees is walked only once.
+         */
+        private final Map<Expression, Integer> lowered = new IdentityHashMap<>();
+
+        private final Map<Instruction, Integer> numbers = new HashMap<>();
+
+        private int[] opcodes = new int[16],
+                left = new int[16],
+                right = new int[16];
+
+        private double[] constants = new double[16];
+
+        private Number[] exactConstants = new Number[16];
+
+        private int size;
+
+        private Builder(Bindings bindings) {
+            this.bindings = bindings;
+        }
+
+        private int add(int opcode, int a, int b, double constant) {
+            // a + b and a * b are exactly b + a and b * a
+            if ((opcode == ADD || opcode == MUL) && a > b) {
+                int swap = a;
+                a = b;
+                b = swap;
+            }
+            Instruction instruction = new Instruction(opcode, a, b, constant);
+            Integer number = numbers.get(instruction);
+            if (number != null) {
+                return number;
+            }
+            numbers.put(instruction, size);
+            if (size == opcodes.length) {
+                int length = size * 2;
+                opcodes = Arrays.copyOf(opcodes, length);
+                left = Arrays.copyOf(left, length);
+                right = Arrays.copyOf(right, length);
+                constants = Arrays.copyOf(constants, length);
+                exactConstants = Arrays.copyOf(exactConstants, length);
+            }
+            opcodes[size] = opcode;
+            left[size] = a;
+            right[size] = b;
+            constants[size] = constant;
+            return size++;
+        }
+
+        /**
+         * The constant of a number, with the double nearest to its value,
+         * shared by the numbers with the same double.
+         */
+        private int constant(Number number) {
+            BigDecimal value = number.value(MathContext.DECIMAL128);
+            int count = size,
+                    constant = add(CONST, -1, -1, value.doubleValue());
+            if (constant == count) {
+                exactConstants[constant] = number;
+            } else if (exactConstants[constant] != null
+                    && exactConstants[constant].value(MathContext.DECIMAL128).compareTo(value) != 0) {
+                // only the double of the constant is known
+                exactConstants[constant] = null;
+            }
+            return constant;
+        }
+
+        private int lower(Expression exp) {
+            Integer number = lowered.get(exp);
+            if (number == null) {
+                number = lowerExpression(exp);
+                lowered.put(exp, number);
+            }
+            return number;
+        }
+
+        private int lowerExpression(Expression exp) {
+
+            if (exp instanceof Number) {
+                return constant((Number) exp);
+            }
+            if (exp instanceof Symbol) {
+                return add(LOAD, index((Symbol) exp), -1, 0);
+            }
+            if (exp instanceof Sum) {
+                return fold(((Sum) exp).getExpressions(), ADD);
+            }
+            if (exp instanceof Multiplication) {
+                return fold(((Multiplication) exp).getExpressions(), MUL);
+            }
+            if (exp instanceof Division) {
+                return binary(((Division) exp).getExpressions(), DIV);
+            }
+            if (exp instanceof Pow) {
+                return binary(((Pow) exp).getExpressions(), POW);
+            }
+            if (exp instanceof Sin) {
+                return unary(((Sin) exp).getExpressions(), SIN);
+            }
+            if (exp instanceof Cos) {
+                return unary(((Cos) exp).getExpressions(), COS);
+            }
+            if (exp instanceof Ln) {
+                return unary(((Ln) exp).getExpressions(), LN);
+            }
+            if (exp instanceof Log10) {
+                return unary(((Log10) exp).getExpressions(), LOG10);
+            }
+            if (exp instanceof Polynomial) {
+                return lower(((Polynomial) exp).toExpression());
+            }
+            throw new UnsupportedOperationException(
+                    exp.getClass().getSimpleName() + " cannot be compiled");
+        }
+
+        private int fold(List<Expression> exprs, int opcode) {
+            if (exprs.isEmpty()) {
+                return constant(RNumber.ZERO);
+            }
+            int acc = lower(exprs.get(0));
+            for (int i = 1; i < exprs.size(); i++) {
+                acc = add(opcode, acc, lower(exprs.get(i)), 0);
+            }
+            return acc;
+        }
+
+        private int binary(List<Expression> exprs, int opcode) {
+            int a = lower(exprs.get(0));
+            return add(opcode, a, lower(exprs.get(1)), 0);
+        }
+
+        private int unary(List<Expression> exprs, int opcode) {
+            return add(opcode, lower(exprs.get(0)), -1, 0);
+        }
+
+        private int index(Symbol symbol) {
+            int slot = bindings.slotOf(symbol);
+            if (slot < 0) {
+                throw new IllegalArgumentException("Unbound symbol " + symbol);
+            }
+            return slot;
+        }
+
+    }
+
+    private static final class Instruction {
+
+        private final int opcode, left, right;
+
+        private final long constant;
+
+        private Instruction(int opcode, int left, int right, double constant) {
+            this.opcode = opcode;
+            this.left = left;
+            this.right = right;
+            this.constant = Double.doubleToLongBits(constant);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Instruction)) {
+                return false;
+            }
+            Instruction other = (Instruction) obj;
+            return opcode == other.opcode && left == other.left
+                    && right == other.right && constant == other.constant;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = opcode;
+            hash = 31 * hash + left;
+            hash = 31 * hash + right;
+            return 31 * hash + Long.hashCode(constant);
+        }
+
+    }
+
+}
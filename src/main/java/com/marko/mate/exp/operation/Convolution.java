@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.operation;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Multiplies dense polynomials with integer coefficients, given as the arrays
+ * of their coefficients from the lowest degree, and gives the exact
+ * coefficients of the product. Long polynomials are multiplied with
+ * Karatsuba, or with a fast Fourier transform when they are longer, as long
+ * as every value they compute is an exact double. When it isn't, the
+ * coefficients are packed in a single {@link BigInteger}, whose product is
+ * subquadratic too. Short polynomials are multiplied term by term.
+ *
+ * @author Marcos
+ */
+final class Convolution {
+
+    /**
+     * Below this length the term by term product is faster.
+     */
+    static final int KARATSUBA_THRESHOLD = 32;
+
+    /**
+     * Above this length the Fourier transform is faster than Karatsuba.
+     */
+    static final int FFT_THRESHOLD = 256;
+
+    /**
+     * The bits of the integers that are exact doubles.
+     */
+    private static final int DOUBLE_BITS = 53;
+
+    /**
+     * The bound of the rounding error of the transform, relative to the
+     * result, is below 2^-52 times the length and its logarithm. Keeping
+     * the bound of the result times that factor below 2^48 keeps the error
+     * far below 0.5, so rounding gives the exact integers.
+     */
+    private static final double FFT_LIMIT = 0x1p48;
+
+    /**
+     * The algorithms of the product.
+     */
+    enum Kernel {
+        SCHOOLBOOK, KARATSUBA, FFT, BIG_INTEGER
+    }
+
+    private Convolution() {
+    }
+
+    /**
+     *
+     * @param a
+     * @param b
+     * @return the algorithm that {@link #multiply(BigInteger[], BigInteger[])}
+     * uses for the polynomials
+     */
+    static Kernel kernel(BigInteger[] a, BigInteger[] b) {
+        int min = Math.min(a.length, b.length);
+        if (min < KARATSUBA_THRESHOLD) {
+            return Kernel.SCHOOLBOOK;
+        }
+        if (!isKaratsubaExact(a, b)) {
+            return Kernel.BIG_INTEGER;
+        }
+        if (min >= FFT_THRESHOLD && isFftExact(a, b)) {
+            return Kernel.FFT;
+        }
+        return Kernel.KARATSUBA;
+    }
+
+    /**
+     *
+     * @param a
+     * @param b
+     * @return the coefficients of the product, of length
+     * {@code a.length + b.length - 1}
+     */
+    static BigInteger[] multiply(BigInteger[] a, BigInteger[] b) {
+        if (a.length == 0 || b.length == 0) {
+            return new BigInteger[0];
+        }
+        switch (kernel(a, b)) {
+            case KARATSUBA:
+                return toBigIntegers(karatsuba(toDoubles(a), toDoubles(b)));
+            case FFT:
+                return toBigIntegers(fft(toDoubles(a), toDoubles(b)));
+            case BIG_INTEGER:
+                return bigInteger(a, b);
+            default:
+                return schoolbook(a, b);
+        }
+    }
+
+    static BigInteger[] schoolbook(BigInteger[] a, BigInteger[] b) {
+        BigInteger[] result = new BigInteger[a.length + b.length - 1];
+        Arrays.fill(result, BigInteger.ZERO);
+        for (int i = 0; i < a.length; i++) {
+            if (a[i].signum() != 0) {
+                for (int j = 0; j < b.length; j++) {
+                    result[i + j] = result[i + j].add(a[i].multiply(b[j]));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static double[] schoolbook(double[] a, double[] b) {
+        double[] result = new double[a.length + b.length - 1];
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != 0) {
+                for (int j = 0; j < b.length; j++) {
+                    result[i + j] += a[i] * b[j];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Multiplies with Karatsuba, splitting the longer polynomial in pieces of
+     * the length of the shorter one, so both halves of every step have about
+     * the same length.
+     */
+    private static double[] karatsuba(double[] a, double[] b) {
+        if (a.length < b.length) {
+            return karatsuba(b, a);
+        }
+        int n = b.length;
+        if (a.length == n) {
+            return balanced(a, b);
+        }
+        double[] result = new double[a.length + n - 1];
+        for (int from = 0; from < a.length; from += n) {
+            double[] piece = Arrays.copyOfRange(a, from, Math.min(from + n, a.length));
+            double[] product = piece.length < KARATSUBA_THRESHOLD
+                    ? schoolbook(piece, b) : balanced(Arrays.copyOf(piece, n), b);
+            for (int i = 0; i < product.length && from + i < result.length; i++) {
+                result[from + i] += product[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Karatsuba for two polynomials of the same length.
+     */
+    private static double[] balanced(double[] a, double[] b) {
+        int n = a.length;
+        if (n < KARATSUBA_THRESHOLD) {
+            return schoolbook(a, b);
+        }
+        int h = n / 2;
+        double[] a0 = Arrays.copyOf(a, h),
+                a1 = Arrays.copyOfRange(a, h, n),
+                b0 = Arrays.copyOf(b, h),
+                b1 = Arrays.copyOfRange(b, h, n);
+        double[] z0 = balanced(a0, b0),
+                z2 = balanced(a1, b1);
+        // a1 and b1 are never shorter than a0 and b0
+        for (int i = 0; i < h; i++) {
+            a1[i] += a0[i];
+            b1[i] += b0[i];
+        }
+        double[] z1 = balanced(a1, b1);
+        double[] result = new double[2 * n - 1];
+        for (int i = 0; i < z0.length; i++) {
+            result[i] += z0[i];
+            z1[i] -= z0[i];
+        }
+        for (int i = 0; i < z2.length; i++) {
+            result[2 * h + i] += z2[i];
+            z1[i] -= z2[i];
+        }
+        for (int i = 0; i < z1.length; i++) {
+            result[h + i] += z1[i];
+        }
+        return result;
+    }
+
+    /**
+     * <p>
+     * Every value computed by Karatsuba, the sums of the halves, their
+     * products and the differences of the products, is a sum of products of
+     * different pairs of coefficients, so it is not greater than the product
+     * of the sums of the absolute values of the coefficients. If that fits in
+     * the 53 bits of a double, all the values are exact.
+     *
+     * @return true if Karatsuba with doubles computes the exact product
+     */
+    static boolean isKaratsubaExact(BigInteger[] a, BigInteger[] b) {
+        return sumAbs(a).multiply(sumAbs(b)).bitLength() <= DOUBLE_BITS;
+    }
+
+    private static BigInteger sumAbs(BigInteger[] coefficients) {
+        BigInteger sum = BigInteger.ZERO;
+        for (var c : coefficients) {
+            sum = sum.add(c.abs());
+        }
+        return sum;
+    }
+
+    /**
+     * @return true if the product computed with the transform can be rounded
+     * to the exact result
+     */
+    static boolean isFftExact(BigInteger[] a, BigInteger[] b) {
+        int size = Integer.highestOneBit(a.length + b.length - 1) << 1;
+        int log = Integer.numberOfTrailingZeros(size);
+        // both polynomials share one transform, so the error grows with the
+        // larger of them
+        double max = maxAbs(a).max(maxAbs(b)).doubleValue();
+        return max * max * Math.min(a.length, b.length) * size * log < FFT_LIMIT;
+    }
+
+    private static BigInteger maxAbs(BigInteger[] coefficients) {
+        BigInteger max = BigInteger.ZERO;
+        for (var c : coefficients) {
+            max = max.max(c.abs());
+        }
+        return max;
+    }
+
+    private static double[] toDoubles(BigInteger[] coefficients) {
+        double[] result = new double[coefficients.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = coefficients[i].doubleValue();
+        }
+        return result;
+    }
+
+    /**
+     * @return the integers, which must be exact doubles
+     */
+    private static BigInteger[] toBigIntegers(double[] coefficients) {
+        BigInteger[] result = new BigInteger[coefficients.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = BigInteger.valueOf((long) coefficients[i]);
+        }
+        return result;
+    }
+
+    /**
+     * <p>
+     * Multiplies exactly with the Kronecker substitution: every polynomial is
+     * evaluated in a power of two big enough for the coefficients of the
+     * product, which are then the digits of the product of both numbers in
+     * that base. The digits are signed, from minus half the base, so the
+     * negative coefficients borrow from the next digit.
+     */
+    static BigInteger[] bigInteger(BigInteger[] a, BigInteger[] b) {
+        // the greatest coefficient of the product, and a bit for its sign
+        BigInteger bound = maxAbs(a).multiply(maxAbs(b))
+                .multiply(BigInteger.valueOf(Math.min(a.length, b.length)));
+        int bytes = (bound.bitLength() + 1) / Byte.SIZE + 1;
+        BigInteger product = pack(a, bytes).multiply(pack(b, bytes));
+
+        int length = a.length + b.length - 1;
+        // little endian, with the sign extended to all the digits
+        byte[] big = product.toByteArray(),
+                digits = new byte[(length + 1) * bytes];
+        byte sign = (byte) (product.signum() < 0 ? -1 : 0);
+        for (int i = 0; i < digits.length; i++) {
+            digits[i] = i < big.length ? big[big.length - 1 - i] : sign;
+        }
+        BigInteger base = BigInteger.ONE.shiftLeft(bytes * Byte.SIZE),
+                half = base.shiftRight(1);
+        BigInteger[] result = new BigInteger[length];
+        int borrow = 0;
+        byte[] digit = new byte[bytes];
+        for (int k = 0; k < length; k++) {
+            for (int i = 0; i < bytes; i++) {
+                digit[bytes - 1 - i] = digits[k * bytes + i];
+            }
+            BigInteger coefficient = new BigInteger(1, digit).add(BigInteger.valueOf(borrow));
+            borrow = 0;
+            if (coefficient.compareTo(half) >= 0) {
+                coefficient = coefficient.subtract(base);
+                borrow = 1;
+            }
+            result[k] = coefficient;
+        }
+        return result;
+    }
+
+    /**
+     * @return the value of the polynomial in 2 to the bits of the bytes, whose
+     * half is greater than every coefficient
+     */
+    private static BigInteger pack(BigInteger[] coefficients, int bytes) {
+        // big endian, with a last digit for the sign
+        byte[] packed = new byte[(coefficients.length + 1) * bytes];
+        BigInteger borrow = BigInteger.ZERO;
+        for (int i = 0; i < coefficients.length; i++) {
+            // a negative digit is written as its sum with the base, and the
+            // next digit borrows it
+            BigInteger digit = coefficients[i].add(borrow);
+            byte[] big = digit.toByteArray();
+            byte sign = (byte) (digit.signum() < 0 ? -1 : 0);
+            for (int b = 0; b < bytes; b++) {
+                packed[packed.length - 1 - i * bytes - b] = b < big.length ? big[big.length - 1 - b] : sign;
+            }
+            borrow = digit.signum() < 0 ? BigInteger.ONE.negate() : BigInteger.ZERO;
+        }
+        if (borrow.signum() < 0) {
+            Arrays.fill(packed, 0, bytes, (byte) -1);
+        }
+        return new BigInteger(packed);
+    }
+
+    /**
+     * Multiplies with a complex fast Fourier transform and rounds the result,
+     * so it must be {@link #isFftExact(BigInteger[], BigInteger[]) exact}.
+     */
+    private static double[] fft(double[] a, double[] b) {
+        int length = a.length + b.length - 1;
+        int size = Integer.highestOneBit(length);
+        if (size < length) {
+            size <<= 1;
+        }
+        double[] re = Arrays.copyOf(a, size), im = new double[size];
+        // the second polynomial goes in the imaginary part, so a single
+        // transform gives both, and the square of a + ib has 2iab
+        for (int i = 0; i < b.length; i++) {
+            im[i] = b[i];
+        }
+        double[] cos = new double[size / 2], sin = new double[size / 2];
+        for (int i = 0; i < size / 2; i++) {
+            double angle = 2 * Math.PI * i / size;
+            cos[i] = Math.cos(angle);
+            sin[i] = Math.sin(angle);
+        }
+        transform(re, im, cos, sin, false);
+        for (int i = 0; i < size; i++) {
+            double r = re[i], m = im[i];
+            re[i] = r * r - m * m;
+            im[i] = 2 * r * m;
+        }
+        transform(re, im, cos, sin, true);
+        double[] result = new double[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = Math.rint(im[i] / (2 * size));
+        }
+        return result;
+    }
+
+    /**
+     * The in place iterative radix 2 transform.
+     */
+    private static void transform(double[] re, double[] im, double[] cos, double[] sin, boolean inverse) {
+        int n = re.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        for (int len = 2; len <= n; len <<= 1) {
+            int half = len / 2, step = n / len;
+            for (int i = 0; i < n; i += len) {
+                for (int k = 0; k < half; k++) {
+                    double wr = cos[k * step],
+                            wi = inverse ? sin[k * step] : -sin[k * step];
+                    int p = i + k, q = p + half;
+                    double xr = re[q] * wr - im[q] * wi,
+                            xi = re[q] * wi + im[q] * wr;
+                    re[q] = re[p] - xr;
+                    im[q] = im[p] - xi;
+                    re[p] += xr;
+                    im[p] += xi;
+                }
+            }
+        }
+    }
+
+}
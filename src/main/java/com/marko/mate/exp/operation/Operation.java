@@ -17,10 +17,26 @@
 package com.marko.mate.exp.operation;
 
 import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.ExpressionFactory;
+import com.marko.mate.exp.compile.CompiledExpression;
+import com.marko.mate.exp.compile.Precision;
+import com.marko.mate.exp.compile.Program;
+import com.marko.mate.exp.symbol.Bindings;
+import com.marko.mate.exp.symbol.Symbol;
 import com.marko.mate.exp.symbol.Variable;
+import com.marko.mate.exp.vectorial.DNumber;
 import com.marko.mate.exp.vectorial.Matrix;
+import com.marko.mate.exp.vectorial.Number;
+import com.marko.mate.exp.vectorial.Space;
 import com.marko.mate.exp.vectorial.Vector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
 /**
@@ -32,9 +48,22 @@ import java.util.stream.Stream;
 public abstract class Operation implements Expression {
 
     /**
-     * The list of expressions that has this operation.
+     * The expressions that has this operation. The array is never modified
+     * after the constructor, so an operation can be shared by many threads.
      */
-    protected final LinkedList<Expression> exprs;
+    protected final Expression[] exprs;
+
+    /**
+     * The structural hash of this operation, computed the first time it is
+     * needed. Zero means that it has not been computed yet.
+     */
+    private int hash;
+
+    /**
+     * The result of simplifying this operation, or null if it has not been
+     * simplified yet. It is this operation when it is already in normal form.
+     */
+    private Expression simplified;
 
     /**
      * <p>
@@ -44,26 +73,266 @@ public abstract class Operation implements Expression {
      * @param exprs
      */
     public Operation(Expression... exprs) {
-        this.exprs = new LinkedList<>();
-        for (Expression exp : exprs) {
-            this.exprs.add(exp.simplify());
+        this(exprs, true);
+    }
+
+    /**
+     * <p>
+     * Constructor that initialize the list of all the expressions, and
+     * simplifies them only if simplify is true
+     *
+     * @param exprs
+     * @param simplify
+     */
+    protected Operation(Expression[] exprs, boolean simplify) {
+        this.exprs = new Expression[exprs.length];
+        for (int i = 0; i < exprs.length; i++) {
+            this.exprs[i] = simplify ? exprs[i].simplify() : exprs[i];
         }
     }
 
     /**
      *
-     * Empty constructor that initialize the LinkedList
+     * Empty constructor of an operation without expressions
      */
     public Operation() {
-        exprs = new LinkedList<>();
+        exprs = new Expression[0];
+    }
+
+    /**
+     *
+     * @return an unmodifiable List with the expressions of this operation
+     */
+    public List<Expression> getExpressions() {
+        return Collections.unmodifiableList(Arrays.asList(exprs));
+    }
+
+    /**
+     * <p>
+     * A commutative operation is equal to any operation of the same type with
+     * the same expressions, in any order.
+     *
+     * @return true if the order of the expressions doesn't matter, false by
+     * default
+     */
+    protected boolean isCommutative() {
+        return false;
+    }
+
+    /**
+     * <p>
+     * Returns an operation of the same type over the expressions, in the same
+     * order as {@link #getExpressions()}. The expressions are not simplified,
+     * so the new operation holds exactly the same instances.
+     *
+     * @param exprs
+     * @return {@link Operation}
+     */
+    public abstract Operation withExpressions(Expression... exprs);
+
+    /**
+     * <p>
+     * Simplifies this operation only the first time it is called, and records
+     * the result, so simplifying the same operation again takes O(1). If the
+     * result is made of the same expressions as this operation, this
+     * operation is already in normal form and it is the result.
+     *
+     * @return {@link Expression}
+     */
+    @Override
+    public final Expression simplify() {
+        Expression result = simplified;
+        if (result == null) {
+            result = simplifyOperation();
+            if (isSame(result)) {
+                result = this;
+            }
+            simplified = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the expression is an operation of the same type with
+     * the same instances of the expressions, in the same order
+     */
+    private boolean isSame(Expression exp) {
+        if (exp == this) {
+            return true;
+        }
+        if (exp.getClass() != getClass()) {
+            return false;
+        }
+        Expression[] other = ((Operation) exp).exprs;
+        if (other.length != exprs.length) {
+            return false;
+        }
+        for (int i = 0; i < exprs.length; i++) {
+            if (other[i] != exprs[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <p>
+     * Simplifies this operation. It is called by {@link #simplify()} at most
+     * once for each operation, unless two threads simplify the same operation
+     * at the same time.
+     *
+     * @return {@link Expression}
+     */
+    protected abstract Expression simplifyOperation();
+
+    /**
+     * <p>
+     * Finds the derivative of this operation. The equal subexpressions are
+     * derived only once.
+     *
+     * @param var
+     * @return {@link Expression}
+     */
+    @Override
+    public Expression derivate(Variable var) {
+        return derivate(var, new HashMap<>());
+    }
+
+    /**
+     * <p>
+     * Finds the derivative of this operation, unless the derivative of an
+     * equal operation with respect to the same variable is already in the
+     * map.
+     *
+     * @param var
+     * @param derivatives the derivatives with respect to {@code var} already
+     * found
+     * @return {@link Expression}
+     */
+    @Override
+    public Expression derivate(Variable var, Map<Expression, Expression> derivatives) {
+        Expression derivative = derivatives.get(this);
+        if (derivative == null) {
+            derivative = derivateOperation(var, derivatives);
+            derivatives.put(this, derivative);
+        }
+        return derivative;
+    }
+
+    /**
+     * <p>
+     * Finds the derivative of this operation. The expressions of this
+     * operation must be derived with
+     * {@link #derivate(Variable, Map) derivate(var, derivatives)}, so their
+     * derivatives are shared.
+     *
+     * @param var
+     * @param derivatives the derivatives with respect to {@code var} already
+     * found
+     * @return {@link Expression}
+     */
+    protected abstract Expression derivateOperation(Variable var, Map<Expression, Expression> derivatives);
+
+    /**
+     *
+     * @return true if this operation is known to be in normal form, so
+     * {@link #simplify()} returns itself
+     */
+    public boolean isSimplified() {
+        return simplified == this;
+    }
+
+    /**
+     * <p>
+     * Expands all the expressions of this operation and then, if the result
+     * is a polynomial, multiplies it out with {@link Polynomial}. Otherwise
+     * the expanded operation is simplified.
+     *
+     * @return {@link Expression}
+     */
+    @Override
+    public Expression expand() {
+        Expression[] expanded = new Expression[exprs.length];
+        boolean changed = false;
+        for (int i = 0; i < exprs.length; i++) {
+            expanded[i] = exprs[i].expand();
+            changed |= expanded[i] != exprs[i];
+        }
+        Operation operation = changed ? withExpressions(expanded) : this;
+        if (Polynomial.isPolynomial(operation)) {
+            try {
+                return Polynomial.of(operation).toExpression();
+            } catch (ArithmeticException e) {
+                // some exponent is too big to expand
+            }
+        }
+        return operation.simplify();
+    }
+
+    /**
+     * <p>
+     * Evaluates all the expressions of this operation in the point and then
+     * applies this operation to their values.
+     *
+     * @param point the point to be evaluated
+     * @return {@link Expression}
+     */
+    @Override
+    public Expression evaluate(Map<Symbol, Space> point) {
+        Expression[] values = new Expression[exprs.length];
+        for (int i = 0; i < exprs.length; i++) {
+            values[i] = exprs[i].evaluate(point);
+        }
+        return apply(values);
+    }
+
+    /**
+     * <p>
+     * Evaluates this operation as {@link #evaluate(Map)} does, unless an
+     * equal operation was already evaluated with the same values.
+     *
+     * @param point the point to be evaluated
+     * @param values the values already computed in this point
+     * @return {@link Expression}
+     */
+    @Override
+    public Expression evaluate(Map<Symbol, Space> point, Map<Expression, Expression> values) {
+        Expression value = values.get(this);
+        if (value == null) {
+            Expression[] evaluated = new Expression[exprs.length];
+            for (int i = 0; i < exprs.length; i++) {
+                evaluated[i] = exprs[i].evaluate(point, values);
+            }
+            value = apply(evaluated);
+            values.put(this, value);
+        }
+        return value;
     }
 
     /**
+     * <p>
+     * Applies this operation to the values of its expressions, already
+     * evaluated, in the same order as {@link #getExpressions()}. If some value
+     * is not a {@link Space}, the result is the operation on that value.
+     *
+     * @param values the values of the expressions of this operation
+     * @return {@link Expression}
+     */
+    public abstract Expression apply(Expression... values);
+
+    /**
+     * <p>
+     * Compiles all the expressions of this operation with the same bindings.
      *
-     * @return LinkedList
+     * @param bindings
+     * @return the compiled expressions in the same order as this operation
      */
-    public LinkedList<Expression> getExpressions() {
-        return exprs;
+    protected CompiledExpression[] compileExpressions(Bindings bindings) {
+        CompiledExpression[] compiled = new CompiledExpression[exprs.length];
+        for (int i = 0; i < exprs.length; i++) {
+            compiled[i] = exprs[i].compile(bindings);
+        }
+        return compiled;
     }
 
     /**
@@ -72,30 +341,47 @@ public abstract class Operation implements Expression {
      * variables in this operation
      */
     public LinkedList<Variable> getVars() {
-
         LinkedList<Variable> list = new LinkedList<>();
+        collectVars(list, new BitSet());
+        return list;
+    }
 
-        exprs.stream().map((exp) -> {
+    /**
+     *
+     * @return the set of the {@link Symbol#ordinal() ordinals} of all the
+     * variables in this operation
+     */
+    public BitSet getVarOrdinals() {
+        BitSet ordinals = new BitSet();
+        collectVars(null, ordinals);
+        return ordinals;
+    }
+
+    /**
+     * Adds to the list the variables whose ordinal is not in the set yet, in
+     * the order they appear.
+     */
+    private void collectVars(LinkedList<Variable> list, BitSet ordinals) {
+        for (var exp : exprs) {
             if (exp instanceof Operation) {
-                list.addAll(((Operation) exp).getVars());
+                ((Operation) exp).collectVars(list, ordinals);
+            } else if (exp instanceof Variable) {
+                int ordinal = ((Variable) exp).ordinal();
+                if (!ordinals.get(ordinal)) {
+                    ordinals.set(ordinal);
+                    if (list != null) {
+                        list.add((Variable) exp);
+                    }
+                }
             }
-            return exp;
-        }).filter((exp) -> (exp instanceof Variable)).forEach((exp) -> {
-            list.add((Variable) exp);
-        });
-
-        Stream<Variable> distinct = list.stream().distinct();
-        LinkedList<Variable> listReturn = new LinkedList<>();
-        distinct.forEach(e -> listReturn.add(e));
-
-        return listReturn;
+        }
     }
 
     private LinkedList<Expression> getExprs() {
 
         LinkedList<Expression> list = new LinkedList<>();
 
-        exprs.stream().map((exp) -> {
+        Arrays.stream(exprs).map((exp) -> {
             if (exp instanceof Operation) {
                 list.addAll(((Operation) exp).getExprs());
             } else {
@@ -121,43 +407,256 @@ public abstract class Operation implements Expression {
         return getExprs().contains(exp);
     }
 
+    /**
+     * <p>
+     * Two operations are equal if they have the same type and their
+     * expressions are equal, in the same order unless the operation is
+     * {@link #isCommutative() commutative}. The hash codes are compared first,
+     * so two different operations are usually told apart in O(1).
+     *
+     * @param obj
+     * @return true if equals, false otherwise
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != getClass()) {
+            return false;
+        }
+        Operation operation = (Operation) obj;
+        if (exprs.length != operation.exprs.length
+                || hashCode() != operation.hashCode()) {
+            return false;
+        }
+        if (Arrays.equals(exprs, operation.exprs)) {
+            return true;
+        }
+        return isCommutative() && sameExpressions(exprs, operation.exprs);
+    }
+
+    /**
+     * <p>
+     * The structural hash of this operation. It is computed only once, and it
+     * doesn't depend on the order of the expressions if the operation is
+     * {@link #isCommutative() commutative}.
+     *
+     * @return int
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = getClass().getName().hashCode();
+            if (isCommutative()) {
+                int sum = 0;
+                for (var exp : exprs) {
+                    sum += mix(exp.hashCode());
+                }
+                h = 31 * h + sum;
+            } else {
+                for (var exp : exprs) {
+                    h = 31 * h + mix(exp.hashCode());
+                }
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Spreads the bits of the hash of an expression, so combining the hashes
+     * of different expressions rarely gives the same result.
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return true if both arrays have the same expressions the same number of
+     * times, in any order
+     */
+    private static boolean sameExpressions(Expression[] a, Expression[] b) {
+        Map<Expression, Integer> counts = new HashMap<>();
+        for (var exp : a) {
+            counts.merge(exp, 1, Integer::sum);
+        }
+        for (var exp : b) {
+            Integer count = counts.get(exp);
+            if (count == null) {
+                return false;
+            }
+            if (count == 1) {
+                counts.remove(exp);
+            } else {
+                counts.put(exp, count - 1);
+            }
+        }
+        return counts.isEmpty();
+    }
+
     /**
      * <p>
      * The gradient of an operation is the first derivative with respect to all
-     * the variables in this operation
+     * the variables in this operation. The identical subexpressions of the
+     * derivatives are shared.
      *
      * @return {@link Vector} that contains all derivatives separately
      */
     public Vector gradient() {
+        LinkedList<Variable> list = getVars();
+        return gradient(list, new ExpressionFactory(), derivatives(list.size()));
+    }
+
+    /**
+     * <p>
+     * The value of the gradient of this operation in a point, found by
+     * reverse mode automatic differentiation with {@link Program#gradient}
+     * instead of building the derivatives, so it costs a small multiple of
+     * one evaluation whatever the number of variables.
+     *
+     * @param point the value of each variable, in the same order as
+     * {@link #getVars()}
+     * @return the derivative with respect to each variable, in the same order
+     * as {@link #getVars()}
+     */
+    public double[] gradient(double[] point) {
+        Variable[] vars = getVars().toArray(new Variable[0]);
+        double[] gradient = new double[vars.length];
+        Program.of(this, vars).gradient(point, gradient);
+        return gradient;
+    }
 
+    /**
+     * <p>
+     * The value of the derivative of this operation with respect to a
+     * variable in a point, found by forward mode automatic differentiation
+     * with {@link Program#derivative} instead of building
+     * {@link #derivate(Variable)}.
+     *
+     * @param var
+     * @param point the value of each variable, in the same order as
+     * {@link #getVars()}
+     * @return the derivative, zero if the variable is not in this operation
+     */
+    public double derivative(Variable var, double[] point) {
         LinkedList<Variable> list = getVars();
+        int index = list.indexOf(var);
+        if (index < 0) {
+            return 0;
+        }
+        Variable[] vars = list.toArray(new Variable[0]);
+        double[] direction = new double[vars.length];
+        direction[index] = 1;
+        double[] value = new double[1], tangent = new double[1];
+        Program.of(this, vars).derivative(point, direction, value, tangent);
+        return tangent[0];
+    }
+
+    /**
+     * <p>
+     * The product of the hessian of this operation in a point by a vector,
+     * found by forward over reverse automatic differentiation with
+     * {@link Program#hessianVectorProduct} instead of building
+     * {@link #hessian()}, so it costs a few evaluations whatever the number
+     * of variables.
+     *
+     * @param point the value of each variable, in the same order as
+     * {@link #getVars()}
+     * @param vector the vector multiplied by the hessian, in the same order
+     * @return the product, in the same order as {@link #getVars()}
+     */
+    public double[] hessianVectorProduct(double[] point, double[] vector) {
+        Variable[] vars = getVars().toArray(new Variable[0]);
+        double[] product = new double[vars.length];
+        Program.of(this, vars).hessianVectorProduct(point, vector, product);
+        return product;
+    }
+
+    /**
+     * <p>
+     * The numeric value of this operation in a point, with a relative error
+     * no larger than the tolerance of the precision, found with
+     * {@link Program#evaluate(Number[], Precision)}. Most points are
+     * evaluated with doubles, and only the ones where the doubles are not
+     * enough, such as a cancellation, with more digits.
+     *
+     * @param point the number of each variable
+     * @param precision
+     * @return a {@link DNumber} if the doubles were enough and the exact
+     * number of the decimal found with more digits otherwise
+     * @throws IllegalArgumentException if a variable doesn't have a number
+     * @throws ArithmeticException if the value is not a real number
+     */
+    public Number evaluate(Map<Symbol, Space> point, Precision precision) {
+        Variable[] vars = getVars().toArray(new Variable[0]);
+        Number[] values = new Number[vars.length];
+        for (int i = 0; i < vars.length; i++) {
+            Space value = point.get(vars[i]);
+            if (!(value instanceof Number)) {
+                throw new IllegalArgumentException("Expected a number for " + vars[i]);
+            }
+            values[i] = (Number) value;
+        }
+        return Program.of(this, vars).evaluate(values, precision)[0];
+    }
+
+    private Vector gradient(LinkedList<Variable> list, ExpressionFactory factory,
+            List<Map<Expression, Expression>> derivatives) {
+
         Expression[] expArr = new Expression[list.size()];
         int i = 0;
 
         for (var var : list) {
-            expArr[i++] = derivate(var).simplify();
+            expArr[i] = factory.intern(derivate(var, derivatives.get(i)).simplify());
+            i++;
         }
 
         return new Vector(expArr);
     }
 
+    /**
+     * @return an empty map of derivatives for each variable
+     */
+    private static List<Map<Expression, Expression>> derivatives(int size) {
+        List<Map<Expression, Expression>> derivatives = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            derivatives.add(new HashMap<>());
+        }
+        return derivatives;
+    }
+
     /**
      * <p>
      * The hessian matrix of an operation of n variables, is the square matrix
-     * of n × n, of the second partial derivatives
+     * of n × n, of the second partial derivatives. The identical
+     * subexpressions of the derivatives are shared, so the memory used grows
+     * with the number of distinct subexpressions.
+     * <p>
+     * The derivatives with respect to each variable are recorded by
+     * subexpression for the whole matrix, so a subexpression shared by many
+     * entries of the gradient is derived once per variable.
      *
      * @return {@link Matrix}
      */
     public Matrix hessian() {
 
+        ExpressionFactory factory = new ExpressionFactory();
         LinkedList<Variable> list = getVars();
-        Vector vector = gradient();
+        List<Map<Expression, Expression>> derivatives = derivatives(list.size());
+        Vector vector = gradient(list, factory, derivatives);
         Expression[][] data = new Expression[vector.getData().length][list.size()];
         int i = 0, j = 0;
 
         for (var exp : vector.getData()) {
             for (var var : list) {
-                data[i][j++] = exp.derivate(var).simplify();
+                data[i][j] = factory.intern(exp.derivate(var, derivatives.get(j)).simplify());
+                j++;
             }
             i++;
             j = 0;
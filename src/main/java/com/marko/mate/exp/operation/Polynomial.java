@@ -0,0 +1,950 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.operation;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.compile.CompiledExpression;
+import com.marko.mate.exp.operation.binop.Division;
+import com.marko.mate.exp.operation.binop.Multiplication;
+import com.marko.mate.exp.operation.binop.Pow;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.symbol.Bindings;
+import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.symbol.Variable;
+import com.marko.mate.exp.vectorial.Number;
+import com.marko.mate.exp.vectorial.QNumber;
+import com.marko.mate.exp.vectorial.RNumber;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A sparse multivariate polynomial with rational coefficients, for example
+ * {@code 3*x^2*y + y/2 - 1}. The expressions of the operation are its
+ * symbols, and every term stores the exponents of all the symbols packed in
+ * {@code long} words, 16 bits for each symbol, so comparing and multiplying
+ * monomials takes a few word operations. The terms are sorted in
+ * lexicographic order, with the first symbol as the most significant one, and
+ * there are no terms with a zero coefficient.
+ * <p>
+ * The coefficients are exact: they are the integer numerators of the terms
+ * over a denominator shared by all of them, so the arithmetic of the
+ * polynomials never rounds. Only {@link #evaluate(double...)} and
+ * {@link #compile(Bindings)} work with their doubles.
+ * <p>
+ * Adding, derivating and evaluating a polynomial takes time proportional to
+ * the number of terms, and multiplying two polynomials takes time
+ * proportional to the number of products of their terms. A polynomial is
+ * built from an expression of {@link Sum}, {@link Multiplication},
+ * {@link Division} by numbers and {@link Pow} with natural exponents with
+ * {@link #of(Expression)}, and it is turned back into those operations with
+ * {@link #toExpression()}.
+ *
+ * @author Marcos
+ */
+public class Polynomial extends Operation {
+
+    /**
+     * The maximum exponent of a symbol in a polynomial.
+     */
+    public static final int MAX_EXPONENT = 0xFFFF;
+
+    private static final int BITS = 16,
+            FIELDS = Long.SIZE / BITS;
+
+    private static final Expression[] NO_SYMBOLS = new Expression[0];
+
+    /**
+     * The digits of a {@link RNumber}, which holds exactly the integers below
+     * the limit.
+     */
+    private static final int DIGITS = 7;
+
+    private static final BigInteger EXACT_LIMIT = BigInteger.TEN.pow(DIGITS);
+
+    /**
+     * The maximum length of the dense polynomials of the Kronecker
+     * substitution, and how many times longer than the number of terms they
+     * can be.
+     */
+    private static final int MAX_DENSE_SIZE = 1 << 24,
+            MAX_DENSE_SPARSITY = 4;
+
+    /**
+     * The number of words of the exponents of every term.
+     */
+    private final int words;
+
+    /**
+     * The packed exponents of all the terms, one term after another.
+     */
+    private final long[] exponents;
+
+    /**
+     * The numerators of the coefficients of the terms, and their positive
+     * denominator, which has no common factor with all of them.
+     */
+    private final BigInteger[] numerators;
+
+    private final BigInteger denominator;
+
+    /**
+     * The coefficients as doubles, computed the first time they are used.
+     */
+    private volatile double[] coefficients;
+
+    /**
+     * The hash of the symbols and the terms, computed the first time it is
+     * needed. Zero means that it has not been computed yet.
+     */
+    private int hash;
+
+    /**
+     * The exponents and the coefficients must be already normalized.
+     */
+    private Polynomial(Expression[] symbols, long[] exponents, BigInteger[] numerators,
+            BigInteger denominator) {
+        super(symbols, false);
+        this.words = words(symbols.length);
+        this.exponents = exponents;
+        this.numerators = numerators;
+        this.denominator = denominator;
+    }
+
+    private static Polynomial zero(Expression[] symbols) {
+        return new Polynomial(symbols, new long[0], new BigInteger[0], BigInteger.ONE);
+    }
+
+    /**
+     *
+     * @param value
+     * @return the constant polynomial with the exact value of the number
+     */
+    public static Polynomial constant(Number value) {
+        if (value instanceof QNumber) {
+            QNumber fraction = (QNumber) value;
+            return constant(fraction.getNumerator(), fraction.getDenominator());
+        }
+        BigDecimal decimal = value.value();
+        BigInteger numerator = decimal.unscaledValue(),
+                denominator = BigInteger.ONE;
+        if (decimal.scale() > 0) {
+            denominator = BigInteger.TEN.pow(decimal.scale());
+        } else {
+            numerator = numerator.multiply(BigInteger.TEN.pow(-decimal.scale()));
+        }
+        return constant(numerator, denominator);
+    }
+
+    private static Polynomial constant(BigInteger numerator, BigInteger denominator) {
+        if (numerator.signum() == 0) {
+            return zero(NO_SYMBOLS);
+        }
+        return reduce(NO_SYMBOLS, new long[0], new BigInteger[]{numerator}, denominator);
+    }
+
+    /**
+     *
+     * @param symbol
+     * @return the polynomial {@code symbol}
+     */
+    public static Polynomial symbol(Symbol symbol) {
+        return new Polynomial(new Expression[]{symbol}, new long[]{1L << shift(0)},
+                new BigInteger[]{BigInteger.ONE}, BigInteger.ONE);
+    }
+
+    /**
+     * <p>
+     * Converts an expression made of numbers, symbols, {@link Sum},
+     * {@link Multiplication}, {@link Division} by numbers and {@link Pow} with
+     * natural exponents into a polynomial. The symbols are in the order they
+     * first appear in the expression.
+     *
+     * @param exp
+     * @return {@link Polynomial}
+     * @throws IllegalArgumentException if the expression is not a polynomial
+     */
+    public static Polynomial of(Expression exp) {
+        Polynomial polynomial = convert(exp);
+        if (polynomial == null) {
+            throw new IllegalArgumentException(exp + " is not a polynomial");
+        }
+        return polynomial;
+    }
+
+    /**
+     *
+     * @param exp
+     * @return true if {@link #of(Expression)} can convert the expression
+     */
+    public static boolean isPolynomial(Expression exp) {
+        if (exp instanceof Number || exp instanceof Symbol || exp instanceof Polynomial) {
+            return true;
+        }
+        if (exp instanceof Sum || exp instanceof Multiplication) {
+            return ((Operation) exp).getExpressions().stream().allMatch(Polynomial::isPolynomial);
+        }
+        if (exp instanceof Division) {
+            List<Expression> exprs = ((Division) exp).getExpressions();
+            return isPolynomial(exprs.get(0)) && exprs.get(1) instanceof Number
+                    && !exprs.get(1).isZero();
+        }
+        if (exp instanceof Pow) {
+            return isPolynomial(((Pow) exp).getBase())
+                    && naturalExponent(((Pow) exp).getExponent()) >= 0;
+        }
+        return false;
+    }
+
+    private static Polynomial convert(Expression exp) {
+        if (exp instanceof Polynomial) {
+            return (Polynomial) exp;
+        }
+        if (exp instanceof Number) {
+            return constant((Number) exp);
+        }
+        if (exp instanceof Symbol) {
+            return symbol((Symbol) exp);
+        }
+        if (exp instanceof Sum || exp instanceof Multiplication) {
+            boolean sum = exp instanceof Sum;
+            Polynomial result = constant(sum ? BigInteger.ZERO : BigInteger.ONE, BigInteger.ONE);
+            for (var child : ((Operation) exp).getExpressions()) {
+                Polynomial polynomial = convert(child);
+                if (polynomial == null) {
+                    return null;
+                }
+                result = sum ? result.add(polynomial) : result.multiply(polynomial);
+            }
+            return result;
+        }
+        if (exp instanceof Division) {
+            List<Expression> exprs = ((Division) exp).getExpressions();
+            Polynomial numerator = convert(exprs.get(0));
+            if (numerator == null || !(exprs.get(1) instanceof Number) || exprs.get(1).isZero()) {
+                return null;
+            }
+            Polynomial divisor = constant((Number) exprs.get(1));
+            return numerator.multiply(divisor.denominator, divisor.numerators[0]);
+        }
+        if (exp instanceof Pow) {
+            Polynomial base = convert(((Pow) exp).getBase());
+            int exponent = naturalExponent(((Pow) exp).getExponent());
+            if (base == null || exponent < 0) {
+                return null;
+            }
+            return base.pow(exponent);
+        }
+        return null;
+    }
+
+    /**
+     * @return the exponent if it is a natural number not greater than
+     * {@link #MAX_EXPONENT}, -1 otherwise
+     */
+    private static int naturalExponent(Expression exp) {
+        if (exp instanceof Number && ((Number) exp).isInteger()) {
+            double exponent = ((Number) exp).doubleValue();
+            if (exponent >= 0 && exponent <= MAX_EXPONENT) {
+                return (int) exponent;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     *
+     * @return the symbols of this polynomial
+     */
+    public Symbol[] getSymbols() {
+        return Arrays.copyOf(exprs, exprs.length, Symbol[].class);
+    }
+
+    /**
+     *
+     * @return the number of terms
+     */
+    public int size() {
+        return numerators.length;
+    }
+
+    /**
+     *
+     * @param term
+     * @return the nearest double to the coefficient of the term
+     */
+    public double getCoefficient(int term) {
+        return coefficients()[term];
+    }
+
+    /**
+     *
+     * @param term
+     * @return the numerator of the coefficient of the term over
+     * {@link #getDenominator()}
+     */
+    public BigInteger getNumerator(int term) {
+        return numerators[term];
+    }
+
+    /**
+     *
+     * @return the positive denominator of all the coefficients
+     */
+    public BigInteger getDenominator() {
+        return denominator;
+    }
+
+    private double[] coefficients() {
+        double[] result = coefficients;
+        if (result == null) {
+            result = new double[numerators.length];
+            BigDecimal divisor = new BigDecimal(denominator);
+            for (int t = 0; t < result.length; t++) {
+                result[t] = denominator.equals(BigInteger.ONE)
+                        ? numerators[t].doubleValue()
+                        : new BigDecimal(numerators[t])
+                                .divide(divisor, MathContext.DECIMAL128).doubleValue();
+            }
+            coefficients = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the exact coefficient of the term, a {@link RNumber} if it is a
+     * short decimal
+     */
+    private Number coefficient(int term) {
+        BigInteger gcd = numerators[term].gcd(denominator),
+                numerator = numerators[term].divide(gcd),
+                denominator = this.denominator.divide(gcd);
+        if (numerator.abs().compareTo(EXACT_LIMIT) < 0) {
+            try {
+                BigDecimal value = new BigDecimal(numerator).divide(new BigDecimal(denominator));
+                if (value.stripTrailingZeros().precision() <= DIGITS) {
+                    return new RNumber(value.doubleValue());
+                }
+            } catch (ArithmeticException ex) {
+                // not a decimal fraction
+            }
+        }
+        return new QNumber(numerator, denominator);
+    }
+
+    /**
+     *
+     * @param term
+     * @param symbol the index of the symbol in {@link #getSymbols()}
+     * @return the exponent of the symbol in the term
+     */
+    public int getExponent(int term, int symbol) {
+        return exponent(exponents, term * words, symbol);
+    }
+
+    /**
+     *
+     * @return the maximum total degree of the terms, or -1 for the zero
+     * polynomial
+     */
+    public int degree() {
+        int degree = -1;
+        for (int t = 0; t < numerators.length; t++) {
+            int sum = 0;
+            for (int s = 0; s < exprs.length; s++) {
+                sum += getExponent(t, s);
+            }
+            degree = Math.max(degree, sum);
+        }
+        return degree;
+    }
+
+    /**
+     *
+     * @param symbol
+     * @return the maximum exponent of the symbol in the terms
+     */
+    public int degree(Symbol symbol) {
+        int index = indexOf(symbol);
+        int degree = 0;
+        if (index >= 0) {
+            for (int t = 0; t < numerators.length; t++) {
+                degree = Math.max(degree, getExponent(t, index));
+            }
+        }
+        return degree;
+    }
+
+    /**
+     *
+     * @param polynomial
+     * @return the sum of both polynomials
+     */
+    public Polynomial add(Polynomial polynomial) {
+        Expression[] symbols = union(exprs, polynomial.exprs);
+        Polynomial a = over(symbols),
+                b = polynomial.over(symbols);
+        int w = a.words;
+        int n = a.numerators.length, m = b.numerators.length;
+        // both over the least common denominator
+        BigInteger gcd = a.denominator.gcd(b.denominator),
+                scaleA = b.denominator.divide(gcd),
+                scaleB = a.denominator.divide(gcd);
+        long[] exps = new long[(n + m) * w];
+        BigInteger[] nums = new BigInteger[n + m];
+        int i = 0, j = 0, k = 0;
+        while (i < n || j < m) {
+            int c = i == n ? -1 : j == m ? 1 : compare(a.exponents, i * w, b.exponents, j * w, w);
+            if (c > 0) {
+                System.arraycopy(a.exponents, i * w, exps, k * w, w);
+                nums[k++] = a.numerators[i++].multiply(scaleA);
+            } else if (c < 0) {
+                System.arraycopy(b.exponents, j * w, exps, k * w, w);
+                nums[k++] = b.numerators[j++].multiply(scaleB);
+            } else {
+                BigInteger numerator = a.numerators[i].multiply(scaleA)
+                        .add(b.numerators[j].multiply(scaleB));
+                if (numerator.signum() != 0) {
+                    System.arraycopy(a.exponents, i * w, exps, k * w, w);
+                    nums[k++] = numerator;
+                }
+                i++;
+                j++;
+            }
+        }
+        return reduce(symbols, Arrays.copyOf(exps, k * w), Arrays.copyOf(nums, k),
+                a.denominator.multiply(scaleA));
+    }
+
+    /**
+     *
+     * @param value
+     * @return this polynomial multiplied by the exact value of the number
+     */
+    public Polynomial multiply(Number value) {
+        Polynomial constant = constant(value);
+        if (constant.isZero()) {
+            return zero(exprs);
+        }
+        return multiply(constant.numerators[0], constant.denominator);
+    }
+
+    /**
+     * @return this polynomial multiplied by the fraction, which is not zero
+     */
+    private Polynomial multiply(BigInteger numerator, BigInteger denominator) {
+        if (denominator.signum() < 0) {
+            numerator = numerator.negate();
+            denominator = denominator.negate();
+        }
+        BigInteger[] nums = new BigInteger[numerators.length];
+        for (int t = 0; t < nums.length; t++) {
+            nums[t] = numerators[t].multiply(numerator);
+        }
+        return reduce(exprs, exponents, nums, this.denominator.multiply(denominator));
+    }
+
+    /**
+     *
+     * @param polynomial
+     * @return the product of both polynomials
+     * @throws ArithmeticException if some exponent is greater than
+     * {@link #MAX_EXPONENT}
+     */
+    public Polynomial multiply(Polynomial polynomial) {
+        Expression[] symbols = union(exprs, polynomial.exprs);
+        Polynomial a = over(symbols),
+                b = polynomial.over(symbols);
+        for (int s = 0; s < symbols.length; s++) {
+            if (a.degree((Symbol) symbols[s]) + b.degree((Symbol) symbols[s]) > MAX_EXPONENT) {
+                throw new ArithmeticException("Exponent of " + symbols[s] + " out of range");
+            }
+        }
+        if (Math.min(a.numerators.length, b.numerators.length) >= Convolution.KARATSUBA_THRESHOLD) {
+            Polynomial dense = multiplyDense(a, b);
+            if (dense != null) {
+                return dense;
+            }
+        }
+        return multiplySparse(a, b);
+    }
+
+    /**
+     * Multiplies every pair of terms, for polynomials over the same symbols.
+     */
+    private static Polynomial multiplySparse(Polynomial a, Polynomial b) {
+        int w = a.words;
+        int n = a.numerators.length, m = b.numerators.length;
+        long[] exps = new long[n * m * w];
+        BigInteger[] nums = new BigInteger[n * m];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++, k++) {
+                // the fields never overflow, so adding the words adds the exponents
+                for (int x = 0; x < w; x++) {
+                    exps[k * w + x] = a.exponents[i * w + x] + b.exponents[j * w + x];
+                }
+                nums[k] = a.numerators[i].multiply(b.numerators[j]);
+            }
+        }
+        return normalize(a.exprs, exps, nums, a.denominator.multiply(b.denominator));
+    }
+
+    /**
+     * <p>
+     * Multiplies polynomials over the same symbols with the dense
+     * {@link Convolution}, after the Kronecker substitution: every symbol is
+     * replaced by a power of a single one, with exponents spaced enough that
+     * the exponents of the product don't mix. The substitution keeps the
+     * lexicographic order, so the product is already sorted.
+     *
+     * @return the product, or null if the dense polynomials would be too big
+     * or too sparse
+     */
+    private static Polynomial multiplyDense(Polynomial a, Polynomial b) {
+        int symbols = a.exprs.length;
+        long[] strides = new long[symbols];
+        long size = 1;
+        for (int s = symbols - 1; s >= 0; s--) {
+            strides[s] = size;
+            size *= a.degree((Symbol) a.exprs[s]) + b.degree((Symbol) a.exprs[s]) + 1;
+            if (size > MAX_DENSE_SIZE) {
+                return null;
+            }
+        }
+        BigInteger[] denseA = a.toDense(strides), denseB = b.toDense(strides);
+        if (denseA == null || denseB == null) {
+            return null;
+        }
+        BigInteger[] product = Convolution.multiply(denseA, denseB);
+        int terms = 0;
+        for (var c : product) {
+            if (c.signum() != 0) {
+                terms++;
+            }
+        }
+        int w = a.words;
+        long[] exps = new long[terms * w];
+        BigInteger[] nums = new BigInteger[terms];
+        int k = 0;
+        for (int i = product.length - 1; i >= 0; i--) {
+            if (product[i].signum() != 0) {
+                long rest = i;
+                for (int s = 0; s < symbols; s++) {
+                    exps[k * w + s / FIELDS] |= (rest / strides[s]) << shift(s);
+                    rest %= strides[s];
+                }
+                nums[k++] = product[i];
+            }
+        }
+        return reduce(a.exprs, exps, nums, a.denominator.multiply(b.denominator));
+    }
+
+    /**
+     * @return the coefficients of the Kronecker substitution of this
+     * polynomial, from the lowest degree, or null if less than a fraction of
+     * them would be nonzero
+     */
+    private BigInteger[] toDense(long[] strides) {
+        BigInteger[] dense = null;
+        for (int t = 0; t < numerators.length; t++) {
+            long index = 0;
+            for (int s = 0; s < strides.length; s++) {
+                index += getExponent(t, s) * strides[s];
+            }
+            if (dense == null) {
+                // the first term has the highest index
+                if (index >= (long) MAX_DENSE_SPARSITY * numerators.length) {
+                    return null;
+                }
+                dense = new BigInteger[(int) index + 1];
+                Arrays.fill(dense, BigInteger.ZERO);
+            }
+            dense[(int) index] = numerators[t];
+        }
+        return dense;
+    }
+
+    /**
+     *
+     * @param exponent
+     * @return this polynomial raised to the exponent
+     */
+    public Polynomial pow(int exponent) {
+        if (exponent < 0) {
+            throw new ArithmeticException("Negative exponent " + exponent);
+        }
+        Polynomial result = constant(BigInteger.ONE, BigInteger.ONE),
+                square = this;
+        while (exponent > 0) {
+            if ((exponent & 1) == 1) {
+                result = result.multiply(square);
+            }
+            exponent >>= 1;
+            if (exponent > 0) {
+                square = square.multiply(square);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * <p>
+     * Derivates every term of this polynomial. Decreasing the same exponent
+     * doesn't change the order of the terms, so it takes time proportional to
+     * the number of terms.
+     *
+     * @param var
+     * @return {@link Polynomial}
+     */
+    @Override
+    public Polynomial derivate(Variable var) {
+        int index = indexOf(var);
+        if (index < 0) {
+            return zero(exprs);
+        }
+        int w = words;
+        long one = 1L << shift(index);
+        long[] exps = new long[exponents.length];
+        BigInteger[] nums = new BigInteger[numerators.length];
+        int k = 0;
+        for (int t = 0; t < numerators.length; t++) {
+            int exponent = getExponent(t, index);
+            if (exponent > 0) {
+                System.arraycopy(exponents, t * w, exps, k * w, w);
+                exps[k * w + index / FIELDS] -= one;
+                nums[k++] = numerators[t].multiply(BigInteger.valueOf(exponent));
+            }
+        }
+        return reduce(exprs, Arrays.copyOf(exps, k * w), Arrays.copyOf(nums, k), denominator);
+    }
+
+    @Override
+    protected Expression derivateOperation(Variable var, Map<Expression, Expression> derivatives) {
+        return derivate(var);
+    }
+
+    /**
+     *
+     * @param point the values of the symbols, in the same order as
+     * {@link #getSymbols()}
+     * @return the value of this polynomial in the point
+     */
+    public double evaluate(double... point) {
+        double[] coefficients = coefficients();
+        double sum = 0;
+        for (int t = 0; t < coefficients.length; t++) {
+            double term = coefficients[t];
+            for (int s = 0; s < exprs.length; s++) {
+                int exponent = getExponent(t, s);
+                if (exponent != 0) {
+                    term *= Math.pow(point[s], exponent);
+                }
+            }
+            sum += term;
+        }
+        return sum;
+    }
+
+    @Override
+    public Expression apply(Expression... values) {
+        if (Arrays.stream(values).allMatch(v -> v instanceof Number)) {
+            // with the arithmetic of the numbers, so exact numbers give an
+            // exact value
+            Expression sum = RNumber.ZERO;
+            for (int t = 0; t < numerators.length; t++) {
+                Expression term = coefficient(t);
+                for (int s = 0; s < exprs.length; s++) {
+                    int exponent = getExponent(t, s);
+                    if (exponent != 0) {
+                        term = term.multiply(((Number) values[s]).pow(new RNumber(exponent)));
+                    }
+                }
+                sum = sum.add(term);
+            }
+            return sum;
+        }
+        return toExpression(values).simplify();
+    }
+
+    @Override
+    public CompiledExpression compile(Bindings bindings) {
+        int n = exprs.length;
+        int[] slots = new int[n];
+        for (int s = 0; s < n; s++) {
+            slots[s] = bindings.slotOf((Symbol) exprs[s]);
+            if (slots[s] < 0) {
+                throw new IllegalArgumentException("Unbound symbol " + exprs[s]);
+            }
+        }
+        double[] coefs = coefficients();
+        int[] unpacked = new int[coefs.length * n];
+        for (int t = 0; t < coefs.length; t++) {
+            for (int s = 0; s < n; s++) {
+                unpacked[t * n + s] = getExponent(t, s);
+            }
+        }
+        return point -> {
+            double sum = 0;
+            for (int t = 0, k = 0; t < coefs.length; t++) {
+                double term = coefs[t];
+                for (int s = 0; s < n; s++, k++) {
+                    if (unpacked[k] != 0) {
+                        term *= Math.pow(point[slots[s]], unpacked[k]);
+                    }
+                }
+                sum += term;
+            }
+            return sum;
+        };
+    }
+
+    /**
+     *
+     * @return the equivalent expression made of {@link Sum},
+     * {@link Multiplication} and {@link Pow}
+     */
+    public Expression toExpression() {
+        return toExpression(exprs);
+    }
+
+    /**
+     * Builds the expression replacing every symbol by its value.
+     */
+    private Expression toExpression(Expression[] values) {
+        if (numerators.length == 0) {
+            return RNumber.ZERO;
+        }
+        Sum.Builder sum = new Sum.Builder();
+        Expression last = null;
+        for (int t = 0; t < numerators.length; t++) {
+            Multiplication.Builder product = new Multiplication.Builder();
+            int factors = 0;
+            if (!numerators[t].equals(denominator)) {
+                last = coefficient(t);
+                product.add(last);
+                factors++;
+            }
+            for (int s = 0; s < exprs.length; s++) {
+                int exponent = getExponent(t, s);
+                if (exponent != 0) {
+                    last = exponent == 1 ? values[s] : new Pow(values[s], Number.valueOf(exponent));
+                    product.add(last);
+                    factors++;
+                }
+            }
+            if (factors == 0) {
+                last = coefficient(t);
+            } else if (factors > 1) {
+                last = product.build();
+            }
+            sum.add(last);
+        }
+        return numerators.length == 1 ? last : sum.build();
+    }
+
+    @Override
+    public Polynomial withExpressions(Expression... exprs) {
+        if (!Arrays.stream(exprs).allMatch(e -> e instanceof Symbol)
+                || exprs.length != this.exprs.length) {
+            throw new IllegalArgumentException("The expressions of a polynomial must be its symbols");
+        }
+        return new Polynomial(exprs.clone(), exponents, numerators, denominator);
+    }
+
+    /**
+     * <p>
+     * A polynomial is already in normal form, unless it is a number.
+     *
+     * @return {@link Expression}
+     */
+    @Override
+    protected Expression simplifyOperation() {
+        if (numerators.length == 0) {
+            return RNumber.ZERO;
+        }
+        if (numerators.length == 1 && degree() == 0) {
+            return coefficient(0);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isZero() {
+        return numerators.length == 0;
+    }
+
+    @Override
+    public String toString() {
+        return toExpression().toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof Polynomial)) {
+            return false;
+        }
+        Polynomial polynomial = (Polynomial) obj;
+        return hashCode() == polynomial.hashCode()
+                && Arrays.equals(exprs, polynomial.exprs)
+                && denominator.equals(polynomial.denominator)
+                && Arrays.equals(numerators, polynomial.numerators)
+                && Arrays.equals(exponents, polynomial.exponents);
+    }
+
+    /**
+     * The hash of the symbols and the terms. It is computed only once, as the
+     * structural hash of the other operations.
+     *
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = super.hashCode();
+            h = 31 * h + denominator.hashCode();
+            h = 31 * h + Arrays.hashCode(numerators);
+            h = 31 * h + Arrays.hashCode(exponents);
+            hash = h;
+        }
+        return h;
+    }
+
+    private int indexOf(Symbol symbol) {
+        for (int s = 0; s < exprs.length; s++) {
+            if (exprs[s].equals(symbol)) {
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return this polynomial over the symbols, which contain all the symbols
+     * of this polynomial
+     */
+    private Polynomial over(Expression[] symbols) {
+        if (Arrays.equals(symbols, exprs)) {
+            return this;
+        }
+        int w = words(symbols.length);
+        long[] exps = new long[numerators.length * w];
+        for (int s = 0; s < exprs.length; s++) {
+            int index = Arrays.asList(symbols).indexOf(exprs[s]);
+            for (int t = 0; t < numerators.length; t++) {
+                exps[t * w + index / FIELDS] |= (long) getExponent(t, s) << shift(index);
+            }
+        }
+        return normalize(symbols, exps, numerators.clone(), denominator);
+    }
+
+    private static Expression[] union(Expression[] a, Expression[] b) {
+        if (Arrays.equals(a, b)) {
+            return a;
+        }
+        var symbols = new LinkedHashSet<Expression>(Arrays.asList(a));
+        symbols.addAll(Arrays.asList(b));
+        return symbols.toArray(new Expression[symbols.size()]);
+    }
+
+    /**
+     * Sorts the terms, adds the terms with the same exponents and removes the
+     * terms with a zero coefficient.
+     */
+    private static Polynomial normalize(Expression[] symbols, long[] exps, BigInteger[] nums,
+            BigInteger denominator) {
+        int w = words(symbols.length);
+        Integer[] order = new Integer[nums.length];
+        for (int t = 0; t < order.length; t++) {
+            order[t] = t;
+        }
+        Arrays.sort(order, (i, j) -> compare(exps, j * w, exps, i * w, w));
+        long[] sortedExps = new long[exps.length];
+        BigInteger[] sortedNums = new BigInteger[nums.length];
+        int k = -1;
+        for (int t : order) {
+            if (k >= 0 && compare(sortedExps, k * w, exps, t * w, w) == 0) {
+                sortedNums[k] = sortedNums[k].add(nums[t]);
+            } else {
+                if (k < 0 || sortedNums[k].signum() != 0) {
+                    k++;
+                }
+                System.arraycopy(exps, t * w, sortedExps, k * w, w);
+                sortedNums[k] = nums[t];
+            }
+        }
+        if (k >= 0 && sortedNums[k].signum() != 0) {
+            k++;
+        }
+        return reduce(symbols, Arrays.copyOf(sortedExps, Math.max(k, 0) * w),
+                Arrays.copyOf(sortedNums, Math.max(k, 0)), denominator);
+    }
+
+    /**
+     * Divides the numerators and the denominator by their greatest common
+     * divisor. The terms must be already normalized.
+     */
+    private static Polynomial reduce(Expression[] symbols, long[] exps, BigInteger[] nums,
+            BigInteger denominator) {
+        if (nums.length == 0) {
+            return zero(symbols);
+        }
+        BigInteger gcd = denominator;
+        for (int t = 0; t < nums.length && !gcd.equals(BigInteger.ONE); t++) {
+            gcd = gcd.gcd(nums[t]);
+        }
+        if (!gcd.equals(BigInteger.ONE)) {
+            for (int t = 0; t < nums.length; t++) {
+                nums[t] = nums[t].divide(gcd);
+            }
+            denominator = denominator.divide(gcd);
+        }
+        return new Polynomial(symbols, exps, nums, denominator);
+    }
+
+    private static int compare(long[] a, int i, long[] b, int j, int words) {
+        for (int x = 0; x < words; x++) {
+            int c = Long.compareUnsigned(a[i + x], b[j + x]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private static int exponent(long[] exponents, int offset, int symbol) {
+        return (int) (exponents[offset + symbol / FIELDS] >>> shift(symbol)) & MAX_EXPONENT;
+    }
+
+    private static int shift(int symbol) {
+        return (FIELDS - 1 - symbol % FIELDS) * BITS;
+    }
+
+    private static int words(int symbols) {
+        return (symbols + FIELDS - 1) / FIELDS;
+    }
+
+}
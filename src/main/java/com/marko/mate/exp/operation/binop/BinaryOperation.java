@@ -18,8 +18,7 @@ package com.marko.mate.exp.operation.binop;
 
 import com.marko.mate.exp.Expression;
 import com.marko.mate.exp.operation.Operation;
-import com.marko.mate.exp.vectorial.RNumber;
-import java.util.LinkedList;
+import com.marko.mate.exp.vectorial.Number;
 
 /**
  *
@@ -35,6 +34,10 @@ public abstract class BinaryOperation extends Operation {
         super(exprs);
     }
 
+    protected BinaryOperation(Expression[] exprs, boolean simplify) {
+        super(exprs, simplify);
+    }
+
     @Override
     public String toString() {
 
@@ -52,17 +55,15 @@ public abstract class BinaryOperation extends Operation {
 
         }
 
-        LinkedList<Expression> list = exprs;
-
         String str = "(";
-        for (int i = 0; i < list.size() - 1; i++) {
-            if (symbol == MULTIPLICATION && list.get(i).equals(RNumber.parseNumber("-1"))) {
+        for (int i = 0; i < exprs.length - 1; i++) {
+            if (symbol == MULTIPLICATION && exprs[i].equals(Number.valueOf(-1))) {
                 str += "-";
             } else {
-                str += list.get(i) + " " + symbol + " ";
+                str += exprs[i] + " " + symbol + " ";
             }
         }
-        str += list.get(list.size() - 1);
+        str += exprs[exprs.length - 1];
         return str + ")";
 
     }
@@ -17,12 +17,15 @@
 package com.marko.mate.exp.operation.binop;
 
 import com.marko.mate.exp.Expression;
-import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.compile.CompiledExpression;
+import com.marko.mate.exp.symbol.Bindings;
 import com.marko.mate.exp.symbol.Variable;
+import com.marko.mate.exp.vectorial.DDNumber;
+import com.marko.mate.exp.vectorial.DNumber;
 import com.marko.mate.exp.vectorial.RNumber;
 import com.marko.mate.exp.vectorial.Number;
 import com.marko.mate.exp.vectorial.QNumber;
-import com.marko.mate.exp.vectorial.Space;
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -32,52 +35,66 @@ import java.util.Map;
 public class Division extends BinaryOperation {
 
     public Division(Expression numerator, Expression denominator) {
-        super(new Expression[]{numerator, denominator});
-        if (exprs.get(1).isZero()) {
+        this(numerator, denominator, true);
+    }
+
+    private Division(Expression numerator, Expression denominator, boolean simplify) {
+        super(new Expression[]{numerator, denominator}, simplify);
+        if (exprs[1].isZero()) {
             throw new IllegalStateException("Zero in denominator");
         }
 
     }
 
     @Override
-    public Expression evaluate(Map<Symbol, Space> point) {
+    public Division withExpressions(Expression... exprs) {
+        return new Division(exprs[0], exprs[1], false);
+    }
 
-        return exprs.get(0).evaluate(point).divide(
-                exprs.get(1).evaluate(point)).simplify();
+    @Override
+    public Expression apply(Expression... values) {
+        return values[0].divide(values[1]).simplify();
+    }
+
+    @Override
+    public CompiledExpression compile(Bindings bindings) {
+        CompiledExpression num = exprs[0].compile(bindings),
+                den = exprs[1].compile(bindings);
+        return point -> num.evaluate(point) / den.evaluate(point);
     }
 
     @Override
-    public Expression derivate(Variable var) {
-        if (exprs.size() == 1) {
-            return exprs.get(0).derivate(var);
+    protected Expression derivateOperation(Variable var, Map<Expression, Expression> derivatives) {
+        if (exprs.length == 1) {
+            return exprs[0].derivate(var, derivatives);
         }
 
-        if (exprs.isEmpty()) {
-            return new RNumber(0);
+        if (exprs.length == 0) {
+            return RNumber.ZERO;
         }
 
-        if (exprs.stream().allMatch(e -> e instanceof Number)) {
-            return new RNumber(0);
+        if (Arrays.stream(exprs).allMatch(e -> e instanceof Number)) {
+            return RNumber.ZERO;
         }
 
-        Expression num = exprs.get(0),
-                den = exprs.get(1);
+        Expression num = exprs[0],
+                den = exprs[1];
 
         return new Division(
                 new Sum(
                         new Multiplication(
-                                num.derivate(var),
+                                num.derivate(var, derivatives),
                                 den
                         ),
                         new Multiplication(
-                                Number.parseNumber("-1"),
+                                Number.valueOf(-1),
                                 num,
-                                den.derivate(var)
+                                den.derivate(var, derivatives)
                         )
                 ).simplify(),
                 new Pow(
                         den,
-                        Number.parseNumber("-2")
+                        Number.valueOf(2)
                 )
         ).simplify();
 
@@ -85,18 +102,22 @@ public class Division extends BinaryOperation {
 
     @Override
     public boolean isZero() {
-        return exprs.get(0).isZero();
+        return exprs[0].isZero();
     }
 
     @Override
-    public Expression simplify() {
-        Expression num = exprs.get(0),
-                den = exprs.get(1);
+    protected Expression simplifyOperation() {
+        Expression num = exprs[0],
+                den = exprs[1];
 
-        if (den.equals(new RNumber(1))) {
+        if (den.equals(RNumber.ONE)) {
             return num;
         }
-        if (exprs.stream().allMatch(e -> e instanceof Number)) {
+        if (Arrays.stream(exprs).allMatch(e -> e instanceof Number)) {
+            // the doubles divide as numbers, without becoming exact fractions
+            if (Arrays.stream(exprs).anyMatch(e -> e instanceof DNumber || e instanceof DDNumber)) {
+                return num.divide(den);
+            }
             return new QNumber(
                     (Number) num,
                     (Number) den
@@ -17,15 +17,17 @@
 package com.marko.mate.exp.operation.binop;
 
 import com.marko.mate.exp.Expression;
-import com.marko.mate.exp.operation.Operation;
-import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.compile.CompiledExpression;
+import com.marko.mate.exp.operation.Polynomial;
+import com.marko.mate.exp.symbol.Bindings;
 import com.marko.mate.exp.symbol.Variable;
 import com.marko.mate.exp.vectorial.RNumber;
 import com.marko.mate.exp.vectorial.Number;
-import com.marko.mate.exp.vectorial.Space;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.Map;
-import java.util.stream.Stream;
 
 /**
  *
@@ -36,56 +38,83 @@ public class Multiplication extends BinaryOperation {
     public Multiplication(Expression... exprs) {
         super(exprs);
     }
+
+    Multiplication(Expression[] exprs, boolean simplify) {
+        super(exprs, simplify);
+    }
     
     public Multiplication(){
         super();
     }
     
-    public void addExp(Expression exp){
-        exprs.add(exp);
+    @Override
+    protected boolean isCommutative() {
+        return true;
+    }
+
+    @Override
+    public Multiplication withExpressions(Expression... exprs) {
+        return new Multiplication(exprs, false);
     }
 
     @Override
-    public Expression evaluate(Map<Symbol, Space> point) {
+    public Expression apply(Expression... values) {
 
-        if (exprs.isEmpty()) {
+        if (values.length == 0) {
             return RNumber.ZERO;
         }
         Expression space = RNumber.ONE;
-        for (var exp : exprs) {
-            space = space.multiply(exp.evaluate(point));
+        for (var value : values) {
+            space = space.multiply(value);
         }
 
         return space;
     }
 
     @Override
-    public Expression derivate(Variable var) {
-        if (exprs.size() == 1) {
-            return exprs.get(0).derivate(var).simplify();
+    public CompiledExpression compile(Bindings bindings) {
+        CompiledExpression[] factors = compileExpressions(bindings);
+
+        if (factors.length == 0) {
+            return point -> 0;
+        }
+
+        if (factors.length == 2) {
+            CompiledExpression a = factors[0],
+                    b = factors[1];
+            return point -> a.evaluate(point) * b.evaluate(point);
+        }
+
+        return point -> {
+            double product = 1;
+            for (var factor : factors) {
+                product *= factor.evaluate(point);
+            }
+            return product;
+        };
+    }
+
+    @Override
+    protected Expression derivateOperation(Variable var, Map<Expression, Expression> derivatives) {
+        if (exprs.length == 1) {
+            return exprs[0].derivate(var, derivatives).simplify();
         }
 
-        if (exprs.size() == 2) {
+        if (exprs.length == 2) {
             return new Sum(
                     new Multiplication(
-                            exprs.get(0).derivate(var).simplify(),
-                            exprs.get(1)
+                            exprs[0].derivate(var, derivatives).simplify(),
+                            exprs[1]
                     ),
                     new Multiplication(
-                            exprs.get(0),
-                            exprs.get(1).derivate(var).simplify()
+                            exprs[0],
+                            exprs[1].derivate(var, derivatives).simplify()
                     )
             );
         }
 
-        LinkedList<Expression> listLowHalf = new LinkedList<>(
-                exprs.subList(0, exprs.size() / 2));
-        LinkedList<Expression> listHighHalf = new LinkedList<>(
-                exprs.subList(exprs.size() / 2, exprs.size()));
-        Expression[] a = new Expression[listLowHalf.size()];
-        listLowHalf.toArray(a);
-        Expression[] b = new Expression[listHighHalf.size()];
-        listHighHalf.toArray(b);
+        Expression[] a = Arrays.copyOfRange(exprs, 0, exprs.length / 2);
+        Expression[] b = Arrays.copyOfRange(exprs, exprs.length / 2, exprs.length);
         Multiplication multLowHalf = new Multiplication(
                 a
         );
@@ -95,95 +124,194 @@ public class Multiplication extends BinaryOperation {
         return new Multiplication(
                 multLowHalf,
                 multHighHalf
-        ).derivate(var).simplify();
+        ).derivate(var, derivatives).simplify();
     }
 
     @Override
     public boolean isZero() {
-        return exprs.stream().anyMatch(e -> e.isZero());
+        return Arrays.stream(exprs).anyMatch(e -> e.isZero());
     }
 
+    /**
+     * <p>
+     * Expands the polynomial factors together and then distributes the
+     * product of the rest of the factors over every term, so
+     * {@code (x + 1) * sin(x)} becomes {@code x * sin(x) + sin(x)}.
+     *
+     * @return {@link Expression}
+     */
     @Override
-    public Expression simplify() {
-
-        for (var exp : exprs) {
-            if (exp instanceof Multiplication) {
-                Multiplication expMult = (Multiplication) exp;
-                exprs.remove(exp);
-                exprs.addAll(expMult.exprs);
-                return simplify();
+    public Expression expand() {
+        Expression expanded = super.expand();
+        if (!(expanded instanceof Multiplication)) {
+            return expanded;
+        }
+        Builder polynomial = new Builder(),
+                rest = new Builder();
+        boolean distribute = false, others = false;
+        for (var factor : ((Multiplication) expanded).exprs) {
+            if (Polynomial.isPolynomial(factor)) {
+                polynomial.add(factor);
+                distribute |= factor instanceof Sum;
+            } else {
+                rest.add(factor);
+                others = true;
             }
         }
-
-        if (exprs.isEmpty()
-                || exprs.contains(RNumber.ZERO)) {
-            return RNumber.ZERO;
+        // without other factors the polynomial could not be expanded
+        if (!distribute || !others) {
+            return expanded;
         }
-        if (exprs.size() == 1) {
-            return exprs.get(0).simplify();
+        Expression terms = polynomial.build().expand();
+        if (!(terms instanceof Sum)) {
+            return expanded;
         }
-        Number n = RNumber.ONE;
-        if (exprs.stream().allMatch(e -> e instanceof Number)) {
-
-            for (Expression exp : exprs) {
-                n = (Number) n.multiply((Number) exp);
-            }
-            return n;
+        Expression product = rest.build();
+        Sum.Builder sum = new Sum.Builder();
+        for (var term : ((Sum) terms).getExpressions()) {
+            sum.add(new Multiplication(term, product));
         }
-        LinkedList<Expression> list = new LinkedList<>();
-        LinkedList<Symbol> simList = new LinkedList<>();
-        for (Expression exp : exprs) {
-            if (exp instanceof Number) {
-                n = (Number) n.multiply((Number) exp);
-            } else if (exp instanceof Symbol) {
-                simList.add((Symbol) exp);
-            } else if (exp instanceof Operation) {
-                list.add(exp.simplify());
-            }
+        return sum.build().simplify();
+    }
+
+    /**
+     * <p>
+     * Collects the factors of this multiplication with the same base in linear
+     * time, mapping every distinct base to its exponent, so
+     * {@code 2 * x * y * x^2 * 3} becomes {@code 6 * x^3 * y}. The number, if
+     * any, is the first factor, and the other factors keep the order in which
+     * they first appear.
+     *
+     * @return {@link Expression}
+     */
+    @Override
+    protected Expression simplifyOperation() {
+
+        if (exprs.length == 0) {
+            return RNumber.ZERO;
         }
 
-        if (n.equals(RNumber.ZERO)) {
+        Factors factors = new Factors();
+        factors.collect(exprs);
+
+        if (factors.number != null && factors.number.isZero()) {
             return RNumber.ZERO;
         }
 
-        Stream<Symbol> streamSym = simList.stream().distinct();
-        streamSym.forEach((t) -> {
-            int count = 0;
-            count = simList.stream().filter((cons) -> (t.equals(cons))).map((_item) -> 1).reduce(count, Integer::sum);
-            if (count == 1) {
-                list.addFirst(t);
-            } else {
-                list.addFirst(new Pow(t, RNumber.parseNumber(count + "")));
+        LinkedList<Expression> list = new LinkedList<>();
+        if (factors.number != null && factors.number.compareTo(RNumber.ONE) != 0) {
+            list.add(factors.number);
+        }
+        factors.factors.forEach((base, factor) -> {
+            if (factor.original != null) {
+                list.add(factor.original);
+            } else if (!(factor.exponent instanceof Number)) {
+                list.add(new Pow(base, factor.exponent).simplify());
+            } else if (((Number) factor.exponent).compareTo(RNumber.ONE) == 0) {
+                list.add(base);
+            } else if (!factor.exponent.isZero()) {
+                list.add(new Pow(base, factor.exponent).simplify());
             }
         });
 
-        if (!n.equals(RNumber.ONE)) {
-            list.addFirst(n);
-        }
-
         if (list.stream().anyMatch(e -> e.isZero())) {
             return RNumber.ZERO;
         }
-        Expression[] exps = new Expression[list.size()];
-        for (int i = 0; i < exps.length; i++) {
-            exps[i] = list.get(i);
+        if (list.isEmpty()) {
+            return factors.number == null ? RNumber.ONE : factors.number;
+        }
+        if (list.size() == 1) {
+            return list.getFirst();
+        }
+        return new Multiplication(list.toArray(new Expression[list.size()]), false);
+    }
+
+    /**
+     * The factors of a multiplication, by their base.
+     */
+    private static final class Factors {
+
+        private final Map<Expression, Factor> factors = new LinkedHashMap<>();
+
+        /**
+         * The product of all the numbers, or null if there are no numbers.
+         */
+        private Number number;
+
+        /**
+         * Simplifies the expressions and adds them, replacing every nested
+         * {@link Multiplication} by its own factors.
+         */
+        private void collect(Expression[] exprs) {
+            for (var exp : exprs) {
+                Expression factor = exp instanceof Multiplication ? exp : exp.simplify();
+                if (factor instanceof Multiplication) {
+                    collect(((Multiplication) factor).exprs);
+                } else if (factor instanceof Number) {
+                    number = number == null ? (Number) factor : (Number) number.multiply(factor);
+                } else {
+                    add(factor);
+                }
+            }
+        }
+
+        private void add(Expression exp) {
+            Expression base = exp;
+            Expression exponent = RNumber.ONE;
+            if (exp instanceof Pow) {
+                base = ((Pow) exp).getBase();
+                exponent = ((Pow) exp).getExponent();
+            }
+            Factor factor = factors.get(base);
+            if (factor == null) {
+                factors.put(base, new Factor(exp, exponent));
+            } else if (factor.exponent instanceof Number && exponent instanceof Number) {
+                factor.exponent = factor.exponent.add(exponent);
+                factor.original = null;
+            } else {
+                factor.exponent = new Sum(factor.exponent, exponent).simplify();
+                factor.original = null;
+            }
         }
-        return new Multiplication(exps);
 
     }
 
-    @Override
-    public boolean equals(Object obj) {
-        if (obj instanceof Multiplication) {
-            return super.equals(obj);
+    private static final class Factor {
+
+        /**
+         * The factor as it was found, while it has been found only once.
+         */
+        private Expression original;
+
+        private Expression exponent;
+
+        private Factor(Expression original, Expression exponent) {
+            this.original = original;
+            this.exponent = exponent;
         }
-        return false;
+
     }
 
-    @Override
-    public int hashCode() {
-        int hash = 7;
-        return hash;
+    /**
+     * <p>
+     * Collects the factors of a {@link Multiplication} one at a time, since
+     * its factors are fixed when it is created. They are kept as given, in
+     * order: {@link #build()} doesn't simplify them, simplifying the built
+     * multiplication does, so each factor is simplified once.
+     */
+    public static final class Builder {
+
+        private final ArrayList<Expression> exprs = new ArrayList<>();
+
+        public Builder add(Expression exp) {
+            exprs.add(exp);
+            return this;
+        }
+
+        public Multiplication build() {
+            return new Multiplication(exprs.toArray(new Expression[exprs.size()]), false);
+        }
+
     }
 
 }
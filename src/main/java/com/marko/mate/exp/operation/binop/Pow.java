@@ -17,16 +17,18 @@
 package com.marko.mate.exp.operation.binop;
 
 import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.compile.CompiledExpression;
 import com.marko.mate.exp.operation.Operation;
 import com.marko.mate.exp.operation.unop.Ln;
-import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.symbol.Bindings;
 import com.marko.mate.exp.symbol.Variable;
+import com.marko.mate.exp.vectorial.DDNumber;
+import com.marko.mate.exp.vectorial.DNumber;
 import com.marko.mate.exp.vectorial.RNumber;
 import com.marko.mate.exp.vectorial.Number;
 import com.marko.mate.exp.vectorial.Space;
 import java.math.BigDecimal;
 import java.util.Map;
-import java.util.Objects;
 
 /**
  *
@@ -38,24 +40,47 @@ public class Pow extends BinaryOperation {
      * BigDecimal used in the simplify method to decide the maximum value to
      * simplify in case they are numerical expressions 
      */
-    private final BigDecimal MAX_VALUE_SIMPLIFY = new BigDecimal("10");
+    private static final BigDecimal MAX_VALUE_SIMPLIFY = new BigDecimal("10");
 
     public Pow(Expression base, Expression exponent) {
         super(new Expression[]{base, exponent});
     }
 
+    private Pow(Expression base, Expression exponent, boolean simplify) {
+        super(new Expression[]{base, exponent}, simplify);
+    }
+
+    @Override
+    public Pow withExpressions(Expression... exprs) {
+        return new Pow(exprs[0], exprs[1], false);
+    }
+
+    public Expression getBase() {
+        return exprs[0];
+    }
+
+    public Expression getExponent() {
+        return exprs[1];
+    }
+
     /**
      * Evaluates this pow operation.
-     * @param point
+     * @param values the evaluated base and exponent
      * @return {@link Space} if all the symbols are evaluated,
      * {@link Expression} otherwise.
      */
     @Override
-    public Expression evaluate(Map<Symbol, Space> point) {
-        return (exprs.get(0).evaluate(point)).pow(
-                (exprs.get(1).evaluate(point)).simplify());
+    public Expression apply(Expression... values) {
+        return values[0].pow(values[1].simplify());
     }
     
+    @Override
+    public CompiledExpression compile(Bindings bindings) {
+        CompiledExpression base = exprs[0].compile(bindings),
+                exponent = exprs[1].compile(bindings);
+        return point -> Math.pow(base.evaluate(point), exponent.evaluate(point));
+    }
+
     /**
      * <p>
      * Derivates a pow operation in an analitical way. When the exponent has
@@ -65,22 +90,22 @@ public class Pow extends BinaryOperation {
      * @return {@link Expression}
      */
     @Override
-    public Expression derivate(Variable var) {
-        if (exprs.get(1) instanceof Operation) {
-            if (((Operation) exprs.get(1)).contains(var)) {
-                return derivateWithVar(var);
+    protected Expression derivateOperation(Variable var, Map<Expression, Expression> derivatives) {
+        if (exprs[1] instanceof Operation) {
+            if (((Operation) exprs[1]).contains(var)) {
+                return derivateWithVar(var, derivatives);
             }
         }
         return new Multiplication(
-                exprs.get(1),
+                exprs[1],
                 new Pow(
-                        exprs.get(0),
+                        exprs[0],
                         new Sum(
-                                exprs.get(1),
-                                Number.parseNumber("-1")
+                                exprs[1],
+                                Number.valueOf(-1)
                         ).simplify()
                 ).simplify(),
-                exprs.get(0).derivate(var)
+                exprs[0].derivate(var, derivatives)
         ).simplify();
     }
 
@@ -90,17 +115,18 @@ public class Pow extends BinaryOperation {
      * param var in the exponent
      *
      * @param var
+     * @param derivatives
      * @return
      */
-    private Expression derivateWithVar(Variable var) {
-        Multiplication mult = new Multiplication();
-        mult.addExp(this);
+    private Expression derivateWithVar(Variable var, Map<Expression, Expression> derivatives) {
+        Multiplication.Builder mult = new Multiplication.Builder();
+        mult.add(this);
 
-        Sum sum = new Sum();
-        sum.addExp(new Division(exprs.get(1), var));
-        sum.addExp(
+        Sum.Builder sum = new Sum.Builder();
+        sum.add(new Division(exprs[1], var));
+        sum.add(
                 new Multiplication(
-                        exprs.get(1).derivate(var),
+                        exprs[1].derivate(var, derivatives),
                         new Ln(var)
                 )
         );
@@ -113,42 +139,13 @@ public class Pow extends BinaryOperation {
      */
     @Override
     public boolean isZero() {
-        return exprs.get(0).isZero();
+        return exprs[0].isZero();
     }
 
     @Override
     public String toString() {
-        return "(" + exprs.get(0).toString()
-                + ")^(" + exprs.get(1).toString() + ")";
-    }
-
-    /**
-     * <p>
-     * Evalutes both pow operations and compare the result. If the result is
-     * different then, it compares the base and the exponent separately.
-     * 
-     * @param obj
-     * @return true if equals, false otherwise.
-     */
-    @Override
-    public boolean equals(Object obj) {
-        if (obj instanceof Pow) {
-            Pow pow = (Pow) obj;
-            if (pow.evaluate(null).equals(evaluate(null))) {
-                return true;
-            }
-
-            return exprs.get(0).equals(pow.exprs.get(0))
-                    && exprs.get(1).equals(exprs.get(1));
-        }
-        return false;
-    }
-
-    @Override
-    public int hashCode() {
-        int hash = 7;
-        hash = 31 * hash + Objects.hashCode(exprs.get(1));
-        return hash;
+        return "(" + exprs[0].toString()
+                + ")^(" + exprs[1].toString() + ")";
     }
 
     /**
@@ -158,13 +155,19 @@ public class Pow extends BinaryOperation {
      * @return {@link Expression} 
      */
     @Override
-    public Expression simplify() {
-        Expression base = exprs.get(0).simplify(),
-                exponent = exprs.get(1).simplify();
+    protected Expression simplifyOperation() {
+        Expression base = exprs[0].simplify(),
+                exponent = exprs[1].simplify();
 
         if (base instanceof Number && exponent instanceof Number) {
-            if (((Number) base).pow((Number) exponent).value().abs().compareTo(MAX_VALUE_SIMPLIFY) == -1) {
-                return new RNumber(((Number) base).pow((Number) exponent).value().doubleValue());
+            Number power = ((Number) base).pow((Number) exponent);
+            // the doubles are never left as a power
+            if (power instanceof DNumber || power instanceof DDNumber) {
+                return power;
+            }
+            if (power.value().abs().compareTo(MAX_VALUE_SIMPLIFY) == -1) {
+                // as it is, so a fraction stays exact
+                return power;
             }
         }
 
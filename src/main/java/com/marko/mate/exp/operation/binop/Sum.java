@@ -17,17 +17,16 @@
 package com.marko.mate.exp.operation.binop;
 
 import com.marko.mate.exp.Expression;
-import com.marko.mate.exp.operation.Operation;
-import com.marko.mate.exp.symbol.Constant;
-import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.compile.CompiledExpression;
+import com.marko.mate.exp.symbol.Bindings;
 import com.marko.mate.exp.symbol.Variable;
 import com.marko.mate.exp.vectorial.RNumber;
 import com.marko.mate.exp.vectorial.Number;
-import com.marko.mate.exp.vectorial.Space;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.stream.Stream;
 
 /**
  *
@@ -39,52 +38,68 @@ public class Sum extends BinaryOperation {
         super(expressions);
     }
 
+    private Sum(Expression[] expressions, boolean simplify) {
+        super(expressions, simplify);
+    }
+
     public Sum() {
         super();
     }
 
     @Override
-    public Expression evaluate(Map<Symbol, Space> point) {
+    public Sum withExpressions(Expression... exprs) {
+        return new Sum(exprs, false);
+    }
+
+    @Override
+    public Expression apply(Expression... values) {
 
         Expression space = RNumber.ZERO;
 
-        for (var exp : exprs) {
-            space = space.add(exp.evaluate(point));
+        for (var value : values) {
+            space = space.add(value);
         }
 
         return space.simplify();
     }
 
     @Override
-    public Expression derivate(Variable var) {
+    public CompiledExpression compile(Bindings bindings) {
+        CompiledExpression[] terms = compileExpressions(bindings);
 
-        if (exprs.isEmpty()) {
-            return RNumber.ZERO;
-        }
-        if (exprs.size() == 1) {
-            return exprs.get(0).derivate(var);
+        if (terms.length == 0) {
+            return point -> 0;
         }
-        Expression[] exp = new Expression[exprs.size()];
-        int index = 0;
-        for (var expression : exprs) {
-            exp[index++] = expression.derivate(var);
-        }
-        return new Sum(exp).simplify();
-    }
 
-    @Override
-    public boolean equals(Object obj) {
-        if (obj instanceof Sum) {
-            return super.equals(obj);
+        if (terms.length == 2) {
+            CompiledExpression a = terms[0],
+                    b = terms[1];
+            return point -> a.evaluate(point) + b.evaluate(point);
         }
-        return false;
+
+        return point -> {
+            double sum = terms[0].evaluate(point);
+            for (int i = 1; i < terms.length; i++) {
+                sum += terms[i].evaluate(point);
+            }
+            return sum;
+        };
     }
 
     @Override
-    public int hashCode() {
-        int hash = 7;
-        hash = 61 * hash + Objects.hashCode(exprs);
-        return hash;
+    protected Expression derivateOperation(Variable var, Map<Expression, Expression> derivatives) {
+
+        if (exprs.length == 0) {
+            return RNumber.ZERO;
+        }
+        if (exprs.length == 1) {
+            return exprs[0].derivate(var, derivatives);
+        }
+        Expression[] exp = new Expression[exprs.length];
+        for (int i = 0; i < exprs.length; i++) {
+            exp[i] = exprs[i].derivate(var, derivatives);
+        }
+        return new Sum(exp).simplify();
     }
 
     @Override
@@ -96,70 +111,137 @@ public class Sum extends BinaryOperation {
         return false;
     }
 
+    /**
+     * <p>
+     * Collects the like terms of this sum in linear time, mapping every
+     * distinct term to its coefficient, so {@code 2 + x + 3*x + 1} becomes
+     * {@code 3 + 4*x}. The number, if any, is the first term, and the other
+     * terms keep the order in which they first appear.
+     *
+     * @return {@link Expression}
+     */
     @Override
-    public Expression simplify() {
-
-        for (var exp : exprs) {
-            if (exp instanceof Sum) {
-                Sum expSum = (Sum) exp;
-                exprs.remove(exp);
-                exprs.addAll(expSum.exprs);
-                return simplify();
-            }
+    protected Expression simplifyOperation() {
+
+        Terms terms = new Terms();
+        terms.collect(exprs);
+
+        LinkedList<Expression> list = new LinkedList<>();
+        if (terms.number != null && !terms.number.isZero()) {
+            list.add(terms.number);
         }
+        terms.terms.forEach((exp, term) -> {
+            if (term.original != null) {
+                list.add(term.original);
+            } else if (term.coefficient.compareTo(RNumber.ONE) == 0) {
+                list.add(exp);
+            } else if (!term.coefficient.isZero()) {
+                list.add(new Multiplication(term.coefficient, exp).simplify());
+            }
+        });
 
-        if (exprs.isEmpty()) {
-            return RNumber.ZERO;
+        if (list.isEmpty()) {
+            return terms.number == null ? RNumber.ZERO : terms.number;
         }
-        if (exprs.size() == 1) {
-            return exprs.get(0).simplify();
+        if (list.size() == 1) {
+            return list.getFirst();
         }
-        Number n = RNumber.ZERO;
-        if (exprs.stream().allMatch(e -> e instanceof Number)) {
+        return new Sum(list.toArray(new Expression[list.size()]), false);
+    }
+
+    /**
+     * The like terms of a sum, by the term without its numeric coefficient.
+     */
+    private static final class Terms {
+
+        private final Map<Expression, Term> terms = new LinkedHashMap<>();
 
+        /**
+         * The sum of all the numbers, or null if there are no numbers.
+         */
+        private Number number;
+
+        /**
+         * Simplifies the expressions and adds them, replacing every nested
+         * {@link Sum} by its own terms.
+         */
+        private void collect(Expression[] exprs) {
             for (var exp : exprs) {
-                n = (Number) n.add((Number) exp);
+                Expression term = exp instanceof Sum ? exp : exp.simplify();
+                if (term instanceof Sum) {
+                    collect(((Sum) term).exprs);
+                } else if (term instanceof Number) {
+                    number = number == null ? (Number) term : (Number) number.add(term);
+                } else {
+                    add(term);
+                }
             }
-            return n;
         }
-        LinkedList<Expression> list = new LinkedList<>();
-        LinkedList<Symbol> symList = new LinkedList<>();
-        for (var exp : exprs) {
-            if (exp instanceof Number) {
-                n = (RNumber) n.add((RNumber) exp);
-            } else if (exp instanceof Constant) {
-                symList.add((Constant) exp);
-            } else if (exp instanceof Operation) {
-                list.add(exp.simplify());
-            }
 
-        }
-
-        Stream<Symbol> streamSym = symList.stream().distinct();
-        streamSym.forEach((var t) -> {
-            int count = 0;
-            count = symList.stream().filter((cons) -> (t.equals(cons))).map((_item) -> 1).reduce(count, Integer::sum);
-            if (count == 1) {
-                list.addFirst((Symbol)t);
+        private void add(Expression exp) {
+            Expression key = exp;
+            Number coefficient = RNumber.ONE;
+            if (exp instanceof Multiplication) {
+                List<Expression> factors = ((Multiplication) exp).getExpressions();
+                if (factors.size() > 1 && factors.get(0) instanceof Number) {
+                    coefficient = (Number) factors.get(0);
+                    key = factors.size() == 2 ? factors.get(1)
+                            : new Multiplication(factors.subList(1, factors.size())
+                                    .toArray(new Expression[factors.size() - 1]), false);
+                }
+            }
+            Term term = terms.get(key);
+            if (term == null) {
+                terms.put(key, new Term(exp, coefficient));
             } else {
-                list.addFirst(new Multiplication((Symbol) t, Number.parseNumber(count + "")));
+                term.coefficient = (Number) term.coefficient.add(coefficient);
+                term.original = null;
             }
-        });
-
-        if (!n.equals(RNumber.ZERO)) {
-            list.addFirst(n);
         }
 
-        Expression[] exps = new Expression[list.size()];
-        for (int i = 0; i < exps.length; i++) {
-            exps[i] = list.get(i);
+    }
+
+    private static final class Term {
+
+        /**
+         * The term as it was found, while it has been found only once.
+         */
+        private Expression original;
+
+        private Number coefficient;
+
+        private Term(Expression original, Number coefficient) {
+            this.original = original;
+            this.coefficient = coefficient;
         }
-        return new Sum(exps);
 
     }
 
-    public void addExp(Expression exp) {
-        exprs.add(exp);
+    @Override
+    protected boolean isCommutative() {
+        return true;
+    }
+
+    /**
+     * <p>
+     * Builds a {@link Sum} adding the terms one by one, because a sum can't be
+     * modified once it is created. The terms are not simplified when the
+     * sum is built, only when the sum itself is simplified, so each of them is
+     * simplified once.
+     */
+    public static final class Builder {
+
+        private final ArrayList<Expression> exprs = new ArrayList<>();
+
+        public Builder add(Expression exp) {
+            exprs.add(exp);
+            return this;
+        }
+
+        public Sum build() {
+            return new Sum(exprs.toArray(new Expression[exprs.size()]), false);
+        }
+
     }
 
 }
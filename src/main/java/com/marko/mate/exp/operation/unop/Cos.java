@@ -17,12 +17,11 @@
 package com.marko.mate.exp.operation.unop;
 
 import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.compile.CompiledExpression;
 import com.marko.mate.exp.operation.binop.Multiplication;
-import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.symbol.Bindings;
 import com.marko.mate.exp.symbol.Variable;
 import com.marko.mate.exp.vectorial.Number;
-import com.marko.mate.exp.vectorial.RNumber;
-import com.marko.mate.exp.vectorial.Space;
 import com.marko.mate.exp.vectorial.VectorialSpace;
 import java.util.Map;
 
@@ -36,43 +35,53 @@ public class Cos extends UnaryOperation {
         super(exp);
     }
 
+    private Cos(Expression exp, boolean simplify) {
+        super(exp, simplify);
+    }
+
+    @Override
+    public Cos withExpressions(Expression... exprs) {
+        return new Cos(exprs[0], false);
+    }
+
     @Override
-    public Expression derivate(Variable var) {
+    protected Expression derivateOperation(Variable var, Map<Expression, Expression> derivatives) {
         return new Multiplication(
-                Number.parseNumber("-1"),
-                new Sin(exprs.get(0)),
-                exprs.get(0).derivate(var)
+                Number.valueOf(-1),
+                Sin.DEGREE,
+                new Sin(exprs[0]),
+                exprs[0].derivate(var, derivatives)
         ).simplify();
     }
 
     @Override
     public boolean isZero() {
-        var exp = exprs.get(0);
+        var exp = exprs[0];
         if (exp instanceof Number) {
-            return Math.cos(Math.toRadians(((Number) exp).value().doubleValue())) == 0;
+            return Math.cos(Math.toRadians(((Number) exp).doubleValue())) == 0;
         }
         return false;
     }
 
     @Override
-    public Expression simplify() {
-        return new Cos(exprs.get(0).simplify());
+    protected Expression simplifyOperation() {
+        return new Cos(exprs[0].simplify());
     }
 
     @Override
-    public Expression evaluate(Map<Symbol, Space> point) {
+    public Expression apply(Expression... values) {
 
-        Expression value = exprs.get(0).evaluate(point);
+        Expression value = values[0];
 
         if (value instanceof VectorialSpace) {
             throw new ArithmeticException("Invalid arguments for Cos operation");
         }
 
         if (value instanceof Number) {
-            return new RNumber(
+            return ((Number) value).withValue(
                     Math.cos(
                             Math.toRadians(
-                                    ((Number) value).value().doubleValue()
+                                    ((Number) value).doubleValue()
                             )
                     )
             );
@@ -81,9 +90,15 @@ public class Cos extends UnaryOperation {
         return new Cos(value);
     }
 
+    @Override
+    public CompiledExpression compile(Bindings bindings) {
+        CompiledExpression exp = exprs[0].compile(bindings);
+        return point -> Math.cos(Math.toRadians(exp.evaluate(point)));
+    }
+
     @Override
     public String toString() {
-        return "Cos[" + exprs.get(0) + "]";
+        return "Cos[" + exprs[0] + "]";
     }
 
 }
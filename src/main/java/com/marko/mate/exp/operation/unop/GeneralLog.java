@@ -21,6 +21,7 @@ import com.marko.mate.exp.operation.binop.Division;
 import com.marko.mate.exp.operation.binop.Multiplication;
 import com.marko.mate.exp.symbol.Variable;
 import com.marko.mate.exp.vectorial.RNumber;
+import java.util.Map;
 
 /**
  *
@@ -35,25 +36,30 @@ public abstract class GeneralLog extends UnaryOperation {
         this.base = base;
     }
 
+    protected GeneralLog(Expression exp, RNumber base, boolean simplify) {
+        super(exp, simplify);
+        this.base = base;
+    }
+
     @Override
-    public Expression derivate(Variable var) {
+    protected Expression derivateOperation(Variable var, Map<Expression, Expression> derivatives) {
         return new Multiplication(
                 new Division(
                         RNumber.ONE,
-                        exprs.get(0)
+                        exprs[0]
                 ),
-                exprs.get(0).derivate(var)
+                exprs[0].derivate(var, derivatives)
         ).simplify();
     }
 
     @Override
     public boolean isZero() {
-        return exprs.get(0).equals(RNumber.ONE);
+        return exprs[0].equals(RNumber.ONE);
     }
 
     @Override
     public String toString() {
-        return "Log" + base + "[" + exprs.get(0) + "]";
+        return "Log" + base + "[" + exprs[0] + "]";
     }
 
 }
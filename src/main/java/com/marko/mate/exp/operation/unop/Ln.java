@@ -17,11 +17,10 @@
 package com.marko.mate.exp.operation.unop;
 
 import com.marko.mate.exp.Expression;
-import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.compile.CompiledExpression;
+import com.marko.mate.exp.symbol.Bindings;
 import com.marko.mate.exp.vectorial.RNumber;
 import com.marko.mate.exp.vectorial.Number;
-import com.marko.mate.exp.vectorial.Space;
-import java.util.Map;
 
 /**
  *
@@ -29,27 +28,47 @@ import java.util.Map;
  */
 public class Ln extends GeneralLog {
 
+    private static final RNumber E = new RNumber(Math.E);
+
     public Ln(Expression exp) {
-        super(exp, new RNumber(Math.E));
+        super(exp, E);
+    }
+
+    private Ln(Expression exp, boolean simplify) {
+        super(exp, E, simplify);
+    }
+
+    @Override
+    public Ln withExpressions(Expression... exprs) {
+        return new Ln(exprs[0], false);
+    }
+
+    @Override
+    public Expression apply(Expression... values) {
+        if (values[0] instanceof Number) {
+            return ((Number) values[0]).withValue(
+                    Math.log(
+                            ((Number) values[0]).doubleValue()
+                    )
+            );
+        }
+        return new Ln(values[0]);
     }
 
     @Override
-    public Space evaluate(Map<Symbol, Space> point) {
-        return new RNumber(
-                Math.log(
-                        (((Number) exprs.get(0).evaluate(point)).value().doubleValue())
-                )
-        );
+    public CompiledExpression compile(Bindings bindings) {
+        CompiledExpression exp = exprs[0].compile(bindings);
+        return point -> Math.log(exp.evaluate(point));
     }
 
     @Override
     public String toString() {
-        return "Ln[" + exprs.get(0) + "]";
+        return "Ln[" + exprs[0] + "]";
     }
 
     @Override
-    public Expression simplify() {
-        return new Ln(exprs.get(0).simplify());
+    protected Expression simplifyOperation() {
+        return new Ln(exprs[0].simplify());
     }
 
 }
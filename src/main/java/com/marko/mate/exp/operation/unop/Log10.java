@@ -17,12 +17,10 @@
 package com.marko.mate.exp.operation.unop;
 
 import com.marko.mate.exp.Expression;
-import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.compile.CompiledExpression;
+import com.marko.mate.exp.symbol.Bindings;
 import com.marko.mate.exp.vectorial.RNumber;
 import com.marko.mate.exp.vectorial.Number;
-import com.marko.mate.exp.vectorial.Space;
-import java.math.BigDecimal;
-import java.util.Map;
 
 /**
  *
@@ -34,23 +32,41 @@ public class Log10 extends GeneralLog {
         super(exp, RNumber.TEN);
     }
 
+    private Log10(Expression exp, boolean simplify) {
+        super(exp, RNumber.TEN, simplify);
+    }
+
+    @Override
+    public Log10 withExpressions(Expression... exprs) {
+        return new Log10(exprs[0], false);
+    }
+
+    @Override
+    public Expression apply(Expression... values) {
+        if (values[0] instanceof Number) {
+            return ((Number) values[0]).withValue(
+                    Math.log10(
+                            ((Number) values[0]).doubleValue()
+                    )
+            );
+        }
+        return new Log10(values[0]);
+    }
+
     @Override
-    public Space evaluate(Map<Symbol, Space> point) {
-        return new RNumber(new BigDecimal(
-                Math.log10(
-                        (((Number) exprs.get(0).evaluate(point)).value().doubleValue())
-                ) + ""
-        ).doubleValue());
+    public CompiledExpression compile(Bindings bindings) {
+        CompiledExpression exp = exprs[0].compile(bindings);
+        return point -> Math.log10(exp.evaluate(point));
     }
 
     @Override
     public String toString() {
-        return "Log10[" + exprs.get(0) + "]";
+        return "Log10[" + exprs[0] + "]";
     }
 
     @Override
-    public Expression simplify() {
-        return new Log10(exprs.get(0).simplify());
+    protected Expression simplifyOperation() {
+        return new Log10(exprs[0].simplify());
     }
 
 }
@@ -17,12 +17,12 @@
 package com.marko.mate.exp.operation.unop;
 
 import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.compile.CompiledExpression;
 import com.marko.mate.exp.operation.binop.Multiplication;
-import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.symbol.Bindings;
 import com.marko.mate.exp.symbol.Variable;
-import com.marko.mate.exp.vectorial.Space;
+import com.marko.mate.exp.vectorial.DNumber;
 import com.marko.mate.exp.vectorial.Number;
-import com.marko.mate.exp.vectorial.RNumber;
 import com.marko.mate.exp.vectorial.VectorialSpace;
 import java.util.Map;
 
@@ -32,46 +32,64 @@ import java.util.Map;
  */
 public class Sin extends UnaryOperation {
 
+    /**
+     * The derivative of the argument in radians with respect to the one in
+     * degrees, a factor of the derivatives of {@link Sin} and {@link Cos}.
+     * It is a double, not rounded to 7 digits, so the symbolic derivatives
+     * agree with the ones of the compiled program.
+     */
+    static final Number DEGREE = new DNumber(Math.PI / 180);
+
     public Sin(Expression exp) {
         super(exp);
     }
 
+    private Sin(Expression exp, boolean simplify) {
+        super(exp, simplify);
+    }
+
     @Override
-    public Expression derivate(Variable var) {
+    public Sin withExpressions(Expression... exprs) {
+        return new Sin(exprs[0], false);
+    }
+
+    @Override
+    protected Expression derivateOperation(Variable var, Map<Expression, Expression> derivatives) {
         return new Multiplication(
-                new Cos(exprs.get(0)),
-                exprs.get(0).derivate(var)
+                DEGREE,
+                new Cos(exprs[0]),
+                exprs[0].derivate(var, derivatives)
         ).simplify();
     }
 
     @Override
     public boolean isZero() {
-        var exp = exprs.get(0);
+        var exp = exprs[0];
         if (exp instanceof Number) {
-            return Math.sin(Math.toRadians(((Number) exp).value().doubleValue())) == 0;
+            return Math.sin(Math.toRadians(((Number) exp).doubleValue())) == 0;
         }
         return false;
     }
 
     @Override
-    public Expression simplify() {
-        return new Sin(exprs.get(0).simplify());
+    protected Expression simplifyOperation() {
+        return new Sin(exprs[0].simplify());
     }
 
     @Override
-    public Expression evaluate(Map<Symbol, Space> point) {
+    public Expression apply(Expression... values) {
 
-        Expression value = exprs.get(0).evaluate(point);
+        Expression value = values[0];
 
         if (value instanceof VectorialSpace) {
             throw new ArithmeticException("Invalid arguments for Cos operation");
         }
 
         if (value instanceof Number) {
-            return new RNumber(
+            return ((Number) value).withValue(
                     Math.sin(
                             Math.toRadians(
-                                    ((Number) value).value().doubleValue()
+                                    ((Number) value).doubleValue()
                             )
                     )
             );
@@ -80,9 +98,15 @@ public class Sin extends UnaryOperation {
         return new Sin(value);
     }
 
+    @Override
+    public CompiledExpression compile(Bindings bindings) {
+        CompiledExpression exp = exprs[0].compile(bindings);
+        return point -> Math.sin(Math.toRadians(exp.evaluate(point)));
+    }
+
     @Override
     public String toString() {
-        return "Sin[" + exprs.get(0) + "]";
+        return "Sin[" + exprs[0] + "]";
     }
 
 }
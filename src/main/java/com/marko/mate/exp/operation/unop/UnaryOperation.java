@@ -28,5 +28,9 @@ public abstract class UnaryOperation extends Operation {
     protected UnaryOperation(Expression exp) {
         super(new Expression[]{exp});
     }
+
+    protected UnaryOperation(Expression exp, boolean simplify) {
+        super(new Expression[]{exp}, simplify);
+    }
         
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.rewrite;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.binop.Division;
+import com.marko.mate.exp.operation.binop.Multiplication;
+import com.marko.mate.exp.operation.binop.Pow;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.operation.unop.Cos;
+import com.marko.mate.exp.operation.unop.Ln;
+import com.marko.mate.exp.operation.unop.Log10;
+import com.marko.mate.exp.operation.unop.Sin;
+
+/**
+ * <p>
+ * The cost of an expression used to choose the cheapest of the equivalent
+ * expressions of an {@link EGraph}. The cost of a node is computed from its
+ * type and the costs of its expressions, and it must be greater than the cost
+ * of each of them.
+ *
+ * @author Marcos
+ */
+@FunctionalInterface
+public interface CostModel {
+
+    /**
+     * The number of nodes of the expression.
+     */
+    public static final CostModel SIZE = (type, costs) -> {
+        double cost = 1;
+        for (var c : costs) {
+            cost += c;
+        }
+        return cost;
+    };
+
+    /**
+     * An estimate of the time to evaluate the expression: numbers and symbols
+     * are almost free, additions and products are cheap, divisions are more
+     * expensive and powers, logarithms and trigonometric functions are the
+     * most expensive.
+     */
+    public static final CostModel EVALUATION = (type, costs) -> {
+        double cost;
+        if (type == Sum.class || type == Multiplication.class) {
+            cost = 1;
+        } else if (type == Division.class) {
+            cost = 4;
+        } else if (type == Pow.class) {
+            cost = 10;
+        } else if (type == Sin.class || type == Cos.class
+                || type == Ln.class || type == Log10.class) {
+            cost = 20;
+        } else {
+            cost = 0.1;
+        }
+        for (var c : costs) {
+            cost += c;
+        }
+        return cost;
+    };
+
+    /**
+     *
+     * @param type the type of the node: the class of the number, the symbol or
+     * the operation
+     * @param costs the costs of the expressions of the operation, empty for a
+     * number or a symbol
+     * @return the cost of the node
+     */
+    public double cost(Class<? extends Expression> type, double... costs);
+
+}
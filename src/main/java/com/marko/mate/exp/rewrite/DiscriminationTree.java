@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.rewrite;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.Operation;
+import com.marko.mate.exp.operation.Polynomial;
+import com.marko.mate.exp.vectorial.Number;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * An index of patterns that finds the patterns that may match an expression
+ * without trying all of them. Every pattern is stored as the sequence of the
+ * operators of its nodes in preorder, with the variables as wildcards, in a
+ * trie shared by all the patterns. Looking up an expression walks the trie
+ * with the operators of the expression, skipping a whole subexpression at
+ * every wildcard, so the patterns that don't match its shape are never
+ * visited.
+ * <p>
+ * The trie doesn't know the names of the variables, so the patterns found
+ * may still fail to match if they repeat a variable.
+ *
+ * @author Marcos
+ * @param <T> the values stored with the patterns
+ */
+final class DiscriminationTree<T> {
+
+    private static final Object WILDCARD = new Object();
+
+    private final Node<T> root = new Node<>();
+
+    /**
+     *
+     * @param pattern
+     * @param value
+     */
+    void put(Pattern pattern, T value) {
+        Node<T> node = root;
+        for (var key : keys(pattern, new ArrayList<>())) {
+            node = node.children.computeIfAbsent(key, k -> new Node<>());
+        }
+        node.values.add(value);
+    }
+
+    /**
+     *
+     * @param exp
+     * @return the values of the patterns that may match the expression
+     */
+    List<T> get(Expression exp) {
+        List<T> values = new ArrayList<>();
+        get(root, new Terms(exp, null), values);
+        return values;
+    }
+
+    private void get(Node<T> node, Terms terms, List<T> values) {
+        if (terms == null) {
+            values.addAll(node.values);
+            return;
+        }
+        Node<T> wildcard = node.children.get(WILDCARD);
+        if (wildcard != null) {
+            get(wildcard, terms.tail, values);
+        }
+        Node<T> next = node.children.get(key(terms.head));
+        if (next != null) {
+            Terms rest = terms.tail;
+            if (isOperation(terms.head)) {
+                List<Expression> exprs = ((Operation) terms.head).getExpressions();
+                for (int i = exprs.size() - 1; i >= 0; i--) {
+                    rest = new Terms(exprs.get(i), rest);
+                }
+            }
+            get(next, rest, values);
+        }
+    }
+
+    private static List<Object> keys(Pattern pattern, List<Object> keys) {
+        if (pattern.isVar()) {
+            keys.add(WILDCARD);
+        } else {
+            keys.add(key(pattern.getExpression(), pattern.getChildren().size()));
+            for (var child : pattern.getChildren()) {
+                keys(child, keys);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @return the operator of the expression: the type and the number of
+     * expressions of an operation, the exact key of a number as in an
+     * {@link EGraph}, or the expression itself
+     */
+    static Object key(Expression exp) {
+        return key(exp, isOperation(exp) ? ((Operation) exp).getExpressions().size() : 0);
+    }
+
+    private static Object key(Expression exp, int arity) {
+        if (isOperation(exp)) {
+            return List.of(exp.getClass(), arity);
+        }
+        if (exp instanceof Number) {
+            return ENode.key((Number) exp);
+        }
+        return exp;
+    }
+
+    /**
+     * @return true if the expression is an operation whose expressions can be
+     * matched, so a {@link Polynomial}, whose terms are not expressions, is
+     * not
+     */
+    static boolean isOperation(Expression exp) {
+        return exp instanceof Operation && !(exp instanceof Polynomial);
+    }
+
+    private static final class Node<T> {
+
+        private final Map<Object, Node<T>> children = new HashMap<>();
+
+        private final List<T> values = new ArrayList<>();
+
+    }
+
+    /**
+     * The expressions still to be looked up, as an immutable list, so
+     * backtracking to a wildcard doesn't copy it.
+     */
+    private static final class Terms {
+
+        private final Expression head;
+
+        private final Terms tail;
+
+        private Terms(Expression head, Terms tail) {
+            this.head = head;
+            this.tail = tail;
+        }
+
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.rewrite;
+
+import com.marko.mate.exp.vectorial.Number;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * A class of equivalent nodes of an {@link EGraph}, with the nodes that use
+ * it as a child.
+ *
+ * @author Marcos
+ */
+final class EClass {
+
+    final List<ENode> nodes = new ArrayList<>();
+
+    /**
+     * The nodes that have this class as a child, with the class of each one.
+     */
+    final List<ENode> parents = new ArrayList<>();
+
+    final List<Integer> parentClasses = new ArrayList<>();
+
+    /**
+     * A number equivalent to this class, or null if it is not known.
+     */
+    Number constant;
+
+}
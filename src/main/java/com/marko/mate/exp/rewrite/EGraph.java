@@ -0,0 +1,465 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.rewrite;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.Operation;
+import com.marko.mate.exp.operation.Polynomial;
+import com.marko.mate.exp.operation.binop.Multiplication;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.vectorial.Number;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * An e-graph: a compact representation of many equivalent expressions. The
+ * nodes are grouped in e-classes of equivalent nodes, and the children of a
+ * node are e-classes, so a graph of a few nodes represents a huge number of
+ * expressions. Every distinct node is stored only once.
+ * <p>
+ * {@link #merge(int, int) Merging} two classes declares them equivalent, and
+ * {@link #rebuild()} must be called after the merges to restore the
+ * invariants of the graph, so many merges are repaired at the same time.
+ * {@link #extract(int, CostModel)} returns the cheapest expression of a
+ * class.
+ * <p>
+ * The sums and the products are binary in the graph, so the associative and
+ * commutative laws can be written as {@link Rewrite rewrites}, and they are
+ * flattened again when extracted. This class is not thread safe.
+ *
+ * @author Marcos
+ */
+public final class EGraph {
+
+    /**
+     * The classes by id, null if the class was merged into another one.
+     */
+    private final List<EClass> classes = new ArrayList<>();
+
+    /**
+     * The union-find of the ids of the classes.
+     */
+    private int[] unions = new int[16];
+
+    /**
+     * The class of every node, with its children canonical.
+     */
+    private final Map<ENode, Integer> memo = new HashMap<>();
+
+    /**
+     * The merged classes whose parents have to be repaired.
+     */
+    private final List<Integer> pending = new ArrayList<>();
+
+    /**
+     * <p>
+     * Adds the expression and all its subexpressions to this graph. The
+     * expression must be made of numbers, symbols and operations.
+     *
+     * @param exp
+     * @return the id of the class of the expression
+     */
+    public int add(Expression exp) {
+        if (exp instanceof Polynomial) {
+            return add(((Polynomial) exp).toExpression());
+        }
+        if (exp instanceof Sum || exp instanceof Multiplication) {
+            List<Expression> exprs = ((Operation) exp).getExpressions();
+            if (exprs.size() < 2) {
+                return add(exprs.isEmpty() ? exp.simplify() : exprs.get(0));
+            }
+            int id = add(exprs.get(0));
+            for (int i = 1; i < exprs.size(); i++) {
+                id = add(new ENode(exp, new int[]{id, add(exprs.get(i))}));
+            }
+            return id;
+        }
+        if (exp instanceof Operation) {
+            List<Expression> exprs = ((Operation) exp).getExpressions();
+            int[] children = new int[exprs.size()];
+            for (int i = 0; i < children.length; i++) {
+                children[i] = add(exprs.get(i));
+            }
+            return add(new ENode(exp, children));
+        }
+        if (exp instanceof Number || exp instanceof Symbol) {
+            return add(new ENode(exp, new int[0]));
+        }
+        throw new IllegalArgumentException(
+                exp.getClass().getSimpleName() + " cannot be added to an e-graph");
+    }
+
+    int add(ENode node) {
+        node = canonical(node);
+        Integer existing = memo.get(node);
+        if (existing != null) {
+            return find(existing);
+        }
+        int id = classes.size();
+        if (id == unions.length) {
+            unions = Arrays.copyOf(unions, 2 * id);
+        }
+        unions[id] = id;
+        EClass eclass = new EClass();
+        eclass.nodes.add(node);
+        if (node.expression instanceof Number) {
+            eclass.constant = (Number) node.expression;
+        }
+        classes.add(eclass);
+        for (var child : node.children) {
+            classes.get(child).parents.add(node);
+            classes.get(child).parentClasses.add(id);
+        }
+        memo.put(node, id);
+        return id;
+    }
+
+    /**
+     *
+     * @param id
+     * @return the canonical id of the class
+     */
+    public int find(int id) {
+        while (unions[id] != id) {
+            unions[id] = unions[unions[id]];
+            id = unions[id];
+        }
+        return id;
+    }
+
+    /**
+     * <p>
+     * Declares both classes equivalent. {@link #rebuild()} must be called
+     * before matching or extracting.
+     *
+     * @param a
+     * @param b
+     * @return true if the classes were not equivalent
+     */
+    public boolean merge(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a == b) {
+            return false;
+        }
+        EClass ca = classes.get(a), cb = classes.get(b);
+        if (ca.nodes.size() + ca.parents.size() < cb.nodes.size() + cb.parents.size()) {
+            int id = a;
+            a = b;
+            b = id;
+            EClass c = ca;
+            ca = cb;
+            cb = c;
+        }
+        unions[b] = a;
+        ca.nodes.addAll(cb.nodes);
+        ca.parents.addAll(cb.parents);
+        ca.parentClasses.addAll(cb.parentClasses);
+        if (ca.constant == null) {
+            ca.constant = cb.constant;
+        }
+        classes.set(b, null);
+        pending.add(a);
+        return true;
+    }
+
+    /**
+     * <p>
+     * Restores the invariants after the merges: every node is stored once,
+     * with its children canonical, and two equal nodes are in the same class,
+     * which may merge more classes.
+     */
+    public void rebuild() {
+        while (!pending.isEmpty()) {
+            var todo = new LinkedHashSet<Integer>();
+            for (var id : pending) {
+                todo.add(find(id));
+            }
+            pending.clear();
+            for (var id : todo) {
+                repair(find(id));
+            }
+        }
+        for (var eclass : classes) {
+            if (eclass != null) {
+                var nodes = new LinkedHashSet<ENode>();
+                for (var node : eclass.nodes) {
+                    nodes.add(canonical(node));
+                }
+                eclass.nodes.clear();
+                eclass.nodes.addAll(nodes);
+            }
+        }
+    }
+
+    private void repair(int id) {
+        EClass eclass = classes.get(id);
+        List<ENode> parents = new ArrayList<>(eclass.parents);
+        List<Integer> parentClasses = new ArrayList<>(eclass.parentClasses);
+        for (int i = 0; i < parents.size(); i++) {
+            memo.remove(parents.get(i));
+            ENode node = canonical(parents.get(i));
+            memo.put(node, find(parentClasses.get(i)));
+        }
+        Map<ENode, Integer> unique = new HashMap<>();
+        for (int i = 0; i < parents.size(); i++) {
+            ENode node = canonical(parents.get(i));
+            Integer other = unique.get(node);
+            if (other != null) {
+                merge(other, parentClasses.get(i));
+            }
+            unique.put(node, find(parentClasses.get(i)));
+        }
+        eclass.parents.clear();
+        eclass.parentClasses.clear();
+        for (var entry : unique.entrySet()) {
+            eclass.parents.add(entry.getKey());
+            eclass.parentClasses.add(entry.getValue());
+        }
+    }
+
+    private ENode canonical(ENode node) {
+        int[] children = null;
+        for (int i = 0; i < node.children.length; i++) {
+            int id = find(node.children[i]);
+            if (id != node.children[i]) {
+                if (children == null) {
+                    children = node.children.clone();
+                }
+                children[i] = id;
+            }
+        }
+        return children == null ? node : node.withChildren(children);
+    }
+
+    /**
+     *
+     * @return the number of distinct nodes
+     */
+    public int size() {
+        return memo.size();
+    }
+
+    /**
+     *
+     * @return the ids of all the classes
+     */
+    public List<Integer> getClasses() {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < classes.size(); id++) {
+            if (classes.get(id) != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * <p>
+     * Finds all the ways the pattern matches an expression of the class.
+     *
+     * @param pattern
+     * @param id
+     * @param bindings the classes already bound to the variables
+     * @return the bindings of the variables of every match
+     */
+    List<Map<String, Integer>> match(Pattern pattern, int id, Map<String, Integer> bindings) {
+        id = find(id);
+        if (pattern.isVar()) {
+            Integer bound = bindings.get(pattern.getVar());
+            if (bound == null) {
+                Map<String, Integer> extended = new HashMap<>(bindings);
+                extended.put(pattern.getVar(), id);
+                return List.of(extended);
+            }
+            return find(bound) == id ? List.of(bindings) : List.of();
+        }
+        Expression exp = pattern.getExpression();
+        List<Pattern> children = pattern.getChildren();
+        if (!(exp instanceof Operation)) {
+            Object key = ENode.key(exp);
+            for (var node : classes.get(id).nodes) {
+                if (node.isLeaf() && node.op.equals(key)) {
+                    return List.of(bindings);
+                }
+            }
+            return List.of();
+        }
+        List<Map<String, Integer>> matches = new ArrayList<>();
+        for (var node : classes.get(id).nodes) {
+            if (node.op != exp.getClass() || node.children.length != children.size()) {
+                continue;
+            }
+            List<Map<String, Integer>> partial = List.of(bindings);
+            for (int i = 0; i < node.children.length && !partial.isEmpty(); i++) {
+                List<Map<String, Integer>> next = new ArrayList<>();
+                for (var b : partial) {
+                    next.addAll(match(children.get(i), node.children[i], b));
+                }
+                partial = next;
+            }
+            matches.addAll(partial);
+        }
+        return matches;
+    }
+
+    /**
+     * <p>
+     * Adds the expression of the pattern with the variables replaced by
+     * their classes.
+     *
+     * @param pattern
+     * @param bindings
+     * @return the id of the class of the expression
+     */
+    int add(Pattern pattern, Map<String, Integer> bindings) {
+        if (pattern.isVar()) {
+            Integer id = bindings.get(pattern.getVar());
+            if (id == null) {
+                throw new IllegalArgumentException("Unbound pattern variable " + pattern);
+            }
+            return find(id);
+        }
+        List<Pattern> children = pattern.getChildren();
+        int[] ids = new int[children.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = add(children.get(i), bindings);
+        }
+        return add(new ENode(pattern.getExpression(), ids));
+    }
+
+    /**
+     * <p>
+     * Evaluates the operations whose expressions are all equivalent to
+     * numbers, and merges them with the result.
+     *
+     * @return true if some class was merged
+     */
+    boolean foldConstants() {
+        boolean changed = false;
+        for (var id : getClasses()) {
+            EClass eclass = classes.get(id);
+            if (eclass == null || eclass.constant != null) {
+                continue;
+            }
+            for (var node : new ArrayList<>(eclass.nodes)) {
+                if (node.isLeaf()) {
+                    continue;
+                }
+                Expression[] numbers = new Expression[node.children.length];
+                boolean constant = true;
+                for (int i = 0; i < numbers.length && constant; i++) {
+                    numbers[i] = classes.get(find(node.children[i])).constant;
+                    constant = numbers[i] != null;
+                }
+                if (!constant) {
+                    continue;
+                }
+                Expression value;
+                try {
+                    value = ((Operation) node.expression).withExpressions(numbers).simplify();
+                } catch (ArithmeticException e) {
+                    continue;
+                }
+                if (value instanceof Number) {
+                    changed |= merge(id, add(new ENode(value, new int[0])));
+                    break;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * <p>
+     * Returns the expression of the class with the lowest cost. The
+     * equivalent subexpressions are the same instance.
+     *
+     * @param id
+     * @param model
+     * @return {@link Expression}
+     */
+    public Expression extract(int id, CostModel model) {
+        int n = classes.size();
+        double[] costs = new double[n];
+        Arrays.fill(costs, Double.POSITIVE_INFINITY);
+        ENode[] best = new ENode[n];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int c = 0; c < n; c++) {
+                EClass eclass = classes.get(c);
+                if (eclass == null) {
+                    continue;
+                }
+                for (var node : eclass.nodes) {
+                    double cost = cost(node, costs, model);
+                    if (cost < costs[c]) {
+                        costs[c] = cost;
+                        best[c] = node;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return build(find(id), best, new HashMap<>());
+    }
+
+    private double cost(ENode node, double[] costs, CostModel model) {
+        double[] children = new double[node.children.length];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = costs[find(node.children[i])];
+            if (children[i] == Double.POSITIVE_INFINITY) {
+                return Double.POSITIVE_INFINITY;
+            }
+        }
+        return model.cost(node.expression.getClass(), children);
+    }
+
+    private Expression build(int id, ENode[] best, Map<Integer, Expression> built) {
+        Expression exp = built.get(id);
+        if (exp != null) {
+            return exp;
+        }
+        ENode node = best[id];
+        if (node.isLeaf()) {
+            exp = node.expression;
+        } else {
+            Operation operation = (Operation) node.expression;
+            boolean flatten = operation instanceof Sum || operation instanceof Multiplication;
+            List<Expression> exprs = new ArrayList<>();
+            for (var child : node.children) {
+                Expression expression = build(find(child), best, built);
+                if (flatten && expression.getClass() == operation.getClass()) {
+                    exprs.addAll(((Operation) expression).getExpressions());
+                } else {
+                    exprs.add(expression);
+                }
+            }
+            exp = operation.withExpressions(exprs.toArray(new Expression[exprs.size()]));
+        }
+        built.put(id, exp);
+        return exp;
+    }
+
+}
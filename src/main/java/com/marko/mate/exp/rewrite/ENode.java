@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.rewrite;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.Operation;
+import com.marko.mate.exp.vectorial.Number;
+import com.marko.mate.exp.vectorial.QNumber;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * A node of an {@link EGraph}: a number or a symbol without children, or the
+ * type of an operation with the e-classes of its expressions as children. Two
+ * nodes are equal if they have the same operator and the same children.
+ *
+ * @author Marcos
+ */
+final class ENode {
+
+    /**
+     * The kind and the value of a number, the symbol, or the class of an
+     * operation.
+     */
+    final Object op;
+
+    /**
+     * The number or the symbol, or an operation of the type of this node used
+     * to build new operations of that type.
+     */
+    final Expression expression;
+
+    final int[] children;
+
+    private final int hash;
+
+    ENode(Expression expression, int[] children) {
+        this.op = key(expression);
+        this.expression = expression;
+        this.children = children;
+        this.hash = 31 * op.hashCode() + Arrays.hashCode(children);
+    }
+
+    static Object key(Expression exp) {
+        if (exp instanceof Operation) {
+            return exp.getClass();
+        }
+        if (exp instanceof Number) {
+            return key((Number) exp);
+        }
+        return exp;
+    }
+
+    /**
+     * <p>
+     * The numbers are the same node only if they are the same kind of number
+     * with the same value, so one third and {@code 0.3333333} are different
+     * nodes, while 2.0 and 2.00 are the same one. A {@link QNumber} is its own
+     * key, since its value is rounded.
+     *
+     * @param number
+     * @return the key of the number
+     */
+    static Object key(Number number) {
+        if (number instanceof QNumber) {
+            return number;
+        }
+        return List.of(number.getClass(), number.value().stripTrailingZeros());
+    }
+
+    boolean isLeaf() {
+        return !(expression instanceof Operation);
+    }
+
+    /**
+     * @return the same operator over other children
+     */
+    ENode withChildren(int[] children) {
+        return new ENode(expression, children);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof ENode)) {
+            return false;
+        }
+        ENode node = (ENode) obj;
+        return hash == node.hash && op.equals(node.op) && Arrays.equals(children, node.children);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+}
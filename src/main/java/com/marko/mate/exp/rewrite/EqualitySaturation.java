@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.rewrite;
+
+import com.marko.mate.exp.Expression;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Simplifies expressions by equality saturation: the expression is added to
+ * an {@link EGraph}, all the {@link Rewrite rewrites} are applied to every
+ * class again and again, adding every equivalent expression they find,
+ * until no rewrite adds anything new or a limit of nodes, iterations or time
+ * is reached. Then the cheapest expression under the {@link CostModel} is
+ * extracted. Unlike {@link Expression#simplify()}, the result doesn't depend
+ * on the order the identities are applied.
+ * <p>
+ * The operations whose expressions are all numbers are evaluated with
+ * {@link Expression#simplify()}.
+ *
+ * @author Marcos
+ */
+public final class EqualitySaturation {
+
+    /**
+     * Why the saturation stopped.
+     */
+    public enum Stop {
+        /**
+         * No rewrite adds anything new.
+         */
+        SATURATED,
+        ITERATION_LIMIT,
+        NODE_LIMIT,
+        TIME_LIMIT
+    }
+
+    private final List<Rewrite> rewrites;
+
+    private int nodeLimit = 10_000;
+
+    private int iterationLimit = 30;
+
+    private Duration timeLimit = Duration.ofSeconds(1);
+
+    private CostModel costModel = CostModel.EVALUATION;
+
+    /**
+     * <p>
+     * Equality saturation with all the {@link Rewrites}.
+     */
+    public EqualitySaturation() {
+        this(Rewrites.all());
+    }
+
+    /**
+     *
+     * @param rewrites
+     */
+    public EqualitySaturation(List<Rewrite> rewrites) {
+        this.rewrites = new ArrayList<>(rewrites);
+    }
+
+    public int getNodeLimit() {
+        return nodeLimit;
+    }
+
+    /**
+     *
+     * @param nodeLimit the maximum number of nodes of the graph, 10000 by
+     * default
+     */
+    public void setNodeLimit(int nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    public int getIterationLimit() {
+        return iterationLimit;
+    }
+
+    /**
+     *
+     * @param iterationLimit the maximum number of times the rewrites are
+     * applied, 30 by default
+     */
+    public void setIterationLimit(int iterationLimit) {
+        this.iterationLimit = iterationLimit;
+    }
+
+    public Duration getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     *
+     * @param timeLimit the maximum time of the saturation, one second by
+     * default
+     */
+    public void setTimeLimit(Duration timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    public CostModel getCostModel() {
+        return costModel;
+    }
+
+    /**
+     *
+     * @param costModel the cost of the extracted expressions,
+     * {@link CostModel#EVALUATION} by default
+     */
+    public void setCostModel(CostModel costModel) {
+        this.costModel = costModel;
+    }
+
+    /**
+     * <p>
+     * Saturates a new graph with the expression and returns the cheapest
+     * equivalent expression found.
+     *
+     * @param exp
+     * @return {@link Expression}
+     */
+    public Expression simplify(Expression exp) {
+        EGraph graph = new EGraph();
+        int root = graph.add(exp);
+        run(graph);
+        return graph.extract(root, costModel);
+    }
+
+    /**
+     * <p>
+     * Applies the rewrites to the graph until it is saturated or some limit
+     * is reached.
+     *
+     * @param graph
+     * @return why it stopped
+     */
+    public Stop run(EGraph graph) {
+        long deadline = System.nanoTime() + timeLimit.toNanos();
+        graph.rebuild();
+        for (int iteration = 0; iteration < iterationLimit; iteration++) {
+            // all the matches are found before changing the graph
+            List<Rewrite> matched = new ArrayList<>();
+            List<Integer> classes = new ArrayList<>();
+            List<Map<String, Integer>> bindings = new ArrayList<>();
+            for (var rewrite : rewrites) {
+                for (var id : graph.getClasses()) {
+                    for (var b : graph.match(rewrite.getLeft(), id, Map.of())) {
+                        matched.add(rewrite);
+                        classes.add(id);
+                        bindings.add(b);
+                    }
+                }
+                if (System.nanoTime() > deadline) {
+                    return Stop.TIME_LIMIT;
+                }
+            }
+            boolean changed = false;
+            for (int i = 0; i < matched.size(); i++) {
+                int id = graph.add(matched.get(i).getRight(), bindings.get(i));
+                changed |= graph.merge(classes.get(i), id);
+                if (graph.size() > nodeLimit) {
+                    graph.rebuild();
+                    return Stop.NODE_LIMIT;
+                }
+            }
+            graph.rebuild();
+            if (graph.foldConstants()) {
+                changed = true;
+                graph.rebuild();
+            }
+            if (!changed) {
+                return Stop.SATURATED;
+            }
+            if (System.nanoTime() > deadline) {
+                return Stop.TIME_LIMIT;
+            }
+        }
+        return Stop.ITERATION_LIMIT;
+    }
+
+}
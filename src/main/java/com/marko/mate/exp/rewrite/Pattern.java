@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.rewrite;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.Operation;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * A pattern of an expression, made of numbers, symbols, operations and
+ * pattern variables. A variable matches any expression, but all the
+ * occurrences of the same variable must match the same expression, for
+ * example {@code ?a * ?a} matches {@code x * x} but not {@code x * y}.
+ * <p>
+ * The operations of a pattern have exactly the given expressions, in the
+ * same order, and {@link com.marko.mate.exp.operation.binop.Sum} and
+ * {@link com.marko.mate.exp.operation.binop.Multiplication} are binary in an
+ * {@link EGraph}.
+ *
+ * @author Marcos
+ */
+public final class Pattern {
+
+    /**
+     * The name of the variable, or null if this pattern is not a variable.
+     */
+    private final String var;
+
+    /**
+     * The number, the symbol or an operation of the type of this pattern.
+     */
+    private final Expression expression;
+
+    private final Pattern[] children;
+
+    private Pattern(String var, Expression expression, Pattern[] children) {
+        this.var = var;
+        this.expression = expression;
+        this.children = children;
+    }
+
+    /**
+     *
+     * @param name
+     * @return the pattern variable with the name
+     */
+    public static Pattern var(String name) {
+        return new Pattern(name, null, new Pattern[0]);
+    }
+
+    /**
+     *
+     * @param leaf a number or a symbol
+     * @return the pattern that only matches the number or the symbol
+     */
+    public static Pattern of(Expression leaf) {
+        if (leaf instanceof Operation) {
+            throw new IllegalArgumentException("An operation needs the patterns of its expressions");
+        }
+        return new Pattern(null, leaf, new Pattern[0]);
+    }
+
+    /**
+     *
+     * @param type an operation of the type of the pattern, its expressions
+     * are ignored
+     * @param children the patterns of the expressions
+     * @return the pattern that matches the operations of the type whose
+     * expressions match the children
+     */
+    public static Pattern of(Operation type, Pattern... children) {
+        return new Pattern(null, type, children.clone());
+    }
+
+    /**
+     *
+     * @return true if this pattern is a variable
+     */
+    public boolean isVar() {
+        return var != null;
+    }
+
+    /**
+     *
+     * @return the name of the variable, or null if it is not a variable
+     */
+    public String getVar() {
+        return var;
+    }
+
+    /**
+     *
+     * @return the number, the symbol, or an operation of the type of this
+     * pattern, or null if it is a variable
+     */
+    public Expression getExpression() {
+        return expression;
+    }
+
+    /**
+     *
+     * @return the patterns of the expressions of the operation
+     */
+    public List<Pattern> getChildren() {
+        return Collections.unmodifiableList(Arrays.asList(children));
+    }
+
+    @Override
+    public String toString() {
+        if (var != null) {
+            return "?" + var;
+        }
+        if (children.length == 0 && !(expression instanceof Operation)) {
+            return expression.toString();
+        }
+        return expression.getClass().getSimpleName()
+                + Arrays.stream(children).map(Pattern::toString)
+                        .collect(Collectors.joining(", ", "(", ")"));
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.rewrite;
+
+/**
+ * <p>
+ * An identity between two patterns. Applied to an {@link EGraph}, every
+ * expression that matches the left pattern is made equivalent to the right
+ * pattern with the same variables. All the variables of the right pattern
+ * must be in the left pattern.
+ *
+ * @author Marcos
+ */
+public final class Rewrite {
+
+    private final String name;
+
+    private final Pattern left, right;
+
+    /**
+     *
+     * @param name
+     * @param left
+     * @param right
+     */
+    public Rewrite(String name, Pattern left, Pattern right) {
+        this.name = name;
+        this.left = left;
+        this.right = right;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Pattern getLeft() {
+        return left;
+    }
+
+    public Pattern getRight() {
+        return right;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + left + " => " + right;
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.rewrite;
+
+import com.marko.mate.exp.operation.Operation;
+import com.marko.mate.exp.operation.binop.Division;
+import com.marko.mate.exp.operation.binop.Multiplication;
+import com.marko.mate.exp.operation.binop.Pow;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.operation.unop.Cos;
+import com.marko.mate.exp.operation.unop.Ln;
+import com.marko.mate.exp.operation.unop.Log10;
+import com.marko.mate.exp.operation.unop.Sin;
+import com.marko.mate.exp.vectorial.RNumber;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * The algebraic identities of the operations, as {@link Rewrite rewrites}
+ * for an {@link EGraph}. The identities of the logarithms, the powers and the
+ * divisions are applied as in the real numbers, without checking that the
+ * operations are defined, so they should not be used to simplify expressions
+ * evaluated out of their domain.
+ *
+ * @author Marcos
+ */
+public final class Rewrites {
+
+    /**
+     * Operations used only as the type of the patterns.
+     */
+    private static final Operation SUM = new Sum(),
+            MULTIPLICATION = new Multiplication(),
+            DIVISION = new Division(RNumber.ONE, RNumber.ONE),
+            POW = new Pow(RNumber.ONE, RNumber.ONE),
+            SIN = new Sin(RNumber.ZERO),
+            COS = new Cos(RNumber.ZERO),
+            LN = new Ln(RNumber.ONE),
+            LOG10 = new Log10(RNumber.ONE);
+
+    private static final Pattern A = Pattern.var("a"),
+            B = Pattern.var("b"),
+            C = Pattern.var("c"),
+            ZERO = Pattern.of(RNumber.ZERO),
+            ONE = Pattern.of(RNumber.ONE),
+            TWO = Pattern.of(new RNumber(2)),
+            MINUS_ONE = Pattern.of(new RNumber(-1));
+
+    private Rewrites() {
+    }
+
+    /**
+     *
+     * @return the identities of the sums, the products and the divisions
+     */
+    public static List<Rewrite> algebra() {
+        List<Rewrite> rewrites = new ArrayList<>();
+        rewrites.add(new Rewrite("commute-sum", sum(A, B), sum(B, A)));
+        rewrites.add(new Rewrite("commute-multiplication", mul(A, B), mul(B, A)));
+        rewrites.add(new Rewrite("associate-sum", sum(sum(A, B), C), sum(A, sum(B, C))));
+        rewrites.add(new Rewrite("associate-sum-left", sum(A, sum(B, C)), sum(sum(A, B), C)));
+        rewrites.add(new Rewrite("associate-multiplication", mul(mul(A, B), C), mul(A, mul(B, C))));
+        rewrites.add(new Rewrite("associate-multiplication-left", mul(A, mul(B, C)), mul(mul(A, B), C)));
+        rewrites.add(new Rewrite("sum-zero", sum(A, ZERO), A));
+        rewrites.add(new Rewrite("multiplication-one", mul(A, ONE), A));
+        rewrites.add(new Rewrite("multiplication-zero", mul(A, ZERO), ZERO));
+        rewrites.add(new Rewrite("cancel-sum", sum(A, mul(MINUS_ONE, A)), ZERO));
+        rewrites.add(new Rewrite("double", sum(A, A), mul(TWO, A)));
+        rewrites.add(new Rewrite("distribute", mul(A, sum(B, C)), sum(mul(A, B), mul(A, C))));
+        rewrites.add(new Rewrite("factor", sum(mul(A, B), mul(A, C)), mul(A, sum(B, C))));
+        rewrites.add(new Rewrite("factor-one", sum(mul(A, B), A), mul(A, sum(B, ONE))));
+        rewrites.add(new Rewrite("division-one", div(A, ONE), A));
+        rewrites.add(new Rewrite("division-self", div(A, A), ONE));
+        rewrites.add(new Rewrite("division-inverse", div(A, B), mul(A, pow(B, MINUS_ONE))));
+        rewrites.add(new Rewrite("inverse-division", mul(A, pow(B, MINUS_ONE)), div(A, B)));
+        return rewrites;
+    }
+
+    /**
+     *
+     * @return the identities of the powers with the same base
+     */
+    public static List<Rewrite> powers() {
+        List<Rewrite> rewrites = new ArrayList<>();
+        rewrites.add(new Rewrite("pow-one", pow(A, ONE), A));
+        rewrites.add(new Rewrite("pow-zero", pow(A, ZERO), ONE));
+        rewrites.add(new Rewrite("square", mul(A, A), pow(A, TWO)));
+        rewrites.add(new Rewrite("multiply-powers", mul(pow(A, B), pow(A, C)), pow(A, sum(B, C))));
+        rewrites.add(new Rewrite("multiply-power", mul(pow(A, B), A), pow(A, sum(B, ONE))));
+        rewrites.add(new Rewrite("divide-powers", div(pow(A, B), pow(A, C)), pow(A, sum(B, mul(MINUS_ONE, C)))));
+        rewrites.add(new Rewrite("pow-product", pow(mul(A, B), C), mul(pow(A, C), pow(B, C))));
+        return rewrites;
+    }
+
+    /**
+     *
+     * @return the identities of the natural and the decimal logarithms
+     */
+    public static List<Rewrite> logarithms() {
+        List<Rewrite> rewrites = new ArrayList<>();
+        rewrites.add(new Rewrite("ln-one", ln(ONE), ZERO));
+        rewrites.add(new Rewrite("log10-one", log10(ONE), ZERO));
+        rewrites.add(new Rewrite("log10-ten", log10(Pattern.of(RNumber.TEN)), ONE));
+        rewrites.add(new Rewrite("ln-product", ln(mul(A, B)), sum(ln(A), ln(B))));
+        rewrites.add(new Rewrite("ln-sum", sum(ln(A), ln(B)), ln(mul(A, B))));
+        rewrites.add(new Rewrite("log10-product", log10(mul(A, B)), sum(log10(A), log10(B))));
+        rewrites.add(new Rewrite("log10-sum", sum(log10(A), log10(B)), log10(mul(A, B))));
+        rewrites.add(new Rewrite("ln-pow", ln(pow(A, B)), mul(B, ln(A))));
+        rewrites.add(new Rewrite("log10-pow", log10(pow(A, B)), mul(B, log10(A))));
+        rewrites.add(new Rewrite("ln-division", ln(div(A, B)), sum(ln(A), mul(MINUS_ONE, ln(B)))));
+        rewrites.add(new Rewrite("log10-division", log10(div(A, B)), sum(log10(A), mul(MINUS_ONE, log10(B)))));
+        return rewrites;
+    }
+
+    /**
+     *
+     * @return the identities of {@link Sin} and {@link Cos}, which hold in
+     * degrees as well
+     */
+    public static List<Rewrite> trigonometry() {
+        List<Rewrite> rewrites = new ArrayList<>();
+        rewrites.add(new Rewrite("pythagoras", sum(pow(sin(A), TWO), pow(cos(A), TWO)), ONE));
+        rewrites.add(new Rewrite("sin-zero", sin(ZERO), ZERO));
+        rewrites.add(new Rewrite("cos-zero", cos(ZERO), ONE));
+        rewrites.add(new Rewrite("sin-odd", sin(mul(MINUS_ONE, A)), mul(MINUS_ONE, sin(A))));
+        rewrites.add(new Rewrite("cos-even", cos(mul(MINUS_ONE, A)), cos(A)));
+        rewrites.add(new Rewrite("double-sin", mul(TWO, mul(sin(A), cos(A))), sin(mul(TWO, A))));
+        rewrites.add(new Rewrite("sin-double", sin(mul(TWO, A)), mul(TWO, mul(sin(A), cos(A)))));
+        return rewrites;
+    }
+
+    /**
+     *
+     * @return all the identities of this class
+     */
+    public static List<Rewrite> all() {
+        List<Rewrite> rewrites = new ArrayList<>();
+        rewrites.addAll(algebra());
+        rewrites.addAll(powers());
+        rewrites.addAll(logarithms());
+        rewrites.addAll(trigonometry());
+        return rewrites;
+    }
+
+    private static Pattern sum(Pattern a, Pattern b) {
+        return Pattern.of(SUM, a, b);
+    }
+
+    private static Pattern mul(Pattern a, Pattern b) {
+        return Pattern.of(MULTIPLICATION, a, b);
+    }
+
+    private static Pattern div(Pattern a, Pattern b) {
+        return Pattern.of(DIVISION, a, b);
+    }
+
+    private static Pattern pow(Pattern a, Pattern b) {
+        return Pattern.of(POW, a, b);
+    }
+
+    private static Pattern sin(Pattern a) {
+        return Pattern.of(SIN, a);
+    }
+
+    private static Pattern cos(Pattern a) {
+        return Pattern.of(COS, a);
+    }
+
+    private static Pattern ln(Pattern a) {
+        return Pattern.of(LN, a);
+    }
+
+    private static Pattern log10(Pattern a) {
+        return Pattern.of(LOG10, a);
+    }
+
+}
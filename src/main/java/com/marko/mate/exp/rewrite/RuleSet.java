@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.rewrite;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.Operation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A set of rules to simplify expressions as trees, without an
+ * {@link EGraph}. Every rule is a {@link Rewrite} from a pattern to its
+ * replacement, for example {@code Ln(Pow(e, ?x)) => ?x}, so new
+ * simplifications don't need to change the operations.
+ * <p>
+ * The rules are applied bottom up: the expressions of an operation are
+ * rewritten first, and then the first rule, in the order they were added,
+ * whose pattern matches the operation replaces it. The rules are indexed in
+ * a discrimination tree, so only the rules that may match the shape of an
+ * expression are tried. The patterns match the operations exactly, with the
+ * same number of expressions in the same order.
+ * <p>
+ * A set of rules that never stops rewriting, such as a commutative law, stops
+ * after a limit of rewrites. A rule set can be shared by many threads once
+ * all its rules are added.
+ *
+ * @author Marcos
+ */
+public final class RuleSet {
+
+    private final List<Rewrite> rules = new ArrayList<>();
+
+    private final DiscriminationTree<Integer> index = new DiscriminationTree<>();
+
+    private int rewriteLimit = 10_000;
+
+    public RuleSet() {
+    }
+
+    /**
+     *
+     * @param rules
+     */
+    public RuleSet(List<Rewrite> rules) {
+        for (var rule : rules) {
+            add(rule);
+        }
+    }
+
+    /**
+     *
+     * @param rule
+     * @return this rule set
+     */
+    public RuleSet add(Rewrite rule) {
+        index.put(rule.getLeft(), rules.size());
+        rules.add(rule);
+        return this;
+    }
+
+    /**
+     *
+     * @param name
+     * @param left
+     * @param right
+     * @return this rule set
+     */
+    public RuleSet add(String name, Pattern left, Pattern right) {
+        return add(new Rewrite(name, left, right));
+    }
+
+    /**
+     *
+     * @return the rules in the order they were added
+     */
+    public List<Rewrite> getRules() {
+        return Collections.unmodifiableList(rules);
+    }
+
+    public int getRewriteLimit() {
+        return rewriteLimit;
+    }
+
+    /**
+     *
+     * @param rewriteLimit the maximum number of rewrites of a call to
+     * {@link #rewrite(Expression)}, 10000 by default
+     */
+    public void setRewriteLimit(int rewriteLimit) {
+        this.rewriteLimit = rewriteLimit;
+    }
+
+    /**
+     * <p>
+     * Applies the rules to all the subexpressions of the expression, and
+     * again to every replacement, until no rule matches or the limit of
+     * rewrites is reached. The equal subexpressions that are the same instance
+     * are rewritten only once.
+     *
+     * @param exp
+     * @return {@link Expression}, the same instance if no rule matched
+     */
+    public Expression rewrite(Expression exp) {
+        return rewrite(exp, new int[]{rewriteLimit}, new IdentityHashMap<>());
+    }
+
+    /**
+     * <p>
+     * Simplifies the expression, and then applies the rules and simplifies
+     * the result again while the rules change it.
+     *
+     * @param exp
+     * @return {@link Expression}
+     */
+    public Expression simplify(Expression exp) {
+        Expression result = exp.simplify();
+        int[] remaining = {rewriteLimit};
+        // every round rewrites something, so the limit ends the loop
+        while (true) {
+            Expression rewritten = rewrite(result, remaining, new IdentityHashMap<>());
+            if (rewritten == result) {
+                break;
+            }
+            rewritten = rewritten.simplify();
+            if (rewritten.equals(result)) {
+                break;
+            }
+            result = rewritten;
+        }
+        return result;
+    }
+
+    private Expression rewrite(Expression exp, int[] remaining, Map<Expression, Expression> done) {
+        Expression result = done.get(exp);
+        if (result != null) {
+            return result;
+        }
+        result = rewriteExpressions(exp, remaining, done);
+        // the replacements are rewritten in a loop, so a rule that never
+        // stops doesn't overflow the stack before the limit is reached
+        while (remaining[0] > 0) {
+            Expression replacement = applyFirst(result);
+            if (replacement == null) {
+                break;
+            }
+            remaining[0]--;
+            result = rewriteExpressions(replacement, remaining, done);
+        }
+        done.put(exp, result);
+        done.put(result, result);
+        return result;
+    }
+
+    private Expression rewriteExpressions(Expression exp, int[] remaining, Map<Expression, Expression> done) {
+        if (!DiscriminationTree.isOperation(exp)) {
+            return exp;
+        }
+        Operation operation = (Operation) exp;
+        List<Expression> exprs = operation.getExpressions();
+        Expression[] rewritten = new Expression[exprs.size()];
+        boolean changed = false;
+        for (int i = 0; i < rewritten.length; i++) {
+            rewritten[i] = rewrite(exprs.get(i), remaining, done);
+            changed |= rewritten[i] != exprs.get(i);
+        }
+        return changed ? operation.withExpressions(rewritten) : exp;
+    }
+
+    /**
+     * @return the replacement of the first rule that matches the expression,
+     * or null if none matches
+     */
+    private Expression applyFirst(Expression exp) {
+        List<Integer> candidates = index.get(exp);
+        Collections.sort(candidates);
+        for (var candidate : candidates) {
+            Rewrite rule = rules.get(candidate);
+            Map<String, Expression> bindings = new HashMap<>();
+            if (match(rule.getLeft(), exp, bindings)) {
+                return build(rule.getRight(), bindings);
+            }
+        }
+        return null;
+    }
+
+    private static boolean match(Pattern pattern, Expression exp, Map<String, Expression> bindings) {
+        if (pattern.isVar()) {
+            Expression bound = bindings.putIfAbsent(pattern.getVar(), exp);
+            return bound == null || bound.equals(exp);
+        }
+        Expression type = pattern.getExpression();
+        if (!(type instanceof Operation)) {
+            return DiscriminationTree.key(exp).equals(DiscriminationTree.key(type));
+        }
+        if (!DiscriminationTree.isOperation(exp) || exp.getClass() != type.getClass()) {
+            return false;
+        }
+        List<Pattern> children = pattern.getChildren();
+        List<Expression> exprs = ((Operation) exp).getExpressions();
+        if (exprs.size() != children.size()) {
+            return false;
+        }
+        for (int i = 0; i < exprs.size(); i++) {
+            if (!match(children.get(i), exprs.get(i), bindings)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Expression build(Pattern pattern, Map<String, Expression> bindings) {
+        if (pattern.isVar()) {
+            Expression exp = bindings.get(pattern.getVar());
+            if (exp == null) {
+                throw new IllegalArgumentException("Unbound pattern variable " + pattern);
+            }
+            return exp;
+        }
+        List<Pattern> children = pattern.getChildren();
+        if (children.isEmpty() && !(pattern.getExpression() instanceof Operation)) {
+            return pattern.getExpression();
+        }
+        Expression[] exprs = new Expression[children.size()];
+        for (int i = 0; i < exprs.length; i++) {
+            exprs[i] = build(children.get(i), bindings);
+        }
+        return ((Operation) pattern.getExpression()).withExpressions(exprs);
+    }
+
+}
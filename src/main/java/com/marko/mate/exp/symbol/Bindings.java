@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.symbol;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.PreparedExpression;
+import com.marko.mate.exp.operation.Operation;
+import com.marko.mate.exp.vectorial.Number;
+import com.marko.mate.exp.vectorial.Space;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Assigns an integer slot to each {@link Symbol}, for example:
+ * <pre>{@code
+ * Bindings bindings = new Bindings(x, y);
+ * PreparedExpression f = exp.prepare(bindings);
+ * f.evaluate(new RNumber(1), new RNumber(2));
+ * }</pre> evaluates {@code exp} with {@code x = 1} and {@code y = 2}.
+ * <p>
+ * The slots are resolved once, when an expression is prepared or compiled, so
+ * the evaluation reads the values from a flat array instead of hashing the
+ * symbols on every visit. Bindings are immutable.
+ *
+ * @author Marcos
+ */
+public final class Bindings {
+
+    private final Symbol[] symbols;
+
+    /**
+     * The slot of each symbol, indexed by the ordinal of the symbol.
+     */
+    private final int[] slots;
+
+    /**
+     * <p>
+     * Binds every symbol to its index.
+     *
+     * @param symbols the symbols to be bound
+     */
+    public Bindings(Symbol... symbols) {
+        this.symbols = symbols.clone();
+        int size = 0;
+        for (var symbol : symbols) {
+            size = Math.max(size, symbol.ordinal() + 1);
+        }
+        this.slots = new int[size];
+        Arrays.fill(slots, -1);
+        for (int i = 0; i < symbols.length; i++) {
+            if (slots[symbols[i].ordinal()] != -1) {
+                throw new IllegalArgumentException("Symbol " + symbols[i] + " is bound twice");
+            }
+            slots[symbols[i].ordinal()] = i;
+        }
+    }
+
+    /**
+     *
+     * @return the number of slots
+     */
+    public int size() {
+        return symbols.length;
+    }
+
+    /**
+     *
+     * @param slot
+     * @return the symbol bound to the slot
+     */
+    public Symbol getSymbol(int slot) {
+        return symbols[slot];
+    }
+
+    /**
+     *
+     * @param symbol
+     * @return the slot of the symbol, or -1 if it is not bound
+     */
+    public int slotOf(Symbol symbol) {
+        int ordinal = symbol.ordinal();
+        return ordinal < slots.length ? slots[ordinal] : -1;
+    }
+
+    /**
+     * <p>
+     * Builds the map equivalent to the values of the slots, leaving out the
+     * null ones.
+     *
+     * @param values the value of each slot
+     * @return the map from each bound symbol to its value
+     */
+    public Map<Symbol, Space> toMap(Space... values) {
+        checkValues(values);
+        Map<Symbol, Space> point = new HashMap<>();
+        for (int i = 0; i < symbols.length; i++) {
+            if (values[i] != null) {
+                point.put(symbols[i], values[i]);
+            }
+        }
+        return point;
+    }
+
+    /**
+     * <p>
+     * Prepares the expression to be evaluated with the values of these
+     * bindings. The expression is walked only once.
+     *
+     * @param exp the expression to be prepared
+     * @return {@link PreparedExpression}
+     */
+    public PreparedExpression prepare(Expression exp) {
+        PreparedExpression prepared = node(exp);
+        return values -> {
+            checkValues(values);
+            return prepared.evaluate(values);
+        };
+    }
+
+    private PreparedExpression node(Expression exp) {
+
+        if (exp instanceof Symbol) {
+            int slot = slotOf((Symbol) exp);
+            if (slot < 0) {
+                return values -> exp;
+            }
+            return values -> values[slot] == null ? exp : values[slot];
+        }
+
+        if (exp instanceof Operation) {
+            Operation operation = (Operation) exp;
+            List<Expression> exprs = operation.getExpressions();
+            PreparedExpression[] children = new PreparedExpression[exprs.size()];
+            int i = 0;
+            for (var child : exprs) {
+                children[i++] = node(child);
+            }
+            return values -> {
+                Expression[] evaluated = new Expression[children.length];
+                for (int j = 0; j < children.length; j++) {
+                    evaluated[j] = children[j].evaluate(values);
+                }
+                return operation.apply(evaluated);
+            };
+        }
+
+        if (exp instanceof Number) {
+            Expression constant = exp.evaluate(Collections.emptyMap());
+            return values -> constant;
+        }
+
+        return values -> exp.evaluate(toMap(values));
+    }
+
+    private void checkValues(Space[] values) {
+        if (values.length != symbols.length) {
+            throw new IllegalArgumentException(
+                    "Expected " + symbols.length + " values but got " + values.length);
+        }
+    }
+
+}
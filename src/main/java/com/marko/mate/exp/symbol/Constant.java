@@ -29,6 +29,22 @@ public class Constant extends Symbol {
         super(id);
     }
 
+    Constant(SymbolTable.Name name) {
+        super(name);
+    }
+
+    /**
+     * <p>
+     * Returns the interned constant with the id, so the same instance is
+     * shared by all the expressions that use it.
+     *
+     * @param id
+     * @return {@link Constant}
+     */
+    public static Constant of(String id) {
+        return SymbolTable.constant(id);
+    }
+
     @Override
     public Expression derivate(Variable var) {
         return RNumber.ZERO;
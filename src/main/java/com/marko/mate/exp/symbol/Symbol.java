@@ -17,11 +17,15 @@
 package com.marko.mate.exp.symbol;
 
 import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.compile.CompiledExpression;
 import com.marko.mate.exp.vectorial.Space;
 import java.util.Map;
-import java.util.Objects;
 
 /**
+ * <p>
+ * All the symbols with the same id share the same name in the
+ * {@link SymbolTable}, so comparing two symbols and computing their hash code
+ * don't depend on the length of the id.
  *
  * @author Marcos
  */
@@ -29,16 +33,55 @@ public abstract class Symbol implements Expression {
 
     protected final String id;
 
+    private final SymbolTable.Name name;
+
     protected Symbol(String symbol) {
-        this.id = symbol;
+        this(SymbolTable.name(symbol));
+    }
+
+    Symbol(SymbolTable.Name name) {
+        this.id = name.id;
+        this.name = name;
+    }
+
+    /**
+     * <p>
+     * The ordinal is a small number that is unique among the symbols in use,
+     * so it can be used as index of a {@link java.util.BitSet} or an array.
+     *
+     * @return the ordinal of the id of this symbol
+     */
+    public int ordinal() {
+        return name.ordinal;
     }
 
     @Override
     public abstract Expression derivate(Variable var);
 
+    /**
+     * <p>
+     * Evaluates this symbol in the point.
+     *
+     * @param point the point to be evaluated
+     * @return the value of this symbol in the point, or this symbol if the
+     * point doesn't contain it
+     */
     @Override
-    public Space evaluate(Map<Symbol, Space> point) {
-            return point.get(this);
+    public Expression evaluate(Map<Symbol, Space> point) {
+        if (point == null) {
+            return this;
+        }
+        Space value = point.get(this);
+        return value == null ? this : value;
+    }
+
+    @Override
+    public CompiledExpression compile(Bindings bindings) {
+        int slot = bindings.slotOf(this);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Unbound symbol " + id);
+        }
+        return point -> point[slot];
     }
 
     @Override
@@ -59,16 +102,14 @@ public abstract class Symbol implements Expression {
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof Symbol) {
-            return id.equals(((Symbol) obj).id);
+            return name == ((Symbol) obj).name;
         }
         return false;
     }
 
     @Override
     public int hashCode() {
-        int hash = 7;
-        hash = 71 * hash + Objects.hashCode(this.id);
-        return hash;
+        return name.hash;
     }
 
 }
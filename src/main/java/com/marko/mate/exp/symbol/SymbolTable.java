@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.symbol;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Interns the names of the symbols. All the symbols with the same id share
+ * the same {@link Name}, so two symbols are equal only if they have the same
+ * name instance, and each name has a dense ordinal that can be used as index
+ * of a {@link BitSet} or an array.
+ * <p>
+ * The table only holds weak references, so a name and its ordinal are
+ * released once there is no symbol using it, and the ordinal is reused by the
+ * next new name. This class is thread safe.
+ *
+ * @author Marcos
+ */
+public final class SymbolTable {
+
+    private static final ConcurrentHashMap<String, NameReference> NAMES = new ConcurrentHashMap<>();
+
+    private static final ReferenceQueue<Name> QUEUE = new ReferenceQueue<>();
+
+    private static final BitSet FREE_ORDINALS = new BitSet();
+
+    private static int nextOrdinal;
+
+    private SymbolTable() {
+    }
+
+    /**
+     * <p>
+     * Returns the interned {@link Variable} with the id. As long as the
+     * returned variable is referenced, this method will return the same
+     * instance for the same id.
+     *
+     * @param id
+     * @return {@link Variable}
+     */
+    public static Variable variable(String id) {
+        Name name = name(id);
+        synchronized (name) {
+            Variable variable = name.variable == null ? null : name.variable.get();
+            if (variable == null) {
+                variable = new Variable(name);
+                name.variable = new WeakReference<>(variable);
+            }
+            return variable;
+        }
+    }
+
+    /**
+     * <p>
+     * Returns the interned {@link Constant} with the id. As long as the
+     * returned constant is referenced, this method will return the same
+     * instance for the same id.
+     *
+     * @param id
+     * @return {@link Constant}
+     */
+    public static Constant constant(String id) {
+        Name name = name(id);
+        synchronized (name) {
+            Constant constant = name.constant == null ? null : name.constant.get();
+            if (constant == null) {
+                constant = new Constant(name);
+                name.constant = new WeakReference<>(constant);
+            }
+            return constant;
+        }
+    }
+
+    /**
+     *
+     * @return the number of names in use
+     */
+    public static int size() {
+        synchronized (NAMES) {
+            expunge();
+            return NAMES.size();
+        }
+    }
+
+    /**
+     *
+     * @param id
+     * @return the interned name of the id
+     */
+    static Name name(String id) {
+        NameReference reference = NAMES.get(id);
+        Name name = reference == null ? null : reference.get();
+        if (name != null) {
+            return name;
+        }
+
+        synchronized (NAMES) {
+            expunge();
+            reference = NAMES.get(id);
+            name = reference == null ? null : reference.get();
+            if (name == null) {
+                name = new Name(id, allocateOrdinal());
+                NAMES.put(id, new NameReference(name));
+            }
+            return name;
+        }
+    }
+
+    private static int allocateOrdinal() {
+        int ordinal = FREE_ORDINALS.nextSetBit(0);
+        if (ordinal < 0) {
+            return nextOrdinal++;
+        }
+        FREE_ORDINALS.clear(ordinal);
+        return ordinal;
+    }
+
+    /**
+     * Removes the names that were collected and frees their ordinals.
+     */
+    private static void expunge() {
+        NameReference reference;
+        while ((reference = (NameReference) QUEUE.poll()) != null) {
+            NAMES.remove(reference.id, reference);
+            FREE_ORDINALS.set(reference.ordinal);
+        }
+    }
+
+    /**
+     * The interned id of a symbol, shared by all the symbols with that id.
+     */
+    static final class Name {
+
+        final String id;
+
+        final int ordinal;
+
+        final int hash;
+
+        private WeakReference<Variable> variable;
+
+        private WeakReference<Constant> constant;
+
+        private Name(String id, int ordinal) {
+            this.id = id;
+            this.ordinal = ordinal;
+            this.hash = 71 * 7 + id.hashCode();
+        }
+
+    }
+
+    private static final class NameReference extends WeakReference<Name> {
+
+        private final String id;
+
+        private final int ordinal;
+
+        private NameReference(Name name) {
+            super(name, QUEUE);
+            this.id = name.id;
+            this.ordinal = name.ordinal;
+        }
+
+    }
+
+}
@@ -29,6 +29,22 @@ public class Variable extends Symbol {
         super(id);
     }
 
+    Variable(SymbolTable.Name name) {
+        super(name);
+    }
+
+    /**
+     * <p>
+     * Returns the interned variable with the id, so the same instance is
+     * shared by all the expressions that use it.
+     *
+     * @param id
+     * @return {@link Variable}
+     */
+    public static Variable of(String id) {
+        return SymbolTable.variable(id);
+    }
+
     @Override
     public Expression derivate(Variable var) {
         if (this.equals(var)) {
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.vectorial;
+
+import com.marko.mate.exp.symbol.Symbol;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Map;
+
+/**
+ * <p>
+ * A double-double number: the unevaluated sum of two doubles, the high one
+ * and a low one smaller than half an ulp of the high one, so it has 106
+ * bits of mantissa, about 32 decimal digits. It is for the computations
+ * where the 7 digits of an {@link RNumber} are not enough, such as the
+ * determinant of an ill-conditioned matrix, at a few times the cost of a
+ * double instead of the cost of a {@link BigDecimal} with as many digits.
+ * <p>
+ * The arithmetic uses the error-free transformations of the sum and the
+ * product of two doubles, without branches. An operation with an
+ * {@link RNumber} or a {@link QNumber} converts it to a double-double, and
+ * an operation with a {@link DNumber} that is not an integer is a
+ * {@link DNumber}, which is the least precise. The powers with an exponent
+ * that is not an integer, and the functions such as {@code Sin}, only have
+ * the precision of a double.
+ *
+ * @author Marcos
+ */
+public final class DDNumber extends Number {
+
+    private static final MathContext DIGITS = new MathContext(32);
+
+    private final double hi;
+
+    private final double lo;
+
+    /**
+     *
+     * @param value a finite value
+     * @throws ArithmeticException if the value is infinite or NaN
+     */
+    public DDNumber(double value) {
+        this(value, 0);
+    }
+
+    /**
+     * A number that is already normalized, with the low part smaller than
+     * half an ulp of the high part.
+     */
+    private DDNumber(double hi, double lo) {
+        super(isInteger(hi, lo), isInteger(hi, lo) && hi % 2 == 0);
+        if (!Double.isFinite(hi) || !Double.isFinite(lo)) {
+            throw new ArithmeticException(hi + " is not a finite number");
+        }
+        // minus zero is zero, as it is for the exact numbers
+        this.hi = hi + 0.0;
+        this.lo = lo + 0.0;
+    }
+
+    private static boolean isInteger(double hi, double lo) {
+        return lo == 0 && Math.abs(hi) < 1e7 && hi == Math.rint(hi);
+    }
+
+    /**
+     * <p>
+     * The double-double nearest to the value of a number: the exact value of
+     * an {@link RNumber}, the quotient of the fraction of a {@link QNumber}
+     * and the double of a {@link DNumber}.
+     *
+     * @param number
+     * @return {@link DDNumber}
+     */
+    public static DDNumber valueOf(Number number) {
+        if (number instanceof DDNumber) {
+            return (DDNumber) number;
+        }
+        if (number instanceof QNumber) {
+            QNumber fraction = (QNumber) number;
+            return valueOf(new BigDecimal(fraction.getNumerator()))
+                    .divide(valueOf(new BigDecimal(fraction.getDenominator())));
+        }
+        if (number instanceof DNumber) {
+            return new DDNumber(number.doubleValue());
+        }
+        return valueOf(number.value());
+    }
+
+    /**
+     *
+     * @param value
+     * @return the double-double nearest to the value
+     */
+    public static DDNumber valueOf(BigDecimal value) {
+        double hi = value.doubleValue();
+        if (!Double.isFinite(hi)) {
+            throw new ArithmeticException(value + " is not a finite number");
+        }
+        double lo = value.subtract(new BigDecimal(hi)).doubleValue();
+        return quickTwoSum(hi, lo);
+    }
+
+    /**
+     * The sum of two doubles whose first one is the largest, as a
+     * normalized double-double.
+     */
+    private static DDNumber quickTwoSum(double a, double b) {
+        double s = a + b;
+        return new DDNumber(s, b - (s - a));
+    }
+
+    private DDNumber add(DDNumber number) {
+        // the sums of the high and of the low parts, with their errors
+        double s = hi + number.hi,
+                v = s - hi,
+                e = (hi - (s - v)) + (number.hi - v);
+        double t = lo + number.lo,
+                w = t - lo,
+                f = (lo - (t - w)) + (number.lo - w);
+        e += t;
+        double h = s + e;
+        e = e - (h - s);
+        e += f;
+        return quickTwoSum(h, e);
+    }
+
+    private DDNumber multiply(DDNumber number) {
+        double p = hi * number.hi,
+                e = Math.fma(hi, number.hi, -p);
+        e += hi * number.lo + lo * number.hi;
+        return quickTwoSum(p, e);
+    }
+
+    private DDNumber multiply(double number) {
+        double p = hi * number,
+                e = Math.fma(hi, number, -p);
+        e += lo * number;
+        return quickTwoSum(p, e);
+    }
+
+    private DDNumber divide(DDNumber number) {
+        if (number.hi == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        // long division, with a double digit at a time
+        double q1 = hi / number.hi;
+        DDNumber r = add(number.multiply(-q1));
+        double q2 = r.hi / number.hi;
+        r = r.add(number.multiply(-q2));
+        double q3 = r.hi / number.hi;
+        return quickTwoSum(q1, q2).add(new DDNumber(q3));
+    }
+
+    @Override
+    protected Number add(Number number) {
+        return add(valueOf(number));
+    }
+
+    @Override
+    protected Number substract(Number number) {
+        return add(valueOf(number).negate());
+    }
+
+    @Override
+    protected Number multiply(Number number) {
+        return multiply(valueOf(number));
+    }
+
+    @Override
+    protected Number divide(Number number) {
+        return divide(valueOf(number));
+    }
+
+    /**
+     * <p>
+     * The power is a double-double if the exponent is an integer, by
+     * repeated squaring. Otherwise it falls back to {@link Math#pow} of the
+     * high part, so it is a double-double with only the precision of a
+     * double.
+     *
+     * @param exp
+     * @return {@link Number}
+     */
+    @Override
+    public Number pow(Number exp) {
+        if (isInexactWith(exp)) {
+            return inexact(Math.pow(doubleValue(), exp.doubleValue()), this, exp);
+        }
+        if (!exp.isInteger()) {
+            return new DDNumber(Math.pow(hi, exp.doubleValue()));
+        }
+        int power = (int) exp.doubleValue();
+        DDNumber result = new DDNumber(1),
+                base = this;
+        for (int n = Math.abs(power); n != 0; n >>= 1) {
+            if ((n & 1) != 0) {
+                result = result.multiply(base);
+            }
+            base = base.multiply(base);
+        }
+        return power < 0 ? result.inverse() : result;
+    }
+
+    @Override
+    public DDNumber abs() {
+        return hi < 0 ? negate() : this;
+    }
+
+    @Override
+    public DDNumber negate() {
+        return new DDNumber(-hi, -lo);
+    }
+
+    @Override
+    public DDNumber inverse() {
+        if (isZero()) {
+            throw new IllegalStateException("Zero doesn't have inverse");
+        }
+        return new DDNumber(1).divide(this);
+    }
+
+    @Override
+    public DDNumber withValue(double value) {
+        return new DDNumber(value);
+    }
+
+    @Override
+    public DDNumber simplify() {
+        return this;
+    }
+
+    @Override
+    public DDNumber evaluate(Map<Symbol, Space> point) {
+        return this;
+    }
+
+    @Override
+    public boolean isZero() {
+        return hi == 0;
+    }
+
+    /**
+     *
+     * @return the exact sum of the two doubles, the binary value and not the
+     * shortest decimal of the double, even if there is no low part
+     */
+    @Override
+    protected BigDecimal computeValue() {
+        return new BigDecimal(hi).add(new BigDecimal(lo));
+    }
+
+    /**
+     *
+     * @return the high part, which is the sum of both parts rounded to a
+     * double
+     */
+    @Override
+    public double doubleValue() {
+        return hi;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof DDNumber) {
+            return hi == ((DDNumber) obj).hi && lo == ((DDNumber) obj).lo;
+        }
+        return super.equals(obj);
+    }
+
+    @Override
+    public int compareTo(Number number) {
+        if (number instanceof DDNumber) {
+            DDNumber dd = (DDNumber) number;
+            if (hi != dd.hi) {
+                return hi < dd.hi ? -1 : 1;
+            }
+            return lo < dd.lo ? -1 : (lo > dd.lo ? 1 : 0);
+        }
+        return super.compareTo(number);
+    }
+
+    @Override
+    public String toString() {
+        if (lo == 0) {
+            return hi + "";
+        }
+        return value().round(DIGITS).toString();
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.vectorial;
+
+import com.marko.mate.exp.symbol.Symbol;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Map;
+
+/**
+ * <p>
+ * A number backed by a double, for the numeric work where the exact
+ * {@link RNumber} and {@link QNumber} are too slow, such as evaluating many
+ * expressions in many points. The arithmetic is done with doubles, without
+ * rounding to a math context and without building any {@code BigDecimal}.
+ * <p>
+ * A double number may not be exact, so the result of an operation with a
+ * double number is a double number too, unless its value is an integer and
+ * the other number is exact: then it is promoted to an {@link RNumber} and
+ * the result is exact. Its value, {@link #value()}, is the shortest decimal
+ * with the same double, built only the first time it is needed, for example
+ * to compare it with an exact number. The exact binary value of the double
+ * is {@link #value(MathContext)}. Two double numbers are equal if their doubles are equal, as they would be
+ * if their exact values were compared.
+ *
+ * @author Marcos
+ */
+public final class DNumber extends Number {
+
+    /**
+     *
+     * @param value a finite value
+     * @throws ArithmeticException if the value is infinite or NaN, which
+     * don't have an exact value
+     */
+    public DNumber(double value) {
+        // minus zero is zero, as it is for the exact numbers
+        super(finite(value) + 0.0, false);
+    }
+
+    private static double finite(double value) {
+        if (!Double.isFinite(value)) {
+            throw new ArithmeticException(value + " is not a finite number");
+        }
+        return value;
+    }
+
+    /**
+     * The quotient of two numbers with doubles, with the same error as the
+     * exact numbers for a zero divisor.
+     */
+    static Number divide(Number dividend, Number divisor) {
+        if (divisor.isZero()) {
+            throw new ArithmeticException("Division by zero");
+        }
+        return inexact(dividend.doubleValue() / divisor.doubleValue(), dividend, divisor);
+    }
+
+    @Override
+    protected Number add(Number number) {
+        return inexact(doubleValue() + number.doubleValue(), this, number);
+    }
+
+    @Override
+    protected Number substract(Number number) {
+        return inexact(doubleValue() - number.doubleValue(), this, number);
+    }
+
+    @Override
+    protected Number multiply(Number number) {
+        return inexact(doubleValue() * number.doubleValue(), this, number);
+    }
+
+    @Override
+    protected Number divide(Number number) {
+        return divide(this, number);
+    }
+
+    /**
+     *
+     * @param mc
+     * @return the exact value of the double, whatever the math context
+     */
+    @Override
+    public BigDecimal value(MathContext mc) {
+        return new BigDecimal(doubleValue());
+    }
+
+    @Override
+    public Number pow(Number exp) {
+        if (isInexactWith(exp)) {
+            return inexact(Math.pow(doubleValue(), exp.doubleValue()), this, exp);
+        }
+        return exact().pow(exp);
+    }
+
+    /**
+     *
+     * @return an {@link RNumber} with the value of this number, which is
+     * exact only if it is an integer
+     */
+    @Override
+    RNumber exact() {
+        return new RNumber(doubleValue());
+    }
+
+    @Override
+    public DNumber abs() {
+        return new DNumber(Math.abs(doubleValue()));
+    }
+
+    @Override
+    public DNumber negate() {
+        return new DNumber(-doubleValue());
+    }
+
+    @Override
+    public DNumber inverse() {
+        if (isZero()) {
+            throw new IllegalStateException("Zero doesn't have inverse");
+        }
+        return new DNumber(1 / doubleValue());
+    }
+
+    /**
+     * @return the shortest decimal with the same double, without rounding it
+     * to a math context
+     */
+    @Override
+    protected BigDecimal computeValue() {
+        return BigDecimal.valueOf(doubleValue());
+    }
+
+    @Override
+    public DNumber withValue(double value) {
+        return new DNumber(value);
+    }
+
+    @Override
+    public DNumber simplify() {
+        return this;
+    }
+
+    @Override
+    public DNumber evaluate(Map<Symbol, Space> point) {
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof DNumber) {
+            return doubleValue() == ((DNumber) obj).doubleValue();
+        }
+        return super.equals(obj);
+    }
+
+    @Override
+    public int compareTo(Number number) {
+        if (number instanceof DNumber) {
+            double a = doubleValue(), b = number.doubleValue();
+            return a < b ? -1 : (a > b ? 1 : 0);
+        }
+        return super.compareTo(number);
+    }
+
+    @Override
+    public String toString() {
+        return doubleValue() + "";
+    }
+
+}
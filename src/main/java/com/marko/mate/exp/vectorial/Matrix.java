@@ -17,12 +17,14 @@
 package com.marko.mate.exp.vectorial;
 
 import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.ExpressionFactory;
 import com.marko.mate.exp.operation.binop.Division;
 import com.marko.mate.exp.operation.binop.Multiplication;
 import com.marko.mate.exp.operation.binop.Pow;
 import com.marko.mate.exp.operation.binop.Sum;
 import com.marko.mate.exp.symbol.Symbol;
 import com.marko.mate.exp.symbol.Variable;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -193,7 +195,7 @@ public class Matrix extends VectorialSpace {
                 newData[i][j++] = new Sum(
                         var,
                         new Multiplication(
-                                RNumber.parseRNumber("-1"),
+                                Number.valueOf(-1),
                                 exp
                         )
                 ).simplify();
@@ -224,9 +226,11 @@ public class Matrix extends VectorialSpace {
         Expression[][] newData = new Expression[data.length][data[0].length];
         int i = 0, j = 0;
 
+        // the subexpressions shared by the entries are derived once
+        Map<Expression, Expression> derivatives = new HashMap<>();
         for (Expression[] expArr : data) {
             for (var exp : expArr) {
-                newData[i][j++] = exp.derivate(var);
+                newData[i][j++] = exp.derivate(var, derivatives);
             }
             i++;
             j = 0;
@@ -273,7 +277,7 @@ public class Matrix extends VectorialSpace {
                 newData[i][j++] = new Sum(
                         exp,
                         new Multiplication(
-                                RNumber.parseRNumber("-1"),
+                                Number.valueOf(-1),
                                 number
                         )
                 ).simplify();
@@ -299,7 +303,7 @@ public class Matrix extends VectorialSpace {
                 newData[i][j] = new Sum(
                         data[i][j],
                         new Multiplication(
-                                RNumber.parseRNumber("-1"),
+                                Number.valueOf(-1),
                                 matrix.data[i][j]
                         )
                 );
@@ -357,14 +361,14 @@ public class Matrix extends VectorialSpace {
         }
 
         Expression[][] newData = new Expression[data.length][matrix.data[0].length];
-        Sum sum;
+        Sum.Builder sum;
 
         for (int i = 0; i < data.length; i++) {
             for (int j = 0; j < matrix.data[0].length; j++) {
 
-                sum = new Sum();
+                sum = new Sum.Builder();
                 for (int k = 0; k < data[0].length; k++) {
-                    sum.addExp(
+                    sum.add(
                             new Multiplication(
                                     data[i][k],
                                     matrix.data[k][j]
@@ -372,7 +376,7 @@ public class Matrix extends VectorialSpace {
                     );
                 }
 
-                newData[i][j] = sum.simplify();
+                newData[i][j] = sum.build().simplify();
             }
         }
 
@@ -429,6 +433,8 @@ public class Matrix extends VectorialSpace {
 
     @Override
     public Matrix inverse() {
+        ExpressionFactory factory = new ExpressionFactory();
+        Expression det = factory.intern(det());
         Matrix inverse = new Matrix(new Expression[data.length][data[0].length]);
         Matrix tmp = new Matrix(new Expression[data.length - 1][data[0].length - 1]);
 
@@ -452,17 +458,16 @@ public class Matrix extends VectorialSpace {
                 inverse.data[i][j] = new Division(
                         new Multiplication(
                                 new Pow(
-                                        RNumber.parseRNumber("-1"),
-                                        RNumber.parseRNumber((i + j + 2) + "")
+                                        Number.valueOf(-1),
+                                        Number.valueOf(i + j + 2)
                                 ).simplify(),
                                 pDet(tmp)
                         ).simplify(),
-                        det()
+                        det
                 ).simplify();
             }
         }
-        inverse = pTranspose(inverse).simplify();
-        return inverse;
+        return pTranspose(inverse).simplify();
     }
 
     public Expression det() {
@@ -486,7 +491,7 @@ public class Matrix extends VectorialSpace {
                             matrix.data[1][1]
                     ).simplify(),
                     new Multiplication(
-                            Number.parseNumber("-1"),
+                            Number.valueOf(-1),
                             matrix.data[0][1],
                             matrix.data[1][0]
                     ).simplify()
@@ -494,7 +499,7 @@ public class Matrix extends VectorialSpace {
         }
 
         Expression[][] tmp;
-        Sum sum = new Sum();
+        Sum.Builder sum = new Sum.Builder();
 
         for (int i = 0; i < matrix.data[0].length; i++) {
             tmp = new Expression[matrix.data.length - 1][matrix.data[0].length - 1];
@@ -508,18 +513,18 @@ public class Matrix extends VectorialSpace {
                 }
             }
 
-            sum.addExp(
+            sum.add(
                     new Multiplication(
                             matrix.data[0][i],
                             new Pow(
-                                    Number.parseNumber("-1"),
-                                    Number.parseNumber("" + i)
+                                    Number.valueOf(-1),
+                                    Number.valueOf(i)
                             ).simplify(),
                             pDet(new Matrix(tmp))
                     ).simplify()
             );
         }
-        return sum.simplify();
+        return sum.build().simplify();
     }
 
     @Override
@@ -544,9 +549,11 @@ public class Matrix extends VectorialSpace {
         Expression[][] newData = new Expression[data.length][data[0].length];
         int i = 0, j = 0;
 
+        // the subexpressions shared by the entries are evaluated once
+        Map<Expression, Expression> values = new HashMap<>();
         for (Expression[] expArr : data) {
             for (var exp : expArr) {
-                newData[i][j++] = exp.evaluate(point);
+                newData[i][j++] = exp.evaluate(point, values);
             }
             i++;
             j = 0;
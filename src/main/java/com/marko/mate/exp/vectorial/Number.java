@@ -16,25 +16,50 @@
  */
 package com.marko.mate.exp.vectorial;
 
+import com.marko.mate.Util;
 import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.compile.CompiledExpression;
 import com.marko.mate.exp.operation.binop.Division;
 import com.marko.mate.exp.operation.binop.Multiplication;
 import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.symbol.Bindings;
 import com.marko.mate.exp.symbol.Symbol;
 import com.marko.mate.exp.symbol.Variable;
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.math.MathContext;
 import java.math.RoundingMode;
 import java.util.Map;
-import java.util.Objects;
 
 /**
+ * <p>
+ * A real number. Every number has its value as a {@link BigDecimal} and as
+ * a double. A number whose double is a decimal with the digits of its math
+ * context, such as most of the {@link RNumber}s, and a {@link DNumber} only
+ * keep the double, and build the {@link BigDecimal} the first time
+ * {@link #value()} is called. The other {@link RNumber}s build it when they
+ * are created, rounded to their math context, and a {@link QNumber} computes
+ * both from its fraction when they are needed.
+ * <p>
+ * The arithmetic of a {@link DNumber} is done with doubles and gives a
+ * {@link DNumber}, but a {@link DNumber} whose value is an integer is exact,
+ * so it is promoted to an {@link RNumber} to operate with an exact number.
  *
  * @author Marcos
  */
 public abstract class Number extends Space implements Comparable<Number> {
 
-    protected final BigDecimal value;
+    /**
+     * The exact value, or null until it is needed for a number that is not
+     * exact or that computes its value itself.
+     */
+    private BigDecimal value;
+
+    /**
+     * The value as a double, or NaN until it is needed for a number that
+     * computes its value itself.
+     */
+    private double doubleValue;
 
     protected final boolean isInteger;
 
@@ -44,22 +69,96 @@ public abstract class Number extends Space implements Comparable<Number> {
 
     private final static MathContext DEFALUT_MATH_CONTEXT = new MathContext(7, DEFAULT_ROUNDING_MODE);
 
+    /**
+     * The powers of ten that are exact as a double.
+     */
+    private final static double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = 10 * POWERS_OF_TEN[i - 1];
+        }
+    }
+
+    /**
+     * The integers below it have at most the 7 digits of the default math
+     * context, so they are exact as an {@link RNumber}.
+     */
+    private final static long MAX_EXACT_INTEGER = 10_000_000;
+
     protected final boolean isPair;
 
     protected Number(double value, MathContext mathContext) {
+        this(value, mathContext, true);
+    }
+
+    public Number(double value) {
+        this(value, DEFALUT_MATH_CONTEXT);
+    }
+
+    /**
+     * A number that is exact only if {@code exact} is true. Otherwise its
+     * value is the double as it is, without rounding it to the math context.
+     */
+    Number(double value, boolean exact) {
+        this(value, DEFALUT_MATH_CONTEXT, exact);
+    }
+
+    private Number(double value, MathContext mathContext, boolean exact) {
         this.mathContext = mathContext;
-        this.value = new BigDecimal(value + "", mathContext);
-        isInteger = (this.value.doubleValue() + "").endsWith(".0");
-        if (isInteger) {
-            isPair = (this.value.doubleValue() % 2) == 0;
+        if (exact && !isDecimal(value, mathContext)) {
+            this.value = new BigDecimal(value + "", mathContext);
+            this.doubleValue = this.value.doubleValue();
         } else {
-            isPair = false;
+            // minus zero is zero, as it is for a BigDecimal
+            this.doubleValue = value + 0.0;
+        }
+        isInteger = isInteger(doubleValue);
+        isPair = isInteger && ((long) doubleValue & 1) == 0;
+    }
+
+    /**
+     * @return true if the double is a decimal with at most the digits of the
+     * math context, so rounding it to the context doesn't change it, and its
+     * exact value can be built when it is needed
+     */
+    private static boolean isDecimal(double value, MathContext mathContext) {
+        int digits = mathContext.getPrecision();
+        if (digits == 0 || digits > 15) {
+            return false;
+        }
+        double limit = POWERS_OF_TEN[digits];
+        for (int scale = 0; scale < POWERS_OF_TEN.length; scale++) {
+            double scaled = value * POWERS_OF_TEN[scale];
+            if (!(Math.abs(scaled) < limit)) {
+                return false;
+            }
+            if (scaled == (long) scaled) {
+                // the double of the decimal with those digits is this one
+                return scaled / POWERS_OF_TEN[scale] == value;
+            }
         }
+        return false;
+    }
 
+    /**
+     * A number that computes its value itself, with {@link #computeValue()},
+     * only when it is needed.
+     */
+    Number(boolean isInteger, boolean isPair) {
+        this.mathContext = DEFALUT_MATH_CONTEXT;
+        this.doubleValue = Double.NaN;
+        this.isInteger = isInteger;
+        this.isPair = isPair;
     }
 
-    public Number(double value) {
-        this(value, DEFALUT_MATH_CONTEXT);
+    /**
+     * @return true if the value is an integer written without an exponent,
+     * which are the doubles whose string ends with {@code ".0"}
+     */
+    private static boolean isInteger(double value) {
+        return Math.abs(value) < 1e7 && value == Math.rint(value);
     }
 
     protected abstract Number add(Number exp);
@@ -75,20 +174,79 @@ public abstract class Number extends Space implements Comparable<Number> {
     public abstract Number abs();
 
     @Override
-    public abstract RNumber evaluate(Map<Symbol, Space> point);
+    public abstract Number evaluate(Map<Symbol, Space> point);
+
+    /**
+     *
+     * @return this number as an exact number, which is this number unless
+     * it is a {@link DNumber}
+     */
+    Number exact() {
+        return this;
+    }
+
+    /**
+     * @return true if an operation of this number with another one is done
+     * with doubles: when both are {@link DNumber}s, or one of them is a
+     * {@link DNumber} whose value is not an integer and so may not be exact
+     */
+    boolean isInexactWith(Number number) {
+        boolean inexact = this instanceof DNumber,
+                otherInexact = number instanceof DNumber;
+        return inexact && otherInexact
+                || inexact && !isInteger
+                || otherInexact && !number.isInteger;
+    }
+
+    /**
+     * <p>
+     * The result of an operation done with doubles. It is an operand if it
+     * is a {@link DNumber} with the same value, as when adding zero or
+     * multiplying by one, so nothing is allocated, and a new
+     * {@link DNumber} otherwise.
+     *
+     * @param result
+     * @param a an operand
+     * @param b the other operand
+     * @return {@link Number}
+     */
+    static Number inexact(double result, Number a, Number b) {
+        if (a instanceof DNumber && a.doubleValue == result) {
+            return a;
+        }
+        if (b instanceof DNumber && b.doubleValue == result) {
+            return b;
+        }
+        return new DNumber(result);
+    }
+
+    /**
+     * <p>
+     * A number of the same kind as this one with another value: a
+     * {@link DNumber} if this number is a {@link DNumber}, and an
+     * {@link RNumber} otherwise. The operations that are computed with
+     * doubles, such as {@code Sin} or {@code Ln}, use it to keep the kind of
+     * their argument.
+     *
+     * @param value
+     * @return {@link Number}
+     */
+    public Number withValue(double value) {
+        return new RNumber(value);
+    }
 
     @Override
     public abstract Number simplify();
 
     private BigDecimal pow(int exp) {
-        return value.pow(exp, mathContext);
+        return value().pow(exp, mathContext);
     }
 
     protected BigDecimal pow(double exp) {
         if ((exp + "").endsWith(".0")) {
             return pow((int) exp);
         }
-        return new BigDecimal(Math.pow(value.doubleValue(), exp), mathContext);
+        return new BigDecimal(Math.pow(doubleValue(), exp), mathContext);
     }
 
     @Override
@@ -96,7 +254,7 @@ public abstract class Number extends Space implements Comparable<Number> {
 
     @Override
     public Number negate() {
-        return (Number) multiply(RNumber.parseRNumber("-1"));
+        return multiply(valueOf(-1));
     }
 
     @Override
@@ -104,23 +262,43 @@ public abstract class Number extends Space implements Comparable<Number> {
         return RNumber.ZERO;
     }
 
+    @Override
+    public CompiledExpression compile(Bindings bindings) {
+        double constant = doubleValue();
+        return point -> constant;
+    }
+
     @Override
     public boolean isZero() {
-        return value.compareTo(BigDecimal.ZERO) == 0;
+        return doubleValue() == 0;
     }
 
     @Override
     public boolean equals(Object obj) {
+        // a fraction is compared by its exact value
+        if (obj instanceof QNumber) {
+            return obj.equals(this);
+        }
+        // by value, so the exact values with different scales are equal
         if (obj instanceof Number) {
-            return value.equals(((Number) obj).value);
+            return value().compareTo(((Number) obj).value()) == 0;
         }
         return false;
     }
 
+    /**
+     * <p>
+     * The hash of the double value, so it can be found without the exact
+     * value. The equal numbers have the same double value, whatever their
+     * kind, and a {@link QNumber} hashes the double nearest to its fraction.
+     *
+     * @return the hash code
+     */
     @Override
     public int hashCode() {
         int hash = 3;
-        hash = 41 * hash + Objects.hashCode(this.value);
+        // zero and minus zero are the same number
+        hash = 41 * hash + Double.hashCode(doubleValue() + 0.0);
         return hash;
     }
 
@@ -132,13 +310,74 @@ public abstract class Number extends Space implements Comparable<Number> {
         return isPair;
     }
 
+    /**
+     *
+     * @return the exact value of this number, built from the double value
+     * the first time it is called if it is not built with the number
+     */
     public BigDecimal value() {
-        return value;
+        BigDecimal exact = value;
+        if (exact == null) {
+            exact = computeValue();
+            value = exact;
+        }
+        return exact;
+    }
+
+    /**
+     * <p>
+     * The value of this number with at least the digits of a math context,
+     * which is more precise than {@link #value()} for the numbers that are
+     * not a decimal, such as the fraction of a {@link QNumber} or the double
+     * of a {@link DNumber}. It is rounded only if it has more digits than the
+     * math context, so it is exact if it has less.
+     *
+     * @param mc
+     * @return the exact value, or the value rounded to the math context
+     */
+    public BigDecimal value(MathContext mc) {
+        return value();
+    }
+
+    /**
+     *
+     * @return the value of a number that is not built with it, by default
+     * the string of the double rounded to the math context, which is the
+     * value it would have if it were built with the number
+     */
+    protected BigDecimal computeValue() {
+        return new BigDecimal(doubleValue + "", mathContext);
+    }
+
+    /**
+     *
+     * @return the value of this number as a double, without building the
+     * exact value if the number is built with its double
+     */
+    public double doubleValue() {
+        double d = doubleValue;
+        if (Double.isNaN(d)) {
+            d = computeDoubleValue();
+            doubleValue = d;
+        }
+        return d;
+    }
+
+    /**
+     *
+     * @return the double of a number that is not built with it, by default
+     * the one of its value
+     */
+    protected double computeDoubleValue() {
+        return value().doubleValue();
     }
 
     @Override
     public int compareTo(Number number) {
-        return value.compareTo(number.value);
+        if (number instanceof QNumber) {
+            return -number.compareTo(this);
+        }
+        return value().compareTo(number.value());
     }
 
     public static Number parseNumber(String number) {
@@ -148,6 +387,73 @@ public abstract class Number extends Space implements Comparable<Number> {
         return RNumber.parseRNumber(number);
     }
 
+    /**
+     * <p>
+     * The exact number of an integer, an {@link RNumber} if it has the
+     * digits of its math context and a {@link QNumber} otherwise. The small
+     * integers are shared, so the constants of the operations, such as the
+     * minus one of a negation, are neither parsed nor allocated again.
+     *
+     * @param value
+     * @return {@link Number}
+     */
+    public static Number valueOf(long value) {
+        if (value >= Cache.INTEGERS_LOW && value <= Cache.INTEGERS_HIGH) {
+            return Cache.INTEGERS[(int) (value - Cache.INTEGERS_LOW)];
+        }
+        if (value > -MAX_EXACT_INTEGER && value < MAX_EXACT_INTEGER) {
+            return new RNumber(value);
+        }
+        return new QNumber(BigInteger.valueOf(value), BigInteger.ONE);
+    }
+
+    /**
+     * <p>
+     * The exact number of a decimal, with all its digits, an {@link RNumber}
+     * if it is an integer that it holds exactly and a {@link QNumber}
+     * otherwise.
+     *
+     * @param value
+     * @return {@link Number}
+     */
+    public static Number valueOf(BigDecimal value) {
+        return new QNumber(value).simplify();
+    }
+
+    /**
+     * <p>
+     * The exact number of a fraction, an integer if the denominator divides
+     * the numerator. The fractions of small numerators and denominators are
+     * shared, so one half is always the same instance.
+     *
+     * @param numerator
+     * @param denominator
+     * @return {@link Number}
+     * @throws ArithmeticException if the denominator is zero
+     */
+    public static Number valueOf(int numerator, int denominator) {
+        if (denominator == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        // as longs, so the minimum int can be negated
+        long num = numerator,
+                den = denominator;
+        if (den < 0) {
+            num = -num;
+            den = -den;
+        }
+        long gcd = Util.gcd(num, den);
+        num /= gcd;
+        den /= gcd;
+        if (den == 1) {
+            return valueOf(num);
+        }
+        if (Math.abs(num) <= Cache.FRACTIONS_MAX && den <= Cache.FRACTIONS_MAX) {
+            return Cache.FRACTIONS[(int) num + Cache.FRACTIONS_MAX][(int) den];
+        }
+        return new QNumber(BigInteger.valueOf(num), BigInteger.valueOf(den));
+    }
+
     @Override
     public Expression add(Expression exp) {
         if (exp instanceof Space) {
@@ -163,7 +469,15 @@ public abstract class Number extends Space implements Comparable<Number> {
     private Space add(Space space) {
 
         if (space instanceof Number) {
-            return add((Number) space);
+            Number number = (Number) space;
+            if (isInexactWith(number)) {
+                return inexact(doubleValue() + number.doubleValue(), this, number);
+            }
+            // a double-double makes the result a double-double, that is not exact either
+            if (number instanceof DDNumber) {
+                return DDNumber.valueOf(this).add(number);
+            }
+            return exact().add(number.exact());
         }
 
         if (space instanceof Vector) {
@@ -187,7 +501,14 @@ public abstract class Number extends Space implements Comparable<Number> {
 
     private Space multiply(Space space) {
         if (space instanceof Number) {
-            return multiply((Number) space);
+            Number number = (Number) space;
+            if (isInexactWith(number)) {
+                return inexact(doubleValue() * number.doubleValue(), this, number);
+            }
+            if (number instanceof DDNumber) {
+                return DDNumber.valueOf(this).multiply(number);
+            }
+            return exact().multiply(number.exact());
         }
 
         if (space instanceof Vector) {
@@ -207,7 +528,7 @@ public abstract class Number extends Space implements Comparable<Number> {
         return new Sum(
                 this,
                 new Multiplication(
-                        RNumber.parseRNumber("-1"),
+                        valueOf(-1),
                         exp
                 )
         ).simplify();
@@ -216,7 +537,14 @@ public abstract class Number extends Space implements Comparable<Number> {
 
     private Space substract(Space space) {
         if (space instanceof Number) {
-            return substract((Number) space);
+            Number number = (Number) space;
+            if (isInexactWith(number)) {
+                return inexact(doubleValue() - number.doubleValue(), this, number);
+            }
+            if (number instanceof DDNumber) {
+                return DDNumber.valueOf(this).substract(number);
+            }
+            return exact().substract(number.exact());
         }
 
         if (space instanceof Vector) {
@@ -241,7 +569,14 @@ public abstract class Number extends Space implements Comparable<Number> {
 
     private Space divide(Space space) {
         if (space instanceof Number) {
-            return divide((Number) space);
+            Number number = (Number) space;
+            if (isInexactWith(number)) {
+                return DNumber.divide(this, number);
+            }
+            if (number instanceof DDNumber) {
+                return DDNumber.valueOf(this).divide(number);
+            }
+            return exact().divide(number.exact());
         }
 
         if (space instanceof Vector) {
@@ -362,7 +697,7 @@ public abstract class Number extends Space implements Comparable<Number> {
                 newData[i][j++] = new Sum(
                         this,
                         new Multiplication(
-                                RNumber.parseRNumber("-1"),
+                                valueOf(-1),
                                 exp
                         )
                 ).simplify();
@@ -383,7 +718,7 @@ public abstract class Number extends Space implements Comparable<Number> {
             newData[i++] = new Sum(
                     this,
                     new Multiplication(
-                            RNumber.parseRNumber("-1"),
+                            valueOf(-1),
                             exp
                     )
             ).simplify();
@@ -393,4 +728,44 @@ public abstract class Number extends Space implements Comparable<Number> {
 
     }
 
+    /**
+     * The shared numbers of {@link #valueOf(long)} and
+     * {@link #valueOf(int, int)}, built the first time one is needed.
+     */
+    private static final class Cache {
+
+        private static final int INTEGERS_LOW = -128;
+
+        private static final int INTEGERS_HIGH = 1024;
+
+        private static final int FRACTIONS_MAX = 16;
+
+        private static final Number[] INTEGERS = new Number[INTEGERS_HIGH - INTEGERS_LOW + 1];
+
+        /**
+         * The reduced fractions by numerator, from minus the maximum, and by
+         * denominator.
+         */
+        private static final QNumber[][] FRACTIONS = new QNumber[2 * FRACTIONS_MAX + 1][FRACTIONS_MAX + 1];
+
+        static {
+            for (int i = 0; i < INTEGERS.length; i++) {
+                INTEGERS[i] = new RNumber(INTEGERS_LOW + i);
+            }
+            // the constants are the same instances
+            INTEGERS[-INTEGERS_LOW] = RNumber.ZERO;
+            INTEGERS[1 - INTEGERS_LOW] = RNumber.ONE;
+            INTEGERS[10 - INTEGERS_LOW] = RNumber.TEN;
+            for (int num = -FRACTIONS_MAX; num <= FRACTIONS_MAX; num++) {
+                for (int den = 2; den <= FRACTIONS_MAX; den++) {
+                    if (Util.gcd(num, den) == 1) {
+                        FRACTIONS[num + FRACTIONS_MAX][den] = new QNumber(
+                                BigInteger.valueOf(num), BigInteger.valueOf(den));
+                    }
+                }
+            }
+        }
+
+    }
+
 }
@@ -16,126 +16,312 @@
  */
 package com.marko.mate.exp.vectorial;
 
+import com.marko.mate.Util;
 import com.marko.mate.exp.symbol.Symbol;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
 import java.util.Map;
-import com.marko.mate.Util;
 
 /**
+ * <p>
+ * An exact rational number, as a fraction of two {@link BigInteger}s. The
+ * fraction is always reduced and its denominator is positive, so the
+ * arithmetic never rounds and two equal fractions have the same numerator
+ * and denominator. Its value as a decimal, and as a double, is computed only
+ * when it is needed.
+ * <p>
+ * A fraction is compared by its exact value, not by its rounded
+ * {@link #value()}: it is equal to another number only if the value of that
+ * number is the same fraction, so one third is not equal to
+ * {@code 0.3333333}.
  *
  * @author Marcos
  */
 public class QNumber extends Number {
 
-    private final Number numerator;
+    /**
+     * The integers below it are exact as an {@link RNumber}.
+     */
+    private static final BigInteger MAX_INTEGER = BigInteger.valueOf(10_000_000);
+
+    private static final BigInteger FIVE = BigInteger.valueOf(5);
 
-    private final Number denominator;
+    private final BigInteger numerator;
+
+    private final BigInteger denominator;
+
+    /**
+     * The hash of the double nearest to the fraction, computed the first
+     * time it is needed, or zero until then.
+     */
+    private int hash;
 
     public QNumber(Number numerator, Number denominator) {
-        super(numerator.divide(denominator).value.doubleValue());
-        this.numerator = numerator;
-        this.denominator = denominator;
+        this(rational(numerator), rational(denominator));
     }
 
     public QNumber(RNumber numerator) {
-        this(numerator, RNumber.ONE);
+        this(numerator.value());
     }
 
-    @Override
-    protected Number divide(Number exp) {
-        if (exp instanceof QNumber) {
-            return divide((QNumber) exp);
+    private QNumber(QNumber numerator, QNumber denominator) {
+        this(
+                numerator.numerator.multiply(denominator.denominator),
+                numerator.denominator.multiply(denominator.numerator)
+        );
+    }
+
+    QNumber(BigDecimal value) {
+        this(
+                value.scale() > 0 ? value.unscaledValue() : value.toBigIntegerExact(),
+                value.scale() > 0 ? BigInteger.TEN.pow(value.scale()) : BigInteger.ONE
+        );
+    }
+
+    /**
+     * The fraction is reduced.
+     *
+     * @param numerator
+     * @param denominator must not be zero
+     */
+    public QNumber(BigInteger numerator, BigInteger denominator) {
+        this(reduce(numerator, denominator));
+    }
+
+    /**
+     * A fraction that is already reduced.
+     */
+    private QNumber(BigInteger[] fraction) {
+        super(isInteger(fraction), isInteger(fraction) && !fraction[0].testBit(0));
+        this.numerator = fraction[0];
+        this.denominator = fraction[1];
+    }
+
+    private static BigInteger[] reduce(BigInteger numerator, BigInteger denominator) {
+        if (denominator.signum() == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        if (denominator.signum() < 0) {
+            numerator = numerator.negate();
+            denominator = denominator.negate();
         }
-        return divide(new QNumber(((RNumber) exp)));
+        BigInteger gcd = gcd(numerator, denominator);
+        if (!gcd.equals(BigInteger.ONE)) {
+            numerator = numerator.divide(gcd);
+            denominator = denominator.divide(gcd);
+        }
+        return new BigInteger[]{numerator, denominator};
     }
 
-    private Number divide(QNumber number) {
-        return new QNumber(
-                numerator.divide(number.numerator),
-                denominator.divide(number.denominator)
-        ).simplify();
+    /**
+     * @return the greatest common divisor, with the binary algorithm on longs
+     * when the integers fit in them, which are most of the fractions
+     */
+    private static BigInteger gcd(BigInteger a, BigInteger b) {
+        if (a.bitLength() < Long.SIZE - 1 && b.bitLength() < Long.SIZE - 1) {
+            return BigInteger.valueOf(Util.gcd(a.longValue(), b.longValue()));
+        }
+        return a.gcd(b);
     }
 
-    @Override
-    public Number pow(Number exp) {
+    /**
+     * @return the exact integer value of the number, or null if it is not
+     * an integer
+     */
+    private static BigInteger integral(Number number) {
+        if (number instanceof QNumber) {
+            QNumber fraction = (QNumber) number;
+            return fraction.denominator.equals(BigInteger.ONE) ? fraction.numerator : null;
+        }
+        BigDecimal value = number.value().stripTrailingZeros();
+        return value.scale() <= 0 ? value.toBigIntegerExact() : null;
+    }
 
-        return new QNumber(
-                new RNumber(numerator.pow(((Number) exp)).value.doubleValue()),
-                new RNumber(denominator.pow(((Number) exp)).value.doubleValue())
-        ).simplify();
+    private static boolean isInteger(BigInteger[] fraction) {
+        return fraction[1].equals(BigInteger.ONE)
+                && fraction[0].abs().compareTo(MAX_INTEGER) < 0;
+    }
 
+    @Override
+    public BigDecimal value(MathContext mc) {
+        return new BigDecimal(numerator).divide(new BigDecimal(denominator), mc);
     }
 
+    /**
+     *
+     * @return the quotient rounded to the math context, with the same scale
+     * as the value of the {@link RNumber} of that quotient, so they are equal
+     */
     @Override
-    public QNumber abs(){
-        return new QNumber(
-                numerator.abs(),
-                denominator.abs()
-        );
+    protected BigDecimal computeValue() {
+        double quotient = new BigDecimal(numerator)
+                .divide(new BigDecimal(denominator), mathContext)
+                .doubleValue();
+        return new BigDecimal(quotient + "", mathContext);
     }
-    
+
+    /**
+     *
+     * @return the numerator of the reduced fraction
+     */
+    public BigInteger getNumerator() {
+        return numerator;
+    }
+
+    /**
+     *
+     * @return the positive denominator of the reduced fraction
+     */
+    public BigInteger getDenominator() {
+        return denominator;
+    }
+
     @Override
-    public Number simplify() {
+    public boolean isZero() {
+        return numerator.signum() == 0;
+    }
 
-        if (numerator.isZero()) {
-            return RNumber.ZERO;
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof QNumber) {
+            QNumber number = (QNumber) obj;
+            return numerator.equals(number.numerator)
+                    && denominator.equals(number.denominator);
         }
-
-        if (numerator.value == denominator.value) {
-            return RNumber.ONE;
+        if (obj instanceof Number) {
+            return compareTo((Number) obj) == 0;
         }
+        return false;
+    }
 
-        if (numerator instanceof QNumber) {
-            return new QNumber(
-                    ((QNumber) numerator).numerator,
-                    (Number) ((QNumber) numerator).denominator.multiply(denominator)
-            ).simplify();
+    /**
+     * <p>
+     * The hash of the double nearest to the fraction, which is the double of
+     * the numbers of the other kinds with the same value, so the equal
+     * numbers have the same hash.
+     *
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 3;
+            h = 41 * h + Double.hashCode(doubleValue() + 0.0);
+            hash = h;
         }
+        return h;
+    }
 
-        if (denominator instanceof QNumber) {
-            return new QNumber(
-                    (Number) numerator.multiply(((QNumber) denominator)),
-                    ((QNumber) denominator).numerator
-            ).simplify();
+    /**
+     * @return the double nearest to the fraction, not to its value rounded
+     * to 7 digits, rounded only once if the fraction is a decimal, as the
+     * values of the other numbers are
+     */
+    @Override
+    protected double computeDoubleValue() {
+        BigInteger rest = denominator.shiftRight(denominator.getLowestSetBit());
+        while (rest.mod(FIVE).signum() == 0) {
+            rest = rest.divide(FIVE);
         }
+        if (rest.equals(BigInteger.ONE)) {
+            return new BigDecimal(numerator).divide(new BigDecimal(denominator)).doubleValue();
+        }
+        return new BigDecimal(numerator)
+                .divide(new BigDecimal(denominator), MathContext.DECIMAL128)
+                .doubleValue();
+    }
 
-        RNumber n = new RNumber(numerator.divide(denominator).value.doubleValue());
+    /**
+     * <p>
+     * Compares the exact values, multiplying each numerator by the other
+     * denominator. The value of a number of another kind is a decimal, which
+     * is an exact fraction too.
+     *
+     * @param number
+     * @return the comparison of the exact values
+     */
+    @Override
+    public int compareTo(Number number) {
+        QNumber fraction = number instanceof QNumber
+                ? (QNumber) number
+                : new QNumber(number.value());
+        return numerator.multiply(fraction.denominator)
+                .compareTo(fraction.numerator.multiply(denominator));
+    }
 
-        if (n.isInteger) {
-            return n;
-        }
+    @Override
+    protected Number divide(Number exp) {
+        return divide(rational(exp));
+    }
 
-        if (numerator.isInteger && denominator.isInteger) {
+    private Number divide(QNumber number) {
+        return new QNumber(
+                numerator.multiply(number.denominator),
+                denominator.multiply(number.numerator)
+        ).simplify();
+    }
 
-            long gcd = Util.gcd(
-                    Math.abs((long) numerator.value.doubleValue()),
-                    Math.abs((long) denominator.value.doubleValue())
-            );
-            if (gcd == denominator.value.doubleValue()) {
-                return new RNumber(numerator.value.divide(new BigDecimal(
-                        gcd + "")).doubleValue());
-            }
+    /**
+     * <p>
+     * The power is exact if the exponent is an integer. Otherwise it is a
+     * {@link DNumber}.
+     *
+     * @param exp
+     * @return {@link Number}
+     */
+    @Override
+    public Number pow(Number exp) {
+        if (isInexactWith(exp)) {
+            return inexact(Math.pow(doubleValue(), exp.doubleValue()), this, exp);
+        }
 
-            if (gcd != 1) {
-                return new QNumber(
-                        new RNumber(numerator.value.divide(new BigDecimal(
-                                gcd + "")).doubleValue()),
-                        new RNumber(denominator.value.divide(new BigDecimal(
-                                gcd + "")).doubleValue())
-                );
+        BigInteger integer = integral(exp);
+        if (integer != null) {
+            if (integer.bitLength() >= Integer.SIZE) {
+                throw new ArithmeticException("Exponent out of range: " + integer);
             }
+            int power = integer.intValue();
+            BigInteger num = numerator.pow(Math.abs(power)),
+                    den = denominator.pow(Math.abs(power));
+            return (power < 0
+                    ? new QNumber(den, num)
+                    : new QNumber(new BigInteger[]{num, den})).simplify();
         }
 
+        // fails if the power is not a real number
+        return new DNumber(Math.pow(doubleValue(), exp.doubleValue()));
+    }
+
+    @Override
+    public QNumber abs() {
+        return new QNumber(new BigInteger[]{numerator.abs(), denominator});
+    }
+
+    @Override
+    public QNumber negate() {
+        return new QNumber(new BigInteger[]{numerator.negate(), denominator});
+    }
+
+    /**
+     *
+     * @return the shared {@link RNumber} of {@link Number#valueOf(long)} if
+     * this number is an integer that it holds exactly, or this number
+     * otherwise
+     */
+    @Override
+    public Number simplify() {
+        if (isInteger) {
+            return valueOf(numerator.longValue());
+        }
         return this;
     }
 
     @Override
     public String toString() {
-        if (denominator.value.doubleValue() == 1) {
-            return numerator.value.doubleValue() + "";
-        }
-        if (numerator.value.doubleValue() == 0) {
-            return 0.0 + "";
+        if (denominator.equals(BigInteger.ONE)) {
+            return numerator + "";
         }
         return "(" + numerator
                 + "/" + denominator + ")";
@@ -145,49 +331,52 @@ public class QNumber extends Number {
     @Override
     protected Number multiply(Number exp) {
 
-        if (exp instanceof QNumber) {
-            return multiply((QNumber) exp);
-        }
-        return multiply(new QNumber(((RNumber) exp)));
+        return multiply(rational(exp));
     }
 
     private Number multiply(QNumber number) {
         return new QNumber(
-                ((Number) numerator.multiply(number.numerator)),
-                (Number) denominator.multiply(number.denominator)
+                numerator.multiply(number.numerator),
+                denominator.multiply(number.denominator)
         ).simplify();
     }
 
     @Override
     protected Number add(Number exp) {
-        if (exp instanceof QNumber) {
-            return add((QNumber) exp);
-        }
-        return add(new QNumber((RNumber) exp));
+        return add(rational(exp));
     }
 
     private Number add(QNumber number) {
-        Number den = (Number) number.denominator.multiply(denominator);
-        Number num = (Number) (den.divide(denominator).multiply(numerator))
-                .add(den.divide(number.denominator).multiply(number.numerator));
-
-        return new QNumber(num, den).simplify();
+        if (denominator.equals(number.denominator)) {
+            return new QNumber(
+                    numerator.add(number.numerator),
+                    denominator
+            ).simplify();
+        }
+        return new QNumber(
+                numerator.multiply(number.denominator)
+                        .add(number.numerator.multiply(denominator)),
+                denominator.multiply(number.denominator)
+        ).simplify();
     }
 
     @Override
     protected Number substract(Number exp) {
-        if (exp instanceof QNumber) {
-            return substract((QNumber) exp);
-        }
-        return substract(new QNumber(((RNumber) exp)));
+        return add(rational(exp).negate());
     }
 
-    private Number substract(QNumber number) {
-        Number den = (Number) number.denominator.multiply(denominator);
-        Number num = (Number) (den.divide(denominator).multiply(numerator))
-                .substract(den.divide(number.denominator).multiply(number.numerator));
-
-        return new QNumber(num, den).simplify();
+    /**
+     * @return the number as a fraction, with the exact binary value of a
+     * {@link DNumber} or a {@link DDNumber}
+     */
+    private static QNumber rational(Number number) {
+        if (number instanceof QNumber) {
+            return (QNumber) number;
+        }
+        if (number instanceof RNumber) {
+            return new QNumber((RNumber) number);
+        }
+        return new QNumber(number.value(MathContext.UNLIMITED));
     }
 
     protected static QNumber parseQNumber(String number) {
@@ -208,8 +397,10 @@ public class QNumber extends Number {
                 denominator += number.charAt(i);
             }
             return new QNumber(
-                    RNumber.parseRNumber(numerator),
-                    parseNumber(denominator)
+                    new QNumber(new BigDecimal(numerator)),
+                    denominator.contains("/")
+                    ? parseQNumber(denominator)
+                    : new QNumber(new BigDecimal(denominator))
             );
 
         }
@@ -217,12 +408,15 @@ public class QNumber extends Number {
     }
 
     @Override
-    public RNumber evaluate(Map<Symbol, Space> point) {
-        return new RNumber(value.doubleValue());
+    public QNumber evaluate(Map<Symbol, Space> point) {
+        return this;
     }
 
     @Override
     public Number inverse() {
+        if (isZero()) {
+            throw new IllegalStateException("Zero doesn't have inverse");
+        }
         return new QNumber(
                 denominator,
                 numerator
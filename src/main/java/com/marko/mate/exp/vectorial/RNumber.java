@@ -43,19 +43,30 @@ public class RNumber extends Number {
     }
 
     public RNumber scale(int scale, RoundingMode mode) {
-        return new RNumber(value.setScale(scale, mode).doubleValue());
+        return new RNumber(value().setScale(scale, mode).doubleValue());
     }
 
     @Override
     public Number abs() {
-        return new RNumber(value.abs().doubleValue(), mathContext);
+        return new RNumber(value().abs().doubleValue(), mathContext);
+    }
+
+    /**
+     * @return true if both numbers are integers, whose sum, difference and
+     * product are exact as doubles
+     */
+    private boolean areIntegers(Number number) {
+        return isInteger && number.isInteger;
     }
 
     @Override
     protected Number multiply(Number number) {
 
         if (number instanceof RNumber) {
-            return new RNumber(this.value.multiply(number.value).doubleValue());
+            if (areIntegers(number)) {
+                return new RNumber(doubleValue() * number.doubleValue());
+            }
+            return new RNumber(this.value().multiply(number.value()).doubleValue());
         }
         return new QNumber(this).multiply(number);
     }
@@ -64,7 +75,10 @@ public class RNumber extends Number {
     protected Number add(Number number) {
 
         if (number instanceof RNumber) {
-            return new RNumber(value.add(number.value).doubleValue());
+            if (areIntegers(number)) {
+                return new RNumber(doubleValue() + number.doubleValue());
+            }
+            return new RNumber(value().add(number.value()).doubleValue());
         }
         return new QNumber(this).add(number);
     }
@@ -73,7 +87,10 @@ public class RNumber extends Number {
     protected Number substract(Number number) {
 
         if (number instanceof RNumber) {
-            return new RNumber(value.subtract(number.value).doubleValue());
+            if (areIntegers(number)) {
+                return new RNumber(doubleValue() - number.doubleValue());
+            }
+            return new RNumber(value().subtract(number.value()).doubleValue());
         }
         return new QNumber(this).substract(number);
 
@@ -82,19 +99,26 @@ public class RNumber extends Number {
     @Override
     protected Number divide(Number exp) {
         if (exp instanceof RNumber) {
-            return new RNumber(value.divide(((RNumber) exp).value, mathContext).doubleValue());
+            // the quotient of integers that divide is exact as a double
+            if (areIntegers(exp) && !exp.isZero() && doubleValue() % exp.doubleValue() == 0) {
+                return new RNumber(doubleValue() / exp.doubleValue());
+            }
+            return new RNumber(value().divide(((RNumber) exp).value(), mathContext).doubleValue());
         }
-        return new QNumber(this).divide((QNumber) exp);
+        return new QNumber(this).divide(exp);
     }
 
     @Override
     public Number pow(Number exp) {
-        return new RNumber(pow(((Number) exp).value.doubleValue()).doubleValue());
+        if (isInexactWith(exp)) {
+            return inexact(Math.pow(doubleValue(), exp.doubleValue()), this, exp);
+        }
+        return new RNumber(pow(exp.doubleValue()).doubleValue());
     }
 
     @Override
     public String toString() {
-        return value.doubleValue() + "";
+        return doubleValue() + "";
     }
 
     @Override
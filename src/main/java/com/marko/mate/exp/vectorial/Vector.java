@@ -23,6 +23,7 @@ import com.marko.mate.exp.operation.binop.Pow;
 import com.marko.mate.exp.operation.binop.Sum;
 import com.marko.mate.exp.symbol.Symbol;
 import com.marko.mate.exp.symbol.Variable;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -98,11 +99,11 @@ public class Vector extends VectorialSpace {
             throw new ArithmeticException("Must have same size");
         }
 
-        Sum sum = new Sum();
+        Sum.Builder sum = new Sum.Builder();
         int i = 0;
 
         for (var exp : data[0]) {
-            sum.addExp(
+            sum.add(
                     new Multiplication(
                             exp,
                             vector.data[0][i++]
@@ -110,7 +111,7 @@ public class Vector extends VectorialSpace {
             );
         }
 
-        return new Vector(new Expression[]{sum.simplify()});
+        return new Vector(new Expression[]{sum.build().simplify()});
     }
 
     private Vector multiply(Number number) {
@@ -204,7 +205,7 @@ public class Vector extends VectorialSpace {
             newData[i++] = new Sum(
                     var,
                     new Multiplication(
-                            RNumber.parseRNumber("-1"),
+                            Number.valueOf(-1),
                             exp
                     )
             ).simplify();
@@ -233,7 +234,7 @@ public class Vector extends VectorialSpace {
             newData[i] = new Sum(
                     data[0][i],
                     new Multiplication(
-                            RNumber.parseRNumber("-1"),
+                            Number.valueOf(-1),
                             vector.data[0][i]
                     )
             ).simplify();
@@ -251,7 +252,7 @@ public class Vector extends VectorialSpace {
             newData[i++] = new Sum(
                     exp,
                     new Multiplication(
-                            RNumber.parseRNumber("-1"),
+                            Number.valueOf(-1),
                             number
                     )
             ).simplify();
@@ -265,13 +266,39 @@ public class Vector extends VectorialSpace {
         Expression[] newData = new Expression[data[0].length];
 
         int i = 0;
+        // the subexpressions shared by the entries are derived once
+        Map<Expression, Expression> derivatives = new HashMap<>();
         for (var exp : data[0]) {
-            newData[i++] = exp.derivate(var);
+            newData[i++] = exp.derivate(var, derivatives);
         }
 
         return new Vector(newData);
     }
 
+    /**
+     * <p>
+     * The jacobian matrix of this vector of functions, with a row for every
+     * entry and a column for every variable, whose entry {@code (i, j)} is
+     * the derivative of the entry {@code i} with respect to
+     * {@code vars[j]}. The subexpressions shared by the entries are derived
+     * once per variable.
+     *
+     * @param vars
+     * @return {@link Matrix}
+     */
+    public Matrix jacobian(Variable... vars) {
+        Expression[][] newData = new Expression[data[0].length][vars.length];
+
+        for (int j = 0; j < vars.length; j++) {
+            Map<Expression, Expression> derivatives = new HashMap<>();
+            for (int i = 0; i < data[0].length; i++) {
+                newData[i][j] = data[0][i].derivate(vars[j], derivatives).simplify();
+            }
+        }
+
+        return new Matrix(newData);
+    }
+
     @Override
     public boolean isZero() {
 
@@ -358,21 +385,18 @@ public class Vector extends VectorialSpace {
     }
 
     public Pow norm() {
-        Sum sum = new Sum();
+        Sum.Builder sum = new Sum.Builder();
         for (var exp : data[0]) {
-            sum.addExp(
+            sum.add(
                     new Pow(
                             exp,
-                            RNumber.parseRNumber("2")
+                            Number.valueOf(2)
                     ).simplify()
             );
         }
         return new Pow(
-                sum.simplify(),
-                new QNumber(
-                        RNumber.ONE,
-                        RNumber.parseRNumber("2")
-                ).simplify()
+                sum.build().simplify(),
+                Number.valueOf(1, 2)
         );
     }
 
@@ -415,8 +439,10 @@ public class Vector extends VectorialSpace {
         Expression[] newData = new Expression[data[0].length];
         int i = 0;
 
+        // the subexpressions shared by the entries are evaluated once
+        Map<Expression, Expression> values = new HashMap<>();
         for (var exp : data[0]) {
-            newData[i++] = exp.evaluate(point);
+            newData[i++] = exp.evaluate(point, values);
         }
 
         return new Vector(newData);
@@ -439,7 +465,7 @@ public class Vector extends VectorialSpace {
     public boolean hasNegative() {
 
         for (var exp : data[0]) {
-            if (((Number) exp).value.doubleValue() < 0) {
+            if (((Number) exp).doubleValue() < 0) {
                 return true;
             }
         }
@@ -449,7 +475,7 @@ public class Vector extends VectorialSpace {
 
     public boolean hasNegativeMinusLast() {
         for (int i = 0; i < data[0].length - 1; i++) {
-            if (((Number) data[0][i]).value.doubleValue() < 0) {
+            if (((Number) data[0][i]).doubleValue() < 0) {
                 return true;
             }
         }
@@ -476,12 +502,12 @@ public class Vector extends VectorialSpace {
         }
 
         Expression[] newData = new Expression[matrix.data[0].length];
-        Sum sum;
+        Sum.Builder sum;
 
         for (int i = 0; i < matrix.data[0].length; i++) {
-            sum = new Sum();
+            sum = new Sum.Builder();
             for (int j = 0; j < matrix.data.length; j++) {
-                sum.addExp(
+                sum.add(
                         new Multiplication(
                                 data[0][j],
                                 matrix.data[j][i]
@@ -489,7 +515,7 @@ public class Vector extends VectorialSpace {
                 );
 
             }
-            newData[i] = sum.simplify();
+            newData[i] = sum.build().simplify();
         }
 
         return new Vector(newData);
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp;
+
+import com.marko.mate.exp.operation.Operation;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.operation.unop.Cos;
+import com.marko.mate.exp.operation.unop.Sin;
+import com.marko.mate.exp.symbol.Variable;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ *
+ * @author Marcos
+ */
+public class ExpressionFactoryTest {
+
+    private static final Variable X = new Variable("x"),
+            Y = new Variable("y");
+
+    @Test(timeout = 10_000)
+    public void buildingASharedGraphIsLinear() {
+        // 2^60 nodes as a tree
+        ExpressionFactory factory = new ExpressionFactory();
+        Expression exp = factory.intern(X);
+        for (int i = 0; i < 60; i++) {
+            exp = factory.sum(factory.sin(exp), factory.cos(exp));
+        }
+        assertEquals(1 + 3 * 60, factory.size());
+        assertSame(exp, factory.intern(exp));
+    }
+
+    @Test(timeout = 10_000)
+    public void internOfASharedGraphVisitsEveryNodeOnce() {
+        // built without simplifying, which would copy every child
+        Expression exp = X;
+        for (int i = 0; i < 60; i++) {
+            exp = new Sum().withExpressions(exp, exp);
+        }
+        ExpressionFactory factory = new ExpressionFactory();
+        Operation canonical = (Operation) factory.intern(exp);
+        assertEquals(1 + 60, factory.size());
+        assertSame(canonical.getExpressions().get(0), canonical.getExpressions().get(1));
+    }
+
+    @Test
+    public void equalTreesAreTheSameInstance() {
+        ExpressionFactory factory = new ExpressionFactory();
+        Expression a = factory.intern(new Sum(new Sin(new Variable("x")), Y)),
+                b = factory.intern(new Sum(new Sin(new Variable("x")), Y));
+        assertSame(a, b);
+    }
+
+    @Test
+    public void permutationsAreNotShared() {
+        ExpressionFactory factory = new ExpressionFactory();
+        Expression a = factory.sum(X, Y),
+                b = factory.sum(Y, X);
+        assertEquals(a, b);
+        assertNotSame(a, b);
+    }
+
+}
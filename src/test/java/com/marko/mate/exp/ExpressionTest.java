@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp;
+
+import com.marko.mate.exp.compile.CompiledExpression;
+import com.marko.mate.exp.operation.binop.Division;
+import com.marko.mate.exp.operation.binop.Multiplication;
+import com.marko.mate.exp.operation.binop.Pow;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.operation.unop.Cos;
+import com.marko.mate.exp.operation.unop.Ln;
+import com.marko.mate.exp.operation.unop.Log10;
+import com.marko.mate.exp.operation.unop.Sin;
+import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.symbol.Variable;
+import com.marko.mate.exp.vectorial.Number;
+import com.marko.mate.exp.vectorial.RNumber;
+import com.marko.mate.exp.vectorial.Space;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author Marcos
+ */
+public class ExpressionTest {
+
+    private static final Variable X = new Variable("x"),
+            Y = new Variable("y");
+
+    /**
+     * x^2 * Sin[y] + Cos[x] / (y + 3) - Ln[x] + Log10[y]
+     */
+    private static Expression expression() {
+        return new Sum(
+                new Multiplication(new Pow(X, new RNumber(2)), new Sin(Y)),
+                new Division(new Cos(X), new Sum(Y, new RNumber(3))),
+                new Multiplication(new RNumber(-1), new Ln(X)),
+                new Log10(Y)
+        );
+    }
+
+    @Test
+    public void compiledExpressionMatchesEvaluate() {
+        CompiledExpression f = expression().compile(X, Y);
+        // below 3, so the evaluated powers are numbers
+        for (double x = 0.5; x < 3; x += 0.25) {
+            for (double y = 0.25; y < 5; y += 0.5) {
+                Map<Symbol, Space> point = new HashMap<>();
+                point.put(X, new RNumber(x));
+                point.put(Y, new RNumber(y));
+                double expected = ((Number) expression().evaluate(point)).value().doubleValue();
+                // the exact numbers have 7 digits
+                assertEquals(expected, f.evaluate(new double[]{x, y}),
+                        1e-5 * Math.max(1, Math.abs(expected)));
+            }
+        }
+    }
+
+    @Test
+    public void symbolsAreReadInTheOrderTheyAreBound() {
+        CompiledExpression f = new Division(X, Y).compile(Y, X);
+        assertEquals(2, f.evaluate(new double[]{3, 6}), 0);
+    }
+
+    @Test
+    public void batchIsBitIdenticalToCompile() {
+        // more rows than a chunk, and not a multiple of it
+        int rows = 5000;
+        Random random = new Random(42);
+        double[] xs = new double[rows], ys = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            xs[i] = 0.01 + 100 * random.nextDouble();
+            ys[i] = 0.01 + 100 * random.nextDouble();
+        }
+        Map<Variable, double[]> columns = new HashMap<>();
+        columns.put(X, xs);
+        columns.put(Y, ys);
+        double[] out = new double[rows];
+        expression().evaluateBatch(columns, out);
+
+        CompiledExpression f = expression().compile(X, Y);
+        for (int i = 0; i < rows; i++) {
+            double expected = f.evaluate(new double[]{xs[i], ys[i]});
+            assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(out[i]));
+        }
+    }
+
+    @Test
+    public void parallelBatchIsBitIdenticalToSequential() {
+        // many tasks, and a last one shorter than a chunk
+        int rows = 100_003;
+        Random random = new Random(7);
+        double[] xs = new double[rows], ys = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            xs[i] = 0.01 + 100 * random.nextDouble();
+            ys[i] = 0.01 + 100 * random.nextDouble();
+        }
+        Map<Variable, double[]> columns = new HashMap<>();
+        columns.put(X, xs);
+        columns.put(Y, ys);
+        double[] sequential = new double[rows],
+                parallel = new double[rows],
+                pooled = new double[rows];
+        expression().evaluateBatch(columns, sequential);
+        expression().evaluateBatch(columns, parallel, 4);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            expression().evaluateBatch(columns, pooled, pool);
+        } finally {
+            pool.shutdown();
+        }
+        for (int i = 0; i < rows; i++) {
+            assertEquals(Double.doubleToRawLongBits(sequential[i]), Double.doubleToRawLongBits(parallel[i]));
+            assertEquals(Double.doubleToRawLongBits(sequential[i]), Double.doubleToRawLongBits(pooled[i]));
+        }
+    }
+
+    @Test
+    public void simplifyDoesNotModifyTheExpression() {
+        // the nested sums and multiplications are flattened into new ones
+        Sum sum = new Sum(X, new Sum(Y, new RNumber(2)));
+        Multiplication product = new Multiplication(X, new Multiplication(Y, new RNumber(2)));
+        String sumString = sum.toString(),
+                productString = product.toString();
+        sum.simplify();
+        product.simplify();
+        assertEquals(sumString, sum.toString());
+        assertEquals(productString, product.toString());
+        assertEquals(2, sum.getExpressions().size());
+        assertEquals(2, product.getExpressions().size());
+    }
+
+    @Test
+    public void batchKeepsTheSignOfZero() {
+        Map<Variable, double[]> columns = new HashMap<>();
+        columns.put(X, new double[]{-0.0});
+        columns.put(Y, new double[]{-0.0});
+        double[] out = new double[1];
+        new Sum(X, Y).evaluateBatch(columns, out);
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(out[0]));
+        assertEquals(Double.doubleToRawLongBits(-0.0),
+                Double.doubleToRawLongBits(new Sum(X, Y).compile(X, Y).evaluate(new double[]{-0.0, -0.0})));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unboundSymbolCannotBeCompiled() {
+        new Sum(X, Y).compile(X);
+    }
+
+    @Test
+    public void equalSubexpressionsAreEvaluatedOnce() {
+        Map<Symbol, Space> point = new HashMap<>();
+        point.put(X, new RNumber(2));
+        point.put(Y, new RNumber(3));
+        Map<Expression, Expression> values = new HashMap<>();
+        // a value already in the map is used instead of evaluating again
+        values.put(new Sin(Y), new RNumber(10));
+        Expression exp = new Sum(new Multiplication(X, new Sin(Y)), new Sin(Y));
+        assertEquals(0, new RNumber(30).compareTo((Number) exp.evaluate(point, values)));
+        // the value of every distinct operation is kept
+        assertEquals(3, values.size());
+        assertEquals(0, new RNumber(20).compareTo((Number) values.get(new Multiplication(X, new Sin(Y)))));
+    }
+
+    @Test
+    public void sharedEvaluationMatchesEvaluate() {
+        Map<Symbol, Space> point = new HashMap<>();
+        point.put(X, new RNumber(1.5));
+        point.put(Y, new RNumber(0.5));
+        Map<Expression, Expression> values = new HashMap<>();
+        Number shared = (Number) expression().evaluate(point, values),
+                again = (Number) expression().evaluate(point, values);
+        assertEquals(0, ((Number) expression().evaluate(point)).compareTo(shared));
+        assertEquals(0, shared.compareTo(again));
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.compile;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.binop.Multiplication;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.operation.unop.Cos;
+import com.marko.mate.exp.operation.unop.Sin;
+import com.marko.mate.exp.symbol.Variable;
+import com.marko.mate.exp.vectorial.RNumber;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Marcos
+ */
+public class BytecodeCompilerTest {
+
+    private static final Variable X = new Variable("x");
+
+    private static boolean isGenerated(CompiledExpression compiled) {
+        return compiled.getClass().getName().contains("GeneratedExpression");
+    }
+
+    @Test(timeout = 10_000)
+    public void sharedSubexpressionsAreEmittedOnce() {
+        // 2^40 nodes as a tree, 121 as a graph, built without simplifying,
+        // which would copy every child
+        Expression exp = X;
+        for (int i = 0; i < 40; i++) {
+            Expression sum = new Sum().withExpressions(exp, exp);
+            exp = new Multiplication().withExpressions(new RNumber(0.5), sum);
+        }
+        CompiledExpression compiled = BytecodeCompiler.compile(exp, X);
+        assertTrue(isGenerated(compiled));
+        assertEquals(0.3, compiled.evaluate(new double[]{0.3}), 0);
+    }
+
+    @Test(timeout = 10_000)
+    public void hugeSharedGraphFallsBackWithoutExpanding() {
+        // even emitted once, the 1000 angles are too long for the JIT
+        Expression[] terms = new Expression[1000];
+        for (int i = 0; i < terms.length; i++) {
+            Expression angle = new Multiplication(X, new RNumber(i + 2));
+            terms[i] = new Sum(new Sin(angle), new Cos(angle));
+        }
+        Expression exp = new Sum(terms);
+        CompiledExpression compiled = BytecodeCompiler.compile(exp, X);
+        assertFalse(isGenerated(compiled));
+    }
+
+    @Test
+    public void treeMatchesCompile() {
+        Expression exp = new Sum(new Multiplication(X, X), new Sin(new Multiplication(X, X)),
+                new RNumber(2));
+        double[] point = {1.7};
+        assertEquals(exp.compile(X).evaluate(point),
+                BytecodeCompiler.compile(exp, X).evaluate(point), 0);
+    }
+
+}
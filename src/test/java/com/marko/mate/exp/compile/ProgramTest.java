@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.compile;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.Operation;
+import com.marko.mate.exp.operation.binop.Division;
+import com.marko.mate.exp.operation.binop.Multiplication;
+import com.marko.mate.exp.operation.binop.Pow;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.operation.unop.Cos;
+import com.marko.mate.exp.operation.unop.Ln;
+import com.marko.mate.exp.operation.unop.Log10;
+import com.marko.mate.exp.operation.unop.Sin;
+import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.symbol.Variable;
+import com.marko.mate.exp.vectorial.DNumber;
+import com.marko.mate.exp.vectorial.Matrix;
+import com.marko.mate.exp.vectorial.Number;
+import com.marko.mate.exp.vectorial.RNumber;
+import com.marko.mate.exp.vectorial.Space;
+import com.marko.mate.exp.vectorial.Vector;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Marcos
+ */
+public class ProgramTest {
+
+    private static final Variable X = new Variable("x"),
+            Y = new Variable("y");
+
+    private static final double[] POINT = {1.3, 0.7},
+            VECTOR = {0.4, -1.1};
+
+    /**
+     * @return an expression with every instruction: a sum, products,
+     * divisions, a power with a variable exponent, the trigonometric
+     * functions and both logarithms
+     */
+    private static Expression mixed() {
+        return new Sum(
+                new Division(new Multiplication(X, Y), new Sum(X, new RNumber(1))),
+                new Multiplication(new Ln(X), new Log10(new Sum(Y, new RNumber(2)))),
+                new Pow(X, Y),
+                new Multiplication(new Sin(new Multiplication(X, Y)), new Cos(new Division(X, Y))));
+    }
+
+    private static double value(Program program, double[] point) {
+        double[] out = new double[1];
+        program.evaluate(point, out);
+        return out[0];
+    }
+
+    /**
+     * @return an expression whose symbolic derivatives are the ones of its
+     * values, with the trigonometric functions, a logarithm, products, a
+     * division and a power
+     */
+    private static Operation smooth() {
+        return new Sum(
+                new Multiplication(new Sin(new Multiplication(X, Y)), new Cos(X)),
+                new Multiplication(new Ln(X), Y, Y),
+                new Division(X, Y),
+                new Pow(X, new RNumber(3)));
+    }
+
+    /**
+     * @return the coordinates of {@link #POINT} in the order of the variables,
+     * also put in the point
+     */
+    private static double[] values(List<Variable> vars, Map<Symbol, Space> point) {
+        double[] values = new double[vars.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = POINT[vars.get(i) == X ? 0 : 1];
+            point.put(vars.get(i), new DNumber(values[i]));
+        }
+        return values;
+    }
+
+    /**
+     * @return the point moved by h times the vector
+     */
+    private static double[] move(double[] point, double[] vector, double h) {
+        double[] moved = point.clone();
+        for (int i = 0; i < moved.length; i++) {
+            moved[i] += h * vector[i];
+        }
+        return moved;
+    }
+
+    private static void assertClose(double expected, double actual, double tolerance) {
+        assertEquals(expected, actual, tolerance * Math.max(1, Math.abs(expected)));
+    }
+
+    @Test
+    public void sharedSubexpressionsAreLoweredOnce() {
+        // every entry is built again, so they share only equal subexpressions
+        Expression[] exprs = {mixed(), new Multiplication(mixed(), X), new Sin(mixed())};
+        Program shared = Program.of(exprs, X, Y);
+        assertEquals(3, shared.outputs());
+        int separate = 0;
+        for (var exp : exprs) {
+            separate += Program.of(exp, X, Y).size();
+        }
+        // mixed() is lowered once, and the other two add a few instructions
+        assertTrue(shared.size() + " instructions", shared.size() < separate / 2);
+    }
+
+    @Test
+    public void sharedOutputsAreBitIdenticalToSeparatePrograms() {
+        Expression[] exprs = {mixed(), new Multiplication(mixed(), X), new Sin(mixed()),
+            new Multiplication(Y, X), new Multiplication(X, Y)};
+        Program shared = Program.of(exprs, X, Y);
+        double[] out = new double[exprs.length];
+        shared.evaluate(POINT, out);
+        for (int i = 0; i < exprs.length; i++) {
+            double expected = value(Program.of(exprs[i], X, Y), POINT);
+            assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(out[i]));
+        }
+    }
+
+    @Test
+    public void batchHasAColumnPerOutput() {
+        Expression[] exprs = {mixed(), new Sin(mixed())};
+        Program shared = Program.of(exprs, X, Y);
+        int rows = 3000;
+        double[][] columns = new double[2][rows];
+        for (int i = 0; i < rows; i++) {
+            columns[0][i] = 0.5 + i / 1000.0;
+            columns[1][i] = 2 - i / 2000.0;
+        }
+        double[][] out = new double[2][rows];
+        shared.evaluateBatch(columns, out);
+        double[] point = new double[2], single = new double[2];
+        for (int i = 0; i < rows; i++) {
+            point[0] = columns[0][i];
+            point[1] = columns[1][i];
+            shared.evaluate(point, single);
+            assertEquals(Double.doubleToRawLongBits(single[0]), Double.doubleToRawLongBits(out[0][i]));
+            assertEquals(Double.doubleToRawLongBits(single[1]), Double.doubleToRawLongBits(out[1][i]));
+        }
+    }
+
+    @Test
+    public void derivativesMatchFiniteDifferences() {
+        Program program = Program.of(mixed(), X, Y);
+        double h = 1e-6;
+        double[] gradient = new double[2];
+        assertClose(value(program, POINT), program.gradient(POINT, gradient), 1e-15);
+        for (int i = 0; i < gradient.length; i++) {
+            double[] direction = new double[2];
+            direction[i] = 1;
+            double difference = (value(program, move(POINT, direction, h))
+                    - value(program, move(POINT, direction, -h))) / (2 * h);
+            assertClose(difference, gradient[i], 1e-8);
+        }
+        // the derivative in a direction is the gradient times the direction
+        double[] out = new double[1], tangents = new double[1];
+        program.derivative(POINT, VECTOR, out, tangents);
+        assertClose(value(program, POINT), out[0], 1e-15);
+        assertClose(gradient[0] * VECTOR[0] + gradient[1] * VECTOR[1], tangents[0], 1e-13);
+    }
+
+    @Test
+    public void forwardAndReverseModesAgree() {
+        Program program = Program.of(mixed(), X, Y);
+        double[] gradient = new double[2];
+        program.gradient(POINT, gradient);
+        for (int i = 0; i < gradient.length; i++) {
+            double[] direction = new double[2], out = new double[1], tangents = new double[1];
+            direction[i] = 1;
+            program.derivative(POINT, direction, out, tangents);
+            assertClose(gradient[i], tangents[0], 1e-14);
+        }
+    }
+
+    @Test
+    public void gradientMatchesTheSymbolicGradient() {
+        Operation exp = smooth();
+        Map<Symbol, Space> point = new HashMap<>();
+        double[] values = values(exp.getVars(), point);
+        Vector symbolic = exp.gradient();
+        double[] gradient = exp.gradient(values);
+        for (int i = 0; i < gradient.length; i++) {
+            double expected = ((Number) symbolic.getExpAt(i).evaluate(point)).doubleValue();
+            assertClose(expected, gradient[i], 1e-12);
+        }
+    }
+
+    @Test
+    public void derivativeMatchesTheSymbolicDerivative() {
+        Operation exp = smooth();
+        Map<Symbol, Space> point = new HashMap<>();
+        double[] values = values(exp.getVars(), point);
+        for (var var : exp.getVars()) {
+            double expected = ((Number) exp.derivate(var).evaluate(point)).doubleValue();
+            assertClose(expected, exp.derivative(var, values), 1e-12);
+        }
+        assertEquals(0, exp.derivative(new Variable("z"), values), 0);
+    }
+
+    @Test
+    public void hessianVectorProductMatchesFiniteDifferences() {
+        Program program = Program.of(mixed(), X, Y);
+        double h = 1e-5;
+        double[] product = new double[2],
+                after = new double[2],
+                before = new double[2];
+        assertClose(value(program, POINT), program.hessianVectorProduct(POINT, VECTOR, product), 1e-15);
+        program.gradient(move(POINT, VECTOR, h), after);
+        program.gradient(move(POINT, VECTOR, -h), before);
+        for (int i = 0; i < product.length; i++) {
+            assertClose((after[i] - before[i]) / (2 * h), product[i], 1e-7);
+        }
+    }
+
+    @Test
+    public void hessianVectorProductMatchesTheSymbolicHessian() {
+        Operation exp = smooth();
+        Map<Symbol, Space> point = new HashMap<>();
+        double[] values = values(exp.getVars(), point);
+        Matrix hessian = exp.hessian();
+        double[] product = exp.hessianVectorProduct(values, VECTOR);
+        for (int i = 0; i < product.length; i++) {
+            double expected = 0;
+            for (int j = 0; j < VECTOR.length; j++) {
+                expected += ((Number) hessian.getExpAt(i, j).evaluate(point)).doubleValue() * VECTOR[j];
+            }
+            assertClose(expected, product[i], 1e-12);
+        }
+    }
+
+    private static final Number BIG = Number.valueOf(10_000_000_000_000_000L);
+
+    /**
+     * @return (1e16 + x) - 1e16, whose sum loses the digits of x
+     */
+    private static Program cancellation() {
+        Expression exp = new Sum(new Sum(BIG, X), new Multiplication(Number.valueOf(-1), BIG));
+        return Program.of(exp, X);
+    }
+
+    @Test
+    public void derivativeOfPowerZeroIsZeroAtZero() {
+        Program program = Program.of(new Pow(X, new RNumber(0)), X);
+        double[] out = new double[1], tangents = new double[1];
+        program.derivative(new double[]{0}, new double[]{1}, out, tangents);
+        assertEquals(1, out[0], 0);
+        assertEquals(0, tangents[0], 0);
+    }
+
+    @Test
+    public void gradientOfPowerZeroIsZeroAtZero() {
+        Program program = Program.of(new Pow(X, new RNumber(0)), X);
+        double[] gradient = new double[1];
+        assertEquals(1, program.gradient(new double[]{0}, gradient), 0);
+        assertEquals(0, gradient[0], 0);
+    }
+
+    @Test
+    public void hessianOfPowerZeroIsZeroAtZero() {
+        Program program = Program.of(new Multiplication(X, new Pow(X, new RNumber(0))), X);
+        double[] product = new double[1];
+        assertEquals(0, program.hessianVectorProduct(new double[]{0}, new double[]{1}, product), 0);
+        assertEquals(0, product[0], 0);
+    }
+
+    @Test
+    public void wellConditionedPointsUseTheDoubles() {
+        Program program = Program.of(new Sum(new Multiplication(X, X), Number.valueOf(1, 2)), X);
+        Number[] out = program.evaluate(new Number[]{new DNumber(3)}, Precision.DEFAULT);
+        assertTrue(out[0] instanceof DNumber);
+        assertEquals(9.5, out[0].doubleValue(), 0);
+    }
+
+    @Test
+    public void cancellationFallsBackToMoreDigits() {
+        double[] out = new double[1];
+        cancellation().evaluate(new double[]{1.5}, out, Precision.DEFAULT);
+        assertEquals(1.5, out[0], 0);
+        Number[] exact = cancellation().evaluate(new Number[]{new DNumber(1.5)}, Precision.DEFAULT);
+        assertEquals(0, new BigDecimal("1.5").compareTo(exact[0].value(MathContext.DECIMAL128)));
+        // the doubles alone round the sum to an even number
+        cancellation().evaluate(new double[]{1.5}, out);
+        assertEquals(2, out[0], 0);
+    }
+
+    @Test
+    public void toleranceDecidesTheFallback() {
+        // the bound of the error of the doubles is about 2, as large as the
+        // value itself, so a tolerance of 100% accepts it
+        Number[] out = cancellation().evaluate(new Number[]{new DNumber(1.5)},
+                new Precision(MathContext.DECIMAL64, 1));
+        assertTrue(out[0] instanceof DNumber);
+        assertEquals(2, out[0].doubleValue(), 0);
+    }
+
+    @Test
+    public void resultsKeepAllTheDigitsOfThePrecision() {
+        // a third has as many digits as the precision, more than a double-double
+        Number third = Number.valueOf(1, 3);
+        Number[] out = cancellation().evaluate(new Number[]{third},
+                new Precision(new MathContext(100), 0, 100));
+        BigDecimal error = out[0].value(new MathContext(120))
+                .subtract(third.value(new MathContext(120))).abs();
+        assertTrue(error.toString(), error.compareTo(new BigDecimal("1e-60")) < 0);
+    }
+
+    @Test
+    public void zeroOutputsUseAnAbsoluteTolerance() {
+        // the bound of the error of the product is not zero, so no relative
+        // error is small enough for the sum, which is zero
+        Program program = Program.of(new Sum(X, new Multiplication(Number.valueOf(-1), X)), X);
+        Number[] out = program.evaluate(new Number[]{new DNumber(0.3)}, Precision.DEFAULT);
+        assertTrue(out[0] instanceof DNumber);
+        assertEquals(0, out[0].doubleValue(), Precision.DEFAULT.getTolerance());
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void pointsThatAreNotFiniteAreNotRealNumbers() {
+        cancellation().evaluate(new double[]{Double.NaN}, new double[1], Precision.DEFAULT);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void constantsThatAreNotFiniteAreNotRealNumbers() {
+        // both numbers overflow to the same double, so only the double is known
+        Expression exp = new Sum(Number.valueOf(new BigDecimal("1e400")),
+                Number.valueOf(new BigDecimal("2e400")), X);
+        Program.of(exp, X).evaluate(new double[]{1}, new double[1], Precision.DEFAULT);
+    }
+
+}
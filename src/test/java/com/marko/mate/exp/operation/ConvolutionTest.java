@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.operation;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.Convolution.Kernel;
+import com.marko.mate.exp.operation.binop.Multiplication;
+import com.marko.mate.exp.operation.binop.Pow;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.symbol.Variable;
+import com.marko.mate.exp.vectorial.RNumber;
+import java.math.BigInteger;
+import java.util.Arrays;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author Marcos
+ */
+public class ConvolutionTest {
+
+    private static final Variable X = new Variable("x");
+
+    /**
+     * @return the coefficients of (x + sign)^n, from the lowest degree
+     */
+    private static BigInteger[] binomials(int n, int sign) {
+        BigInteger[] binomials = new BigInteger[n + 1];
+        binomials[0] = BigInteger.ONE;
+        for (int k = 1; k <= n; k++) {
+            binomials[k] = binomials[k - 1].multiply(BigInteger.valueOf(n - k + 1))
+                    .divide(BigInteger.valueOf(k));
+        }
+        // the coefficient of x^k is multiplied by sign^(n - k)
+        for (int k = n - 1; k >= 0; k -= 2) {
+            binomials[k] = binomials[k].multiply(BigInteger.valueOf(sign));
+        }
+        return binomials;
+    }
+
+    private static BigInteger[] constants(int length, long value) {
+        BigInteger[] constants = new BigInteger[length];
+        Arrays.fill(constants, BigInteger.valueOf(value));
+        return constants;
+    }
+
+    /**
+     * @return the sum of the powers of x below the degree
+     */
+    private static Expression geometric(int degree) {
+        Expression[] powers = new Expression[degree];
+        for (int i = 0; i < degree; i++) {
+            powers[i] = new Pow(X, new RNumber(i));
+        }
+        return new Sum(powers);
+    }
+
+    /**
+     * @return the nonzero coefficients of the polynomial in x, from the
+     * lowest degree
+     */
+    private static BigInteger[] coefficients(Expression exp) {
+        Polynomial polynomial = Polynomial.of(exp);
+        assertEquals(BigInteger.ONE, polynomial.getDenominator());
+        BigInteger[] coefficients = new BigInteger[polynomial.size()];
+        for (int i = 0; i < coefficients.length; i++) {
+            coefficients[i] = polynomial.getNumerator(coefficients.length - 1 - i);
+        }
+        return coefficients;
+    }
+
+    @Test
+    public void shortPolynomialsAreMultipliedTermByTerm() {
+        BigInteger[] half = binomials(25, 1);
+        assertEquals(Kernel.SCHOOLBOOK, Convolution.kernel(half, half));
+        assertArrayEquals(binomials(50, 1), Convolution.multiply(half, half));
+    }
+
+    @Test
+    public void longProductsUseKaratsuba() {
+        assertEquals(Kernel.KARATSUBA, Convolution.kernel(constants(64, 1), constants(64, 1)));
+        BigInteger[] expected = new BigInteger[127];
+        for (int k = 0; k < expected.length; k++) {
+            expected[k] = BigInteger.valueOf(Math.min(k + 1, 127 - k));
+        }
+        Expression expanded = new Multiplication(geometric(64), geometric(64)).expand();
+        assertArrayEquals(expected, coefficients(expanded));
+    }
+
+    @Test
+    public void karatsubaIsExactUpTo2To53() {
+        // the sums of the absolute values are 2^26, so the product of the
+        // sums is 2^52
+        BigInteger[] a = constants(32, 1 << 21);
+        a[7] = a[7].negate();
+        assertEquals(Kernel.KARATSUBA, Convolution.kernel(a, a));
+        assertArrayEquals(Convolution.schoolbook(a, a), Convolution.multiply(a, a));
+        // a sum 95/64 times greater doesn't fit
+        BigInteger[] b = a.clone();
+        b[0] = b[0].shiftLeft(6);
+        assertEquals(Kernel.BIG_INTEGER, Convolution.kernel(a, b));
+        assertArrayEquals(Convolution.schoolbook(a, b), Convolution.multiply(a, b));
+    }
+
+    @Test
+    public void veryLongProductsUseTheTransform() {
+        assertEquals(Kernel.FFT, Convolution.kernel(constants(300, 1), constants(300, 1)));
+        BigInteger[] expected = new BigInteger[599];
+        for (int k = 0; k < expected.length; k++) {
+            expected[k] = BigInteger.valueOf(Math.min(k + 1, 599 - k));
+        }
+        Expression expanded = new Multiplication(geometric(300), geometric(300)).expand();
+        assertArrayEquals(expected, coefficients(expanded));
+    }
+
+    @Test
+    public void largePowersAreExactWithBigIntegers() {
+        BigInteger[] half = binomials(35, 1);
+        assertEquals(Kernel.BIG_INTEGER, Convolution.kernel(half, half));
+        assertArrayEquals(binomials(70, 1), Convolution.multiply(half, half));
+        // C(70, 35) = 112186277816662845432 is far beyond 2^53
+        BigInteger[] power = coefficients(new Pow(new Sum(X, RNumber.ONE), new RNumber(70)));
+        assertArrayEquals(binomials(70, 1), power);
+        assertEquals(new BigInteger("112186277816662845432"), power[35]);
+    }
+
+    @Test
+    public void cancellationsAreExactWithBigIntegers() {
+        BigInteger[] plus = binomials(50, 1), minus = binomials(50, -1);
+        assertEquals(Kernel.BIG_INTEGER, Convolution.kernel(plus, minus));
+        // (x + 1)^50 * (x - 1)^50 = (x^2 - 1)^50
+        BigInteger[] product = Convolution.multiply(plus, minus),
+                expected = binomials(50, -1);
+        for (int k = 0; k < product.length; k++) {
+            assertEquals(k % 2 == 0 ? expected[k / 2] : BigInteger.ZERO, product[k]);
+        }
+        assertArrayEquals(expected, coefficients(new Multiplication(
+                new Pow(new Sum(X, RNumber.ONE), new RNumber(50)),
+                new Pow(new Sum(X, new RNumber(-1)), new RNumber(50)))));
+    }
+
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.operation;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.binop.Division;
+import com.marko.mate.exp.operation.binop.Multiplication;
+import com.marko.mate.exp.operation.binop.Pow;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.operation.unop.Cos;
+import com.marko.mate.exp.operation.unop.Ln;
+import com.marko.mate.exp.operation.unop.Sin;
+import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.symbol.Variable;
+import com.marko.mate.exp.vectorial.Matrix;
+import com.marko.mate.exp.vectorial.Number;
+import com.marko.mate.exp.vectorial.QNumber;
+import com.marko.mate.exp.vectorial.RNumber;
+import com.marko.mate.exp.vectorial.Space;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Marcos
+ */
+public class OperationTest {
+
+    private static final Variable X = new Variable("x");
+    private static final Variable Y = new Variable("y");
+    private static final Variable Z = new Variable("z");
+
+    /**
+     * @return a random expression of at most the given depth, with the
+     * variables x, y and z and the integers from 2 to 9 as leaves, and small
+     * exponents so the numbers stay finite
+     */
+    private static Expression random(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    return X;
+                case 1:
+                    return Y;
+                case 2:
+                    return Z;
+                default:
+                    return new RNumber(2 + random.nextInt(8));
+            }
+        }
+        switch (random.nextInt(7)) {
+            case 0:
+                return new Sum(random(random, depth - 1), random(random, depth - 1));
+            case 1:
+                return new Multiplication(random(random, depth - 1), random(random, depth - 1),
+                        random(random, depth - 1));
+            case 2:
+                return new Division(random(random, depth - 1), random(random, depth - 1));
+            case 3:
+                return new Pow(random(random, depth - 1), new RNumber(2 + random.nextInt(3)));
+            case 4:
+                return new Sin(random(random, depth - 1));
+            case 5:
+                return new Cos(random(random, depth - 1));
+            default:
+                return new Ln(random(random, depth - 1));
+        }
+    }
+
+    /**
+     * An operation of two expressions, to build trees that share their
+     * subtrees. It counts how many times the operations are simplified.
+     */
+    private static final class Pair extends Operation {
+
+        private static int visits;
+
+        Pair(Expression a, Expression b) {
+            super(new Expression[]{a, b}, false);
+        }
+
+        @Override
+        public Pair withExpressions(Expression... exprs) {
+            return new Pair(exprs[0], exprs[1]);
+        }
+
+        @Override
+        protected Expression simplifyOperation() {
+            visits++;
+            return new Pair(exprs[0].simplify(), exprs[1].simplify());
+        }
+
+        @Override
+        protected Expression derivateOperation(Variable var, Map<Expression, Expression> derivatives) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Expression apply(Expression... values) {
+            return new Pair(values[0], values[1]);
+        }
+
+        @Override
+        public boolean isZero() {
+            return false;
+        }
+
+    }
+
+    /**
+     * @return a tree of the given depth whose two children at every level
+     * are the same instance, so it has 2^depth leaves but depth + 1 nodes
+     */
+    private static Expression shared(int depth) {
+        Expression exp = X;
+        for (int i = 0; i < depth; i++) {
+            exp = new Pair(exp, exp);
+        }
+        return exp;
+    }
+
+    @Test
+    public void randomTreesRarelyCollide() {
+        Random random = new Random(8);
+        Set<Expression> trees = new HashSet<>();
+        while (trees.size() < 50_000) {
+            try {
+                Expression tree = random(random, 5);
+                if (tree instanceof Operation) {
+                    trees.add(tree);
+                }
+            } catch (IllegalStateException ex) {
+                // a denominator made only of numbers was zero, as sin(180)
+            }
+        }
+        Map<Integer, Integer> buckets = new HashMap<>();
+        for (var tree : trees) {
+            buckets.merge(tree.hashCode(), 1, Integer::sum);
+        }
+        int largest = buckets.values().stream().max(Integer::compare).get();
+        // 50000 random 32 bit hashes collide less than once on average, so a
+        // few collisions are chance and more are a weakness of the hash
+        int collisions = trees.size() - buckets.size();
+        assertTrue(collisions + " collisions in " + trees.size() + " trees", collisions <= 5);
+        assertTrue("a bucket with " + largest + " trees", largest <= 2);
+    }
+
+    @Test
+    public void commutativeOperationsHashTheirExpressionsInAnyOrder() {
+        Expression sin = new Sin(X);
+        assertEquals(new Sum(X, Y, sin).hashCode(), new Sum(sin, X, Y).hashCode());
+        assertEquals(new Multiplication(X, Y, sin).hashCode(),
+                new Multiplication(Y, sin, X).hashCode());
+        assertNotEquals(new Division(X, Y).hashCode(), new Division(Y, X).hashCode());
+        assertNotEquals(new Pow(X, Y).hashCode(), new Pow(Y, X).hashCode());
+    }
+
+    @Test
+    public void commutativeOperationsAreEqualInAnyOrder() {
+        Expression sin = new Sin(X);
+        assertEquals(new Sum(X, Y, sin), new Sum(sin, X, Y));
+        assertEquals(new Multiplication(X, Y, sin), new Multiplication(Y, sin, X));
+        assertNotEquals(new Division(X, Y), new Division(Y, X));
+        assertNotEquals(new Pow(X, Y), new Pow(Y, X));
+        // the same expressions, but not as many times
+        assertNotEquals(new Sum(X, X, Y), new Sum(X, Y, Y));
+    }
+
+    @Test
+    public void theTypeOfTheOperationIsHashed() {
+        assertNotEquals(new Sum(X, Y).hashCode(), new Multiplication(X, Y).hashCode());
+        assertNotEquals(new Sin(X).hashCode(), new Cos(X).hashCode());
+        // repeated expressions don't cancel each other
+        assertNotEquals(new Sum(X, X).hashCode(), new Sum(Y, Y).hashCode());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void expressionsCannotBeModified() {
+        new Sum(X, Y).getExpressions().add(Z);
+    }
+
+    @Test
+    public void buildersKeepTheirExpressionsInOrder() {
+        Expression sin = new Sin(X);
+        Sum sum = new Sum.Builder().add(sin).add(Y).add(X).build();
+        assertEquals(Arrays.asList(sin, Y, X), sum.getExpressions());
+        Multiplication product = new Multiplication.Builder().add(Y).add(sin).build();
+        assertEquals(Arrays.asList(Y, sin), product.getExpressions());
+    }
+
+    @Test
+    public void simplifyIsComputedOnce() {
+        Expression product = new Multiplication(new Sum(X, new RNumber(2), new RNumber(3)), Y);
+        Expression simplified = product.simplify();
+        assertSame(simplified, product.simplify());
+    }
+
+    @Test
+    public void everyNodeIsSimplifiedOnce() {
+        Expression exp = shared(60);
+        Pair.visits = 0;
+        // without the memo, the 2^60 - 1 operations of the tree
+        assertSame(exp, exp.simplify());
+        assertEquals(60, Pair.visits);
+        assertSame(exp, exp.simplify());
+        assertEquals(60, Pair.visits);
+    }
+
+    @Test
+    public void anExpressionInNormalFormIsItsOwnSimplification() {
+        Operation sin = new Sin(X),
+                product = new Multiplication(Y, sin);
+        assertSame(sin, sin.simplify());
+        assertTrue(sin.isSimplified());
+        assertSame(product, product.simplify());
+        assertTrue(product.isSimplified());
+        assertSame(product, product.simplify().simplify());
+        Operation reducible = new Pow(X, new Sum(new RNumber(1), new RNumber(1)));
+        assertFalse(reducible.isSimplified());
+    }
+
+    @Test
+    public void likeTermsAreCollected() {
+        Expression sum = new Sum().withExpressions(
+                new Multiplication().withExpressions(new RNumber(2), X), Y,
+                new Multiplication().withExpressions(new RNumber(3), X), new RNumber(1),
+                new RNumber(4), new Multiplication().withExpressions(new RNumber(-1), Y));
+        assertEquals("(5.0 + (5.0 * x))", sum.simplify().toString());
+        Expression opposite = new Sum().withExpressions(new Sin(X),
+                new Multiplication().withExpressions(new RNumber(-1), new Sin(X)));
+        assertEquals(0, ((Number) opposite.simplify()).value().signum());
+    }
+
+    @Test
+    public void likeFactorsAreCollected() {
+        Expression product = new Multiplication().withExpressions(new RNumber(2), X, Y,
+                new Pow(X, new RNumber(2)), new RNumber(3));
+        assertEquals("(6.0 * (x)^(3.0) * y)", product.simplify().toString());
+        Expression symbolic = new Multiplication().withExpressions(new Pow(X, Y), X);
+        assertEquals(new Pow(X, new Sum(Y, new RNumber(1))), symbolic.simplify());
+    }
+
+    @Test
+    public void aSumCanAddAFraction() {
+        Operation sum = new Sum(new QNumber(new RNumber(1), new RNumber(3)), new RNumber(1), X);
+        assertEquals(2, ((Operation) sum.simplify()).getExpressions().size());
+    }
+
+    @Test
+    public void derivativesAreTakenFromTheMap() {
+        Map<Expression, Expression> derivatives = new HashMap<>();
+        // a derivative already in the map is used instead of derivating again
+        derivatives.put(new Sin(X), Z);
+        Operation exp = new Sum(new Multiplication(Y, new Sin(X)), new Sin(X));
+        Expression derivative = exp.derivate(X, derivatives).simplify();
+        assertEquals(new Sum(new Multiplication(Y, Z), Z).simplify(), derivative);
+        // and the derivative of every distinct operation is kept
+        assertTrue(derivatives.containsKey(exp));
+        assertTrue(derivatives.containsKey(new Multiplication(Y, new Sin(X))));
+    }
+
+    @Test
+    public void memoizedDerivativesMatchTheTree() {
+        Map<Symbol, Space> point = new HashMap<>();
+        point.put(X, new RNumber(0.7));
+        point.put(Y, new RNumber(1.9));
+        point.put(Z, new RNumber(2.3));
+        Operation exp = new Sum(new Multiplication(new Sin(new Multiplication(X, Y)), Z),
+                new Pow(new Sin(new Multiplication(X, Y)), new RNumber(2)), new Ln(new Sum(X, Z)));
+        Matrix hessian = exp.hessian();
+        Matrix jacobian = exp.gradient().jacobian(exp.getVars().toArray(new Variable[0]));
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                double expected = ((Number) hessian.getExpAt(i, j).evaluate(point)).value().doubleValue(),
+                        actual = ((Number) jacobian.getExpAt(i, j).evaluate(point)).value().doubleValue();
+                assertEquals(expected, actual, 1e-5 * Math.max(1, Math.abs(expected)));
+            }
+        }
+    }
+
+    @Test
+    public void derivativeOfAQuotientFollowsTheQuotientRule() {
+        Map<Symbol, Space> point = new HashMap<>();
+        point.put(X, new RNumber(3));
+        point.put(Y, new RNumber(2));
+        Expression quotient = new Division(X, Y);
+        // d(x / y)/dy = -x / y^2
+        assertEquals(-0.75, ((Number) quotient.derivate(Y).evaluate(point)).value().doubleValue(), 0);
+        assertEquals(0.5, ((Number) quotient.derivate(X).evaluate(point)).value().doubleValue(), 0);
+    }
+
+}
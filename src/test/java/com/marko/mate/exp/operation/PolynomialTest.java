@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.operation;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.binop.Division;
+import com.marko.mate.exp.operation.binop.Multiplication;
+import com.marko.mate.exp.operation.binop.Pow;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.symbol.Variable;
+import com.marko.mate.exp.vectorial.Number;
+import com.marko.mate.exp.vectorial.QNumber;
+import com.marko.mate.exp.vectorial.RNumber;
+import java.math.BigInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author Marcos
+ */
+public class PolynomialTest {
+
+    private static final Variable X = new Variable("x"),
+            Y = new Variable("y");
+
+    private static BigInteger binomial(int n, int k) {
+        BigInteger result = BigInteger.ONE;
+        for (int i = 0; i < k; i++) {
+            result = result.multiply(BigInteger.valueOf(n - i)).divide(BigInteger.valueOf(i + 1));
+        }
+        return result;
+    }
+
+    @Test
+    public void powerHasTheExactBinomialCoefficients() {
+        Polynomial power = Polynomial.of(new Pow(new Sum(X, RNumber.ONE), new RNumber(70)));
+        assertEquals(71, power.size());
+        assertEquals(BigInteger.ONE, power.getDenominator());
+        for (int k = 0; k <= 70; k++) {
+            // from the highest degree
+            assertEquals("coefficient of x^" + (70 - k), binomial(70, k), power.getNumerator(k));
+        }
+    }
+
+    @Test
+    public void expandedPowerHasTheExactBinomialCoefficients() {
+        Polynomial power = Polynomial.of(new Pow(new Sum(X, RNumber.ONE), new RNumber(70)));
+        Sum sum = (Sum) power.toExpression();
+        Number middle = (Number) ((Multiplication) sum.getExpressions().get(35))
+                .getExpressions().get(0);
+        assertEquals(new QNumber(new BigInteger("112186277816662845432"), BigInteger.ONE), middle);
+        // and they are read back exactly
+        assertEquals(power, Polynomial.of(sum));
+    }
+
+    @Test
+    public void powerEvaluatesToTheNearestDouble() {
+        Polynomial power = Polynomial.of(new Pow(new Sum(X, RNumber.ONE), new RNumber(50)));
+        assertEquals(0x1p50, power.evaluate(1), 0);
+        assertEquals(0x1p50, power.compile(X).evaluate(new double[]{1}), 0);
+    }
+
+    @Test
+    public void fractionsStayExact() {
+        Expression third = new Division(X, new RNumber(3));
+        Polynomial square = Polynomial.of(new Pow(new Sum(third, RNumber.ONE), new RNumber(2)));
+        assertEquals(BigInteger.valueOf(9), square.getDenominator());
+        assertEquals(BigInteger.ONE, square.getNumerator(0));
+        assertEquals(BigInteger.valueOf(6), square.getNumerator(1));
+        assertEquals(BigInteger.valueOf(9), square.getNumerator(2));
+        assertEquals(0, ((Number) square.apply(new RNumber(3))).compareTo(new RNumber(4)));
+    }
+
+    @Test
+    public void decimalCoefficientsComeBackExact() {
+        Number decimal = new RNumber(0.1234567);
+        Polynomial product = Polynomial.of(new Multiplication(decimal, new Sum(X, RNumber.ONE)));
+        Sum sum = (Sum) product.toExpression();
+        Number coefficient = (Number) ((Multiplication) sum.getExpressions().get(0))
+                .getExpressions().get(0);
+        assertEquals(0, decimal.compareTo(coefficient));
+        assertEquals(0, decimal.compareTo((Number) sum.getExpressions().get(1)));
+    }
+
+    @Test
+    public void equalPolynomialsHaveTheSameHash() {
+        Expression square = new Pow(new Sum(X, Y, RNumber.ONE), new RNumber(2));
+        Polynomial a = Polynomial.of(square),
+                b = Polynomial.of(square);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertEquals(a.hashCode(), a.hashCode());
+        assertNotEquals(a, a.multiply(new RNumber(2)));
+    }
+
+    @Test
+    public void sumsCancelExactly() {
+        Expression tenth = new Division(X, new RNumber(10)),
+                third = new Division(Y, new RNumber(3));
+        Polynomial a = Polynomial.of(new Sum(tenth, third)),
+                b = Polynomial.of(new Sum(tenth, third)).multiply(new RNumber(-1));
+        assertEquals(0, a.add(b).size());
+        assertEquals(a, a.add(Polynomial.of(RNumber.ZERO)));
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.rewrite;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.binop.Multiplication;
+import com.marko.mate.exp.operation.binop.Pow;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.operation.unop.Cos;
+import com.marko.mate.exp.operation.unop.Ln;
+import com.marko.mate.exp.operation.unop.Sin;
+import com.marko.mate.exp.rewrite.EqualitySaturation.Stop;
+import com.marko.mate.exp.symbol.Variable;
+import com.marko.mate.exp.vectorial.QNumber;
+import com.marko.mate.exp.vectorial.RNumber;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author Marcos
+ */
+public class EqualitySaturationTest {
+
+    private static final Variable X = new Variable("x"),
+            Y = new Variable("y");
+
+    /**
+     * @return a sum of many products, which the commutative and associative
+     * laws turn into many more equivalent sums
+     */
+    private static Expression products(int terms) {
+        Expression[] products = new Expression[terms];
+        for (int i = 0; i < terms; i++) {
+            products[i] = new Multiplication(new RNumber(i + 2), X, Y);
+        }
+        return new Sum(products);
+    }
+
+    private static Stop run(EqualitySaturation saturation, Expression exp) {
+        EGraph graph = new EGraph();
+        graph.add(exp);
+        return saturation.run(graph);
+    }
+
+    @Test
+    public void pythagoras() {
+        Expression exp = new Sum(
+                new Pow(new Sin(X), new RNumber(2)),
+                new Pow(new Cos(X), new RNumber(2)));
+        assertEquals(RNumber.ONE, new EqualitySaturation().simplify(exp));
+    }
+
+    @Test
+    public void commonFactor() {
+        Expression exp = new Sum(new Multiplication(X, Y), new Multiplication(new RNumber(3), X));
+        assertEquals(new Multiplication(X, new Sum(Y, new RNumber(3))),
+                new EqualitySaturation().simplify(exp));
+    }
+
+    @Test
+    public void sumOfLogarithms() {
+        Expression exp = new Sum(new Ln(X), new Ln(Y));
+        assertEquals(new Ln(new Multiplication(X, Y)), new EqualitySaturation().simplify(exp));
+    }
+
+    @Test
+    public void numbersAreFactoredOnlyIfTheyAreEqual() {
+        Expression third = new QNumber(RNumber.ONE, new RNumber(3)),
+                rounded = new RNumber(0.3333333);
+        Expression different = new Sum(new Multiplication(X, third), new Multiplication(Y, rounded));
+        assertNotEquals(new Multiplication(third, new Sum(X, Y)),
+                new EqualitySaturation().simplify(different));
+        Expression equal = new Sum(new Multiplication(X, third), new Multiplication(Y, third));
+        assertEquals(new Multiplication(third, new Sum(X, Y)),
+                new EqualitySaturation().simplify(equal));
+        // fractions with the same rounded value
+        Expression a = new QNumber(new BigInteger("12345678"), BigInteger.ONE),
+                b = new QNumber(new BigInteger("12345679"), BigInteger.ONE);
+        assertNotEquals(new Multiplication(a, new Sum(X, Y)),
+                new EqualitySaturation().simplify(new Sum(new Multiplication(X, a), new Multiplication(Y, b))));
+    }
+
+    @Test
+    public void saturatesWhenNothingIsNew() {
+        EqualitySaturation saturation = new EqualitySaturation(Rewrites.powers());
+        assertEquals(Stop.SATURATED, run(saturation, new Pow(X, RNumber.ONE)));
+        assertEquals(X, saturation.simplify(new Pow(X, RNumber.ONE)));
+    }
+
+    @Test
+    public void stopsAtTheIterationLimit() {
+        EqualitySaturation saturation = new EqualitySaturation(Rewrites.algebra());
+        saturation.setIterationLimit(1);
+        assertEquals(Stop.ITERATION_LIMIT, run(saturation, products(3)));
+    }
+
+    @Test
+    public void stopsAtTheNodeLimit() {
+        EqualitySaturation saturation = new EqualitySaturation(Rewrites.algebra());
+        saturation.setNodeLimit(100);
+        EGraph graph = new EGraph();
+        int root = graph.add(products(6));
+        assertEquals(Stop.NODE_LIMIT, saturation.run(graph));
+        // the graph is left consistent, so the best expression found so far
+        // can still be extracted
+        Expression extracted = graph.extract(root, CostModel.SIZE);
+        assertEquals(products(6).simplify(), extracted.simplify());
+    }
+
+    @Test
+    public void stopsAtTheTimeLimit() {
+        EqualitySaturation saturation = new EqualitySaturation(Rewrites.all());
+        saturation.setTimeLimit(Duration.ZERO);
+        assertEquals(Stop.TIME_LIMIT, run(saturation, products(6)));
+    }
+
+    @Test
+    public void limitsAreKept() {
+        EqualitySaturation saturation = new EqualitySaturation(List.of());
+        saturation.setNodeLimit(5);
+        saturation.setIterationLimit(2);
+        saturation.setTimeLimit(Duration.ofMillis(3));
+        assertEquals(5, saturation.getNodeLimit());
+        assertEquals(2, saturation.getIterationLimit());
+        assertEquals(Duration.ofMillis(3), saturation.getTimeLimit());
+        assertEquals(Stop.SATURATED, run(saturation, products(2)));
+    }
+
+}
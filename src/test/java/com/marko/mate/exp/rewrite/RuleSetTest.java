@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.rewrite;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.binop.Multiplication;
+import com.marko.mate.exp.operation.binop.Pow;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.operation.unop.Ln;
+import com.marko.mate.exp.operation.unop.Sin;
+import com.marko.mate.exp.symbol.Constant;
+import com.marko.mate.exp.symbol.Variable;
+import com.marko.mate.exp.vectorial.QNumber;
+import com.marko.mate.exp.vectorial.RNumber;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ *
+ * @author Marcos
+ */
+public class RuleSetTest {
+
+    private static final Variable X = new Variable("x"),
+            Y = new Variable("y");
+
+    private static final Constant E = Constant.of("e");
+
+    private static final Pattern A = Pattern.var("a"),
+            B = Pattern.var("b");
+
+    private static final Multiplication MULTIPLICATION = new Multiplication();
+
+    private static final Sum SUM = new Sum();
+
+    private static RuleSet lnOfExp() {
+        return new RuleSet().add("ln-exp",
+                Pattern.of(new Ln(RNumber.ONE), Pattern.of(new Pow(RNumber.ONE, RNumber.ONE), Pattern.of(E), A)),
+                A);
+    }
+
+    @Test
+    public void logarithmOfAPowerOfE() {
+        RuleSet rules = lnOfExp();
+        Expression inner = new Sum(X, Y);
+        assertSame(inner, rules.rewrite(new Ln(new Pow(E, inner))));
+        // the rule is applied to the subexpressions too
+        assertEquals(new Sin(X), rules.rewrite(new Sin(new Ln(new Pow(E, X)))));
+        // and not to another base
+        Expression other = new Ln(new Pow(Y, X));
+        assertSame(other, rules.rewrite(other));
+    }
+
+    @Test
+    public void simplifyAppliesTheRules() {
+        Expression exp = new Multiplication(new RNumber(2), new Ln(new Pow(E, X)));
+        assertEquals(new Multiplication(new RNumber(2), X), exp.simplify(lnOfExp()));
+    }
+
+    @Test
+    public void firstRuleThatMatchesIsApplied() {
+        RuleSet rules = new RuleSet()
+                .add("first", Pattern.of(MULTIPLICATION, A, B), A)
+                .add("second", Pattern.of(MULTIPLICATION, A, Pattern.of(Y)), Pattern.of(Y));
+        assertEquals(X, rules.rewrite(new Multiplication(X, Y)));
+        RuleSet reversed = new RuleSet()
+                .add("second", Pattern.of(MULTIPLICATION, A, Pattern.of(Y)), Pattern.of(Y))
+                .add("first", Pattern.of(MULTIPLICATION, A, B), A);
+        assertEquals(Y, reversed.rewrite(new Multiplication(X, Y)));
+    }
+
+    @Test
+    public void repeatedVariablesMatchEqualExpressions() {
+        RuleSet rules = new RuleSet().add("square",
+                Pattern.of(MULTIPLICATION, A, A),
+                Pattern.of(new Pow(RNumber.ONE, RNumber.ONE), A, Pattern.of(new RNumber(2))));
+        assertEquals(new Pow(new Sin(X), new RNumber(2)),
+                rules.rewrite(new Multiplication(new Sin(X), new Sin(X))));
+        Expression different = new Multiplication(X, Y);
+        assertSame(different, rules.rewrite(different));
+    }
+
+    @Test
+    public void numbersMatchOnlyTheirExactValue() {
+        RuleSet rules = new RuleSet().add("third",
+                Pattern.of(MULTIPLICATION, A, Pattern.of(new QNumber(RNumber.ONE, new RNumber(3)))), A);
+        assertEquals(X, rules.rewrite(new Multiplication(X, new QNumber(RNumber.ONE, new RNumber(3)))));
+        Expression rounded = new Multiplication(X, new RNumber(0.3333333));
+        assertSame(rounded, rules.rewrite(rounded));
+    }
+
+    @Test
+    public void commutativeRuleStopsAtTheLimit() {
+        RuleSet rules = new RuleSet().add("commute", Pattern.of(SUM, A, B), Pattern.of(SUM, B, A));
+        assertEquals(10_000, rules.getRewriteLimit());
+        rules.setRewriteLimit(3);
+        // an odd number of rewrites leaves the sum commuted
+        Expression sum = rules.rewrite(new Sum(X, Y));
+        assertEquals(List.of(Y, X), ((Sum) sum).getExpressions());
+        rules.setRewriteLimit(4);
+        assertEquals(List.of(X, Y), ((Sum) rules.rewrite(new Sum(X, Y))).getExpressions());
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.symbol;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.PreparedExpression;
+import com.marko.mate.exp.operation.binop.Division;
+import com.marko.mate.exp.operation.binop.Multiplication;
+import com.marko.mate.exp.operation.binop.Sum;
+import com.marko.mate.exp.operation.unop.Sin;
+import com.marko.mate.exp.vectorial.Number;
+import com.marko.mate.exp.vectorial.RNumber;
+import com.marko.mate.exp.vectorial.Space;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Marcos
+ */
+public class BindingsTest {
+
+    private static final Variable X = new Variable("x"),
+            Y = new Variable("y"),
+            Z = new Variable("z");
+
+    private static Expression expression() {
+        return new Sum(new Multiplication(X, Y), new Division(new Sin(X), Y));
+    }
+
+    @Test
+    public void everySymbolIsBoundToItsIndex() {
+        Bindings bindings = new Bindings(Y, X);
+        assertEquals(2, bindings.size());
+        assertEquals(0, bindings.slotOf(Y));
+        assertEquals(1, bindings.slotOf(X));
+        assertEquals(-1, bindings.slotOf(Z));
+        assertEquals(X, bindings.getSymbol(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aSymbolCannotBeBoundTwice() {
+        new Bindings(X, Y, X);
+    }
+
+    @Test
+    public void preparedExpressionMatchesEvaluate() {
+        PreparedExpression prepared = expression().prepare(new Bindings(X, Y));
+        for (int x = 1; x < 5; x++) {
+            for (int y = 1; y < 5; y++) {
+                Space[] values = {new RNumber(x), new RNumber(y)};
+                Map<Symbol, Space> point = new Bindings(X, Y).toMap(values);
+                Number expected = (Number) expression().evaluate(point),
+                        actual = (Number) prepared.evaluate(values);
+                assertEquals(0, expected.compareTo(actual));
+            }
+        }
+    }
+
+    @Test
+    public void symbolsWithoutValueAreKept() {
+        PreparedExpression prepared = new Sum(X, new Sin(Y)).prepare(new Bindings(X, Y));
+        Expression partial = prepared.evaluate(new RNumber(2), null);
+        assertFalse(partial instanceof Number);
+        assertTrue(partial.toString().contains("Sin[y]"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void everySlotNeedsAValue() {
+        expression().prepare(new Bindings(X, Y)).evaluate(new RNumber(1));
+    }
+
+    @Test
+    public void compiledExpressionReadsTheSlots() {
+        Bindings bindings = new Bindings(Z, Y, X);
+        double value = new Division(X, Y).compile(bindings).evaluate(new double[]{5, 4, 2});
+        assertEquals(0.5, value, 0);
+    }
+
+}
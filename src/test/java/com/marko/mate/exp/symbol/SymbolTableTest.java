@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.symbol;
+
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Marcos
+ */
+public class SymbolTableTest {
+
+    @Test
+    public void internedSymbolsAreTheSameInstance() {
+        Variable x = Variable.of("x");
+        assertSame(x, Variable.of("x"));
+        assertSame(x, SymbolTable.variable("x"));
+        Constant c = Constant.of("c");
+        assertSame(c, Constant.of("c"));
+    }
+
+    @Test
+    public void symbolsWithTheSameIdShareTheirName() {
+        Variable interned = Variable.of("x"),
+                created = new Variable("x");
+        assertEquals(interned, created);
+        assertEquals(interned.hashCode(), created.hashCode());
+        assertEquals(interned.ordinal(), created.ordinal());
+        assertNotEquals(interned, new Variable("y"));
+    }
+
+    @Test
+    public void ordinalsOfTheSymbolsInUseAreUnique() {
+        Variable[] vars = new Variable[100];
+        Set<Integer> ordinals = new HashSet<>();
+        for (int i = 0; i < vars.length; i++) {
+            vars[i] = new Variable("unique" + i);
+            assertTrue(ordinals.add(vars[i].ordinal()));
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void ordinalOfACollectedNameIsReused() throws InterruptedException {
+        Variable var = new Variable("collected");
+        int ordinal = var.ordinal();
+        WeakReference<Variable> reference = new WeakReference<>(var);
+        var = null;
+        while (reference.get() != null) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        // the name is collected with the variable, and once it is enqueued
+        // its ordinal is given to a new name instead of a new ordinal
+        int reused = Integer.MAX_VALUE;
+        for (int attempt = 0; attempt < 1000 && reused > ordinal; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+            reused = new Variable("new" + attempt).ordinal();
+        }
+        assertTrue(reused <= ordinal);
+    }
+
+}
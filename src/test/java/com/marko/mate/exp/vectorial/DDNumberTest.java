@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.vectorial;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.binop.Pow;
+import com.marko.mate.exp.symbol.Symbol;
+import com.marko.mate.exp.symbol.Variable;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Marcos
+ */
+public class DDNumberTest {
+
+    private static final MathContext DIGITS = new MathContext(60);
+
+    /**
+     * @return the relative error of the number against the exact value
+     */
+    private static double error(BigDecimal exact, Number number) {
+        return number.value().subtract(exact).divide(exact, DIGITS).abs().doubleValue();
+    }
+
+    @Test
+    public void sumsOfTwoDoublesAreExact() {
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            double a = random.nextDouble() * Math.pow(2, random.nextInt(100) - 50),
+                    b = random.nextDouble() * Math.pow(2, random.nextInt(100) - 50);
+            Number sum = new DDNumber(a).add(new DDNumber(b));
+            assertEquals(0, new BigDecimal(a).add(new BigDecimal(b)).compareTo(sum.value()));
+        }
+    }
+
+    @Test
+    public void productsOfTwoDoublesAreExact() {
+        Random random = new Random(11);
+        for (int i = 0; i < 1000; i++) {
+            double a = random.nextDouble() - 0.5,
+                    b = random.nextDouble() * 1e10;
+            Number product = new DDNumber(a).multiply(new DDNumber(b));
+            assertEquals(0, new BigDecimal(a).multiply(new BigDecimal(b)).compareTo(product.value()));
+        }
+    }
+
+    @Test
+    public void valueIsTheExactBinaryValue() {
+        DDNumber tenth = new DDNumber(0.1);
+        assertEquals(new BigDecimal(0.1), tenth.value());
+        // none of them is the decimal one tenth, so equality is transitive
+        assertNotEquals(tenth, new RNumber(0.1));
+        assertNotEquals(DDNumber.valueOf(new RNumber(0.1)), new RNumber(0.1));
+        assertNotEquals(tenth, DDNumber.valueOf(new RNumber(0.1)));
+        assertEquals(new DDNumber(2), Number.valueOf(2));
+        assertEquals(Number.valueOf(2), new DDNumber(2));
+        assertEquals(new DDNumber(2).hashCode(), Number.valueOf(2).hashCode());
+    }
+
+    @Test
+    public void powersOfADoubleDoubleKeepTheirDigits() {
+        Variable x = new Variable("x");
+        Number tenThirds = Number.valueOf(10, 3);
+        Map<Symbol, Space> point = Map.of(x, DDNumber.valueOf(tenThirds));
+        for (int n : new int[]{2, 20}) {
+            Expression power = new Pow(x, new RNumber(n)).evaluate(point);
+            assertTrue(power instanceof DDNumber);
+            BigDecimal exact = tenThirds.pow(new RNumber(n)).value(DIGITS);
+            assertTrue("n = " + n, error(exact, (Number) power) < 1e-30);
+        }
+    }
+
+    @Test
+    public void onlyAnInexactDoubleMakesADouble() {
+        Expression tenth = new DDNumber(0.1);
+        assertTrue(tenth.add(new DNumber(0.5)) instanceof DNumber);
+        assertTrue(new DNumber(0.5).multiply(tenth) instanceof DNumber);
+        // an integer is exact
+        assertTrue(tenth.multiply(new DNumber(2)) instanceof DDNumber);
+        assertTrue(new DNumber(2).multiply(tenth) instanceof DDNumber);
+        assertTrue(((DDNumber) tenth).pow(new DNumber(2)) instanceof DDNumber);
+    }
+
+    @Test
+    public void determinantOfHilbertMatrixIsMorePreciseThanADouble() {
+        for (int n = 5; n <= 7; n++) {
+            Expression[][] exact = new Expression[n][n],
+                    dd = new Expression[n][n],
+                    d = new Expression[n][n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    exact[i][j] = Number.valueOf(1, i + j + 1);
+                    dd[i][j] = DDNumber.valueOf((Number) exact[i][j]);
+                    d[i][j] = new DNumber(1.0 / (i + j + 1));
+                }
+            }
+            QNumber fraction = (QNumber) new Matrix(exact).det();
+            BigDecimal det = new BigDecimal(fraction.getNumerator())
+                    .divide(new BigDecimal(fraction.getDenominator()), DIGITS);
+            Number ddDet = (Number) new Matrix(dd).det();
+            assertTrue(ddDet instanceof DDNumber);
+            assertTrue("n = " + n + ": " + error(det, ddDet), error(det, ddDet) < 1e-17);
+            // the conditioning costs both the same digits
+            double dError = error(det, (Number) new Matrix(d).det());
+            assertTrue("n = " + n + ": " + dError, error(det, ddDet) < 1e-9 * dError);
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.vectorial;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.binop.Division;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Marcos
+ */
+public class DNumberTest {
+
+    // as expressions, so the operations are the public ones
+    private static final Expression THIRD = new QNumber(new RNumber(1), new RNumber(3)),
+            ZERO = RNumber.ZERO,
+            ONE = RNumber.ONE;
+
+    @Test
+    public void anInexactOperandGivesADNumber() {
+        Expression half = new DNumber(0.5);
+        Expression sum = half.add(new RNumber(0.25));
+        assertTrue(sum instanceof DNumber);
+        assertEquals(0.75, ((Number) sum).doubleValue(), 0);
+        assertTrue(new RNumber(0.25).multiply(half) instanceof DNumber);
+        assertTrue(THIRD.add(half) instanceof DNumber);
+        assertTrue(new RNumber(3).pow((Number) half) instanceof DNumber);
+        // two doubles are not exact even if they are integers
+        assertTrue(new DNumber(2).add((Expression) new DNumber(3)) instanceof DNumber);
+    }
+
+    @Test
+    public void anIntegerIsPromotedToOperateWithAnExactNumber() {
+        Expression two = new DNumber(2);
+        Expression product = two.multiply(THIRD);
+        assertFalse(product instanceof DNumber);
+        assertEquals(0, new QNumber(new RNumber(2), new RNumber(3)).compareTo((Number) product));
+        Expression sum = new RNumber(0.25).add((Expression) new DNumber(4));
+        assertTrue(sum instanceof RNumber);
+        assertEquals(new RNumber(4.25), sum);
+        assertTrue(new DNumber(2).pow(new RNumber(3)) instanceof RNumber);
+    }
+
+    @Test
+    public void aResultEqualToAnOperandIsTheOperand() {
+        Expression number = new DNumber(0.3);
+        assertSame(number, number.add(ZERO));
+        assertSame(number, ZERO.add(number));
+        assertSame(number, number.multiply(ONE));
+        assertSame(number, ONE.multiply(number));
+        assertSame(number, number.divide(new DNumber(1)));
+        assertSame(number, number.substract(new DNumber(0)));
+    }
+
+    @Test
+    public void equalNumbersOfEveryKindHaveTheSameHash() {
+        Number[][] equal = {
+            {new DNumber(0.5), new RNumber(0.5), new QNumber(new RNumber(1), new RNumber(2))},
+            {new DNumber(2), new RNumber(2), new QNumber(new RNumber(4), new RNumber(2))},
+            {new DNumber(-0.0), new DNumber(0), RNumber.ZERO},
+            {new DNumber(0.1), new DNumber(0.1), new RNumber(0.1)}};
+        for (Number[] numbers : equal) {
+            for (Number a : numbers) {
+                for (Number b : numbers) {
+                    assertEquals(a + " and " + b, a, b);
+                    assertEquals(a.hashCode(), b.hashCode());
+                    assertEquals(0, a.compareTo(b));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void aDNumberIsEqualOnlyToItsExactValue() {
+        // the double of 0.1 + 0.2 is not the one of 0.3
+        Expression sum = new DNumber(0.1).add((Expression) new DNumber(0.2));
+        assertNotEquals(new RNumber(0.3), sum);
+        assertNotEquals(new DNumber(0.3), sum);
+        assertTrue(new DNumber(0.1).compareTo(new DNumber(0.2)) < 0);
+        assertTrue(new DNumber(1.5).compareTo(new RNumber(1)) > 0);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void aDNumberIsFinite() {
+        new DNumber(Double.POSITIVE_INFINITY);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void divisionByZeroFails() {
+        new DNumber(0.5).divide((Expression) new DNumber(0));
+    }
+
+}
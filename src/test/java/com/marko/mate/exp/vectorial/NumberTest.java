@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2019 Marcos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.marko.mate.exp.vectorial;
+
+import com.marko.mate.exp.Expression;
+import com.marko.mate.exp.operation.binop.Pow;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Marcos
+ */
+public class NumberTest {
+
+    private static void assertExact(String expected, Number number) {
+        assertEquals(new QNumber(new BigInteger(expected), BigInteger.ONE), number);
+    }
+
+    @Test
+    public void theValueIsTheDoubleRoundedToSevenDigits() {
+        MathContext context = new MathContext(7, RoundingMode.HALF_UP);
+        Random random = new Random(3);
+        for (int i = 0; i < 10_000; i++) {
+            // integers, short decimals and doubles with every digit
+            double value = i % 3 == 0 ? random.nextInt(30_000_000) - 15_000_000
+                    : i % 3 == 1 ? random.nextInt(2_000_000) / Math.pow(10, random.nextInt(10))
+                    : random.nextGaussian() * Math.pow(10, random.nextInt(20) - 10);
+            BigDecimal expected = new BigDecimal(value + "", context);
+            RNumber number = new RNumber(value);
+            assertEquals(expected.doubleValue(), number.doubleValue(), 0);
+            assertEquals(expected, number.value());
+        }
+    }
+
+    @Test
+    public void integerArithmeticMatchesTheExactValues() {
+        Random random = new Random(5);
+        for (int i = 0; i < 1000; i++) {
+            RNumber a = new RNumber(random.nextInt(20_000_000) - 10_000_000),
+                    b = new RNumber(random.nextInt(2000) - 1000);
+            MathContext context = new MathContext(7, RoundingMode.HALF_UP);
+            assertEquals(new RNumber(a.value().add(b.value()).doubleValue()), a.add(b));
+            assertEquals(new RNumber(a.value().subtract(b.value()).doubleValue()), a.substract(b));
+            assertEquals(new RNumber(a.value().multiply(b.value()).doubleValue()), a.multiply(b));
+            if (!b.isZero()) {
+                assertEquals(new RNumber(a.value().divide(b.value(), context).doubleValue()), a.divide(b));
+            }
+        }
+    }
+
+    @Test
+    public void fractionsEvaluateToThemselves() {
+        QNumber third = new QNumber(new RNumber(1), new RNumber(3));
+        Number large = new QNumber(new RNumber(1234567)).multiply(new RNumber(1234567));
+        assertSame(third, third.evaluate(Map.of()));
+        assertSame(large, large.evaluate(Map.of()));
+        assertEquals("1524155677489", large.toString());
+    }
+
+    @Test
+    public void fractionsAreComparedExactly() {
+        Number third = QNumber.parseQNumber("1/3"),
+                rounded = new RNumber(0.3333333);
+        assertNotEquals(third, rounded);
+        assertNotEquals(rounded, third);
+        assertTrue(third.compareTo(rounded) > 0);
+        assertTrue(rounded.compareTo(third) < 0);
+        assertEquals(QNumber.parseQNumber("1/2"), new RNumber(0.5));
+        assertEquals(new RNumber(0.5), QNumber.parseQNumber("1/2"));
+        assertEquals(QNumber.parseQNumber("1/2").hashCode(), new RNumber(0.5).hashCode());
+        assertEquals(0, QNumber.parseQNumber("1/4").compareTo(new DNumber(0.25)));
+    }
+
+    @Test
+    public void adjacentLargeIntegersAreDifferent() {
+        Number a = QNumber.parseQNumber("12345678/1"),
+                b = QNumber.parseQNumber("12345679/1");
+        assertNotEquals(a, b);
+        assertTrue(a.compareTo(b) < 0);
+        assertEquals(a, QNumber.parseQNumber("12345678/1"));
+        assertEquals(a.hashCode(), QNumber.parseQNumber("12345678/1").hashCode());
+    }
+
+    @Test
+    public void aFractionToAnIntegerIsExact() {
+        QNumber twoThirds = QNumber.parseQNumber("2/3");
+        assertEquals(QNumber.parseQNumber("1024/59049"), twoThirds.pow(new RNumber(10)));
+        assertEquals(QNumber.parseQNumber("9/4"), twoThirds.pow(new RNumber(-2)));
+        // an integer exponent too large to be an integer number
+        Number large = QNumber.parseQNumber("12345678/1");
+        assertEquals(QNumber.parseQNumber("-1/1"), QNumber.parseQNumber("-1/1").pow(large.add(new RNumber(1))));
+        assertEquals(QNumber.parseQNumber("1/1"), QNumber.parseQNumber("-1/1").pow(large));
+    }
+
+    @Test
+    public void aPowerOfAFractionIsSimplifiedExactly() {
+        Expression ninth = new Pow(QNumber.parseQNumber("1/3"), new RNumber(2)).simplify();
+        assertTrue(ninth instanceof QNumber);
+        assertEquals(QNumber.parseQNumber("1/9"), ninth);
+        assertEquals(QNumber.parseQNumber("1/9"), QNumber.parseQNumber("1/3").pow(new RNumber(2)));
+    }
+
+    @Test
+    public void aFractionToAFractionIsADouble() {
+        Number root = QNumber.parseQNumber("1/4").pow(new RNumber(0.5));
+        assertTrue(root instanceof DNumber);
+        assertEquals(0.5, root.doubleValue(), 0);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void aNegativeFractionHasNoRealRoot() {
+        QNumber.parseQNumber("-1/4").pow(new RNumber(0.5));
+    }
+
+    @Test
+    public void smallIntegersAreShared() {
+        assertSame(Number.valueOf(-1), Number.valueOf(-1));
+        assertSame(RNumber.ONE, Number.valueOf(1));
+        assertSame(Number.valueOf(1, 2), Number.valueOf(-3, -6));
+    }
+
+    @Test
+    public void largeIntegersAreExact() {
+        assertExact("9999999", Number.valueOf(9_999_999));
+        assertExact("123456789", Number.valueOf(123_456_789));
+        assertExact("-9223372036854775808", Number.valueOf(Long.MIN_VALUE));
+        assertExact("2147483648", Number.valueOf(Integer.MIN_VALUE, -1));
+        assertExact("61728394", Number.valueOf(123_456_788, 2));
+    }
+
+    @Test
+    public void fractionsAreExact() {
+        assertEquals("(123456789/2)", Number.valueOf(123_456_789, 2).toString());
+        assertEquals("(1/3)", Number.valueOf(-5, -15).toString());
+    }
+
+}